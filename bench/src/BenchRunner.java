@@ -0,0 +1,182 @@
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.function.LongSupplier;
+
+/**
+ * A small, dependency-free benchmark harness in the spirit of JMH.
+ * <p>
+ * Each benchmark body runs for a number of timed warmup and measurement iterations on the current thread. For every
+ * benchmark the runner reports throughput, average time per operation and allocation (bytes per operation, allocation
+ * rate and GC count), similar to JMH's throughput/average-time modes with the gc profiler.
+ * <p>
+ * Benchmark bodies return a long that is folded into a sink so the JIT cannot eliminate the work as dead code.
+ *
+ * @author Dougy
+ */
+public class BenchRunner {
+  private static final com.sun.management.ThreadMXBean THREADS =
+    (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+  private final int warmupIterations;
+  private final int measureIterations;
+  private final long iterationNanos;
+  private final String filter;
+  private long sink;
+
+  /**
+   * Creates a runner with the given iteration settings.
+   *
+   * @param warmupIterations  Number of untimed warmup iterations per benchmark.
+   * @param measureIterations Number of measured iterations per benchmark.
+   * @param iterationMillis   Minimum duration of one iteration in milliseconds.
+   * @param filter            Only benchmarks whose name contains this string are run (empty runs everything).
+   */
+  public BenchRunner(int warmupIterations, int measureIterations, long iterationMillis, String filter) {
+    this.warmupIterations = warmupIterations;
+    this.measureIterations = measureIterations;
+    this.iterationNanos = iterationMillis * 1_000_000L;
+    this.filter = filter;
+  }
+
+  /**
+   * Creates a runner configured from command line arguments: {@code [filter] [iterationMillis]}.
+   *
+   * @param args The command line arguments.
+   * @return The configured runner.
+   */
+  public static BenchRunner fromArgs(String[] args) {
+    String filter = args.length > 0 ? args[0] : "";
+    long millis = args.length > 1 ? Long.parseLong(args[1]) : 500;
+    return new BenchRunner(3, 5, millis, filter);
+  }
+
+  /**
+   * Prints the header of the result table.
+   */
+  public void printHeader() {
+    System.out.printf("%-48s %14s %14s %12s %12s %8s%n", "Benchmark", "ops/s", "ns/op", "B/op", "MB/s alloc", "gc");
+  }
+
+  /**
+   * Runs a benchmark whose body performs exactly one operation per call.
+   *
+   * @param name The benchmark name.
+   * @param body The benchmark body.
+   */
+  public void run(String name, LongSupplier body) {
+    run(name, 1, body);
+  }
+
+  /**
+   * Runs a benchmark whose body performs several operations per call.
+   *
+   * @param name             The benchmark name.
+   * @param opsPerInvocation Number of operations one call of the body performs.
+   * @param body             The benchmark body.
+   */
+  public void run(String name, int opsPerInvocation, LongSupplier body) {
+    if (!name.contains(filter)) return;
+    for (int i = 0; i < warmupIterations; i++) {
+      iteration(body);
+    }
+
+    long ops = 0;
+    long nanos = 0;
+    long bytes = 0;
+    long gcBefore = gcCount();
+    long threadId = Thread.currentThread().getId();
+    for (int i = 0; i < measureIterations; i++) {
+      long allocBefore = THREADS.getThreadAllocatedBytes(threadId);
+      long start = System.nanoTime();
+      long calls = iteration(body);
+      nanos += System.nanoTime() - start;
+      bytes += THREADS.getThreadAllocatedBytes(threadId) - allocBefore;
+      ops += calls * opsPerInvocation;
+    }
+    long gc = gcCount() - gcBefore;
+
+    double seconds = nanos / 1e9;
+    System.out.printf("%-48s %14.1f %14.1f %12.1f %12.1f %8d%n",
+      name, ops / seconds, (double) nanos / ops, (double) bytes / ops, bytes / seconds / (1024 * 1024), gc);
+  }
+
+  /**
+   * Calls the body repeatedly until the iteration time has passed.
+   *
+   * @param body The benchmark body.
+   * @return The number of calls made.
+   */
+  private long iteration(LongSupplier body) {
+    long calls = 0;
+    long deadline = System.nanoTime() + iterationNanos;
+    do {
+      // check the clock in small batches so that fast bodies are not dominated by nanoTime()
+      for (int i = 0; i < 64; i++) {
+        sink += body.getAsLong();
+        calls++;
+      }
+    } while (System.nanoTime() < deadline);
+    return calls;
+  }
+
+  /**
+   * Runs a benchmark whose body is expensive enough to be timed one call at a time.
+   *
+   * @param name The benchmark name.
+   * @param body The benchmark body.
+   */
+  public void runSlow(String name, LongSupplier body) {
+    if (!name.contains(filter)) return;
+    sink += body.getAsLong();
+
+    long ops = 0;
+    long nanos = 0;
+    long bytes = 0;
+    long gcBefore = gcCount();
+    long threadId = Thread.currentThread().getId();
+    while (ops < measureIterations || nanos < iterationNanos) {
+      long allocBefore = THREADS.getThreadAllocatedBytes(threadId);
+      long start = System.nanoTime();
+      sink += body.getAsLong();
+      nanos += System.nanoTime() - start;
+      bytes += THREADS.getThreadAllocatedBytes(threadId) - allocBefore;
+      ops++;
+    }
+    long gc = gcCount() - gcBefore;
+
+    double seconds = nanos / 1e9;
+    System.out.printf("%-48s %14.1f %14.1f %12.1f %12.1f %8d%n",
+      name, ops / seconds, (double) nanos / ops, (double) bytes / ops, bytes / seconds / (1024 * 1024), gc);
+  }
+
+  /**
+   * Returns the total number of collections performed by all garbage collectors.
+   *
+   * @return The number of collections so far.
+   */
+  private static long gcCount() {
+    long count = 0;
+    for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+      count += Math.max(0, gc.getCollectionCount());
+    }
+    return count;
+  }
+
+  /**
+   * Returns the filter benchmark names have to contain to be run.
+   *
+   * @return The filter, empty if every benchmark is run.
+   */
+  public String getFilter() {
+    return filter;
+  }
+
+  /**
+   * Returns the accumulated benchmark results, so that the JIT has to keep the benchmarked work alive.
+   *
+   * @return The sink value.
+   */
+  public long getSink() {
+    return sink;
+  }
+}
\ No newline at end of file
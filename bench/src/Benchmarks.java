@@ -0,0 +1,501 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.function.LongSupplier;
+
+/**
+ * Benchmarks for the hot paths of the game: the AI model, move resolution, the Leaderboard, saved AI models,
+ * replays and the memory of a long session with an AI that learns habits.
+ * <p>
+ * Run with {@code java Benchmarks [filter] [iterationMillis]}, e.g. {@code java Benchmarks Leaderboard 1000}.
+ *
+ * @author Dougy
+ */
+public class Benchmarks {
+  /**
+   * Leaderboard sizes the Leaderboard benchmarks are run at.
+   */
+  private static final int[] LEADERBOARD_SIZES = {1_000, 100_000, 1_000_000};
+
+  /**
+   * Runs all benchmarks matching the filter.
+   *
+   * @param args {@code [filter] [iterationMillis]}
+   */
+  public static void main(String[] args) {
+    BenchRunner runner = BenchRunner.fromArgs(args);
+    runner.printHeader();
+    aiBenchmarks(runner);
+    batchBenchmarks(runner);
+    moveBenchmarks(runner);
+    freeForAllBenchmarks(runner);
+    leaderboardBenchmarks(runner);
+    profileBenchmarks(runner);
+    storeBenchmarks(runner);
+    modelBenchmarks(runner);
+    replayBenchmarks(runner);
+    habitBenchmarks(runner);
+    footprintBenchmarks(runner);
+    System.out.println("(sink " + runner.getSink() + ")");
+  }
+
+  /**
+   * Benchmarks AI.computeProbability(), AI.makeMove(), AI.updateUsersMove() and a full turn of model updates.
+   *
+   * @param runner The runner to use.
+   */
+  static void aiBenchmarks(BenchRunner runner) {
+    AI ai = new AI();
+    runner.run("AI.computeProbability", () -> {
+      ai.computeProbability();
+      return Double.doubleToRawLongBits(ai.getProbability(1, 1, 0));
+    });
+
+    // cycle through every state the AI can be asked to move from
+    int[] state = {0};
+    runner.run("AI.makeMove", () -> {
+      int s = state[0]++ % 30;
+      return ai.makeMove(s / 5, s % 5).getCost();
+    });
+
+    // only feed moves that are legal in the state, like the game does
+    int[] update = {0};
+    runner.run("AI.updateUsersMove", () -> {
+      int s = update[0]++ % 90;
+      int playerCharge = s / 15;
+      int aiCharge = s / 3 % 5;
+      int action = s % 3;
+      if (action == 0 && playerCharge == 0) action = 2;
+      ai.updateUsersMove(playerCharge, aiCharge, action);
+      return action;
+    });
+
+    // the model work of one game turn: learn the user's move, then re-solve the affected states
+    runner.run("AI.turn", () -> {
+      int s = update[0]++ % 90;
+      int playerCharge = s / 15;
+      int aiCharge = s / 3 % 5;
+      int action = s % 3;
+      if (action == 0 && playerCharge == 0) action = 2;
+      ai.updateUsersMove(playerCharge, aiCharge, action);
+      ai.computeProbability();
+      return Double.doubleToRawLongBits(ai.getProbability(playerCharge, aiCharge, 0));
+    });
+
+    // a whole turn of the AI, adaptive, in equilibrium mode and learning habits: learn the user's move, then pick the
+    // next move
+    AI equilibrium = new AI();
+    equilibrium.setEquilibriumWeight(1);
+    AI habits = new AI();
+    habits.setHabitOrder(3);
+    for (AI player : new AI[]{ai, equilibrium, habits}) {
+      String mode = player == ai ? "adaptive" : player == equilibrium ? "equilibrium" : "habits";
+      runner.run("AI.updateUsersMove+makeMove:" + mode, () -> {
+        int s = update[0]++ % 90;
+        int playerCharge = s / 15;
+        int aiCharge = s / 3 % 5;
+        int action = s % 3;
+        if (action == 0 && playerCharge == 0) action = 2;
+        player.updateUsersMove(playerCharge, aiCharge, action);
+        return player.makeMove(playerCharge, aiCharge).getCost();
+      });
+    }
+
+    runner.run("EquilibriumSolver.solveStandard", () -> EquilibriumSolver.solveStandard().getCap());
+  }
+
+  /**
+   * Benchmarks one turn of model work for N matches: each learns a user move, then every model is re-solved, either
+   * by N independent AI.computeProbability() calls or by one AIBatch. Times are per match.
+   *
+   * @param runner The runner to use.
+   */
+  static void batchBenchmarks(BenchRunner runner) {
+    for (int n : new int[]{16, 256, 4096}) {
+      AI[] ais = new AI[n];
+      AIBatch batch = new AIBatch(n);
+      for (int i = 0; i < n; i++) {
+        ais[i] = new AI();
+        batch.add(ais[i]);
+      }
+      int[] update = {0};
+      runner.run("AI.computeProbability x" + n, n, () -> {
+        long sum = 0;
+        for (AI ai : ais) {
+          int s = update[0]++ % 90;
+          int playerCharge = s / 15;
+          int action = s % 3;
+          if (action == 0 && playerCharge == 0) action = 2;
+          ai.updateUsersMove(playerCharge, s / 3 % 5, action);
+          ai.computeProbability();
+          sum += Double.doubleToRawLongBits(ai.getProbability(1, 1, 0));
+        }
+        return sum;
+      });
+      runner.run("AIBatch.computeProbability x" + n, n, () -> {
+        for (int i = 0; i < n; i++) {
+          int s = update[0]++ % 90;
+          int playerCharge = s / 15;
+          int action = s % 3;
+          if (action == 0 && playerCharge == 0) action = 2;
+          batch.updateUsersMove(i, playerCharge, s / 3 % 5, action);
+        }
+        batch.computeProbability();
+        return Double.doubleToRawLongBits(batch.getProbability(0, 1, 1, 0));
+      });
+    }
+  }
+
+  /**
+   * Benchmarks Move.win() and Move.lose() for every pair of moves.
+   *
+   * @param runner The runner to use.
+   */
+  static void moveBenchmarks(BenchRunner runner) {
+    Move[] moves = {Rules.FIREBALL, Rules.SHIELD, Rules.CHARGE, Rules.SUPER_FIREBALL};
+    for (Move move : moves) {
+      for (Move opponentMove : moves) {
+        String name = "Move.win/lose:" + move.getClass().getSimpleName() + "-" + opponentMove.getClass().getSimpleName();
+        runner.run(name, () -> (move.win(opponentMove) ? 1 : 0) + (move.lose(opponentMove) ? 2 : 0));
+      }
+    }
+  }
+
+  /**
+   * Benchmarks adding results to the Leaderboard and reading it back at several sizes.
+   *
+   * @param runner The runner to use.
+   */
+  static void leaderboardBenchmarks(BenchRunner runner) {
+    for (int size : LEADERBOARD_SIZES) {
+      Random random = new Random(size);
+      Player[] players = new Player[64];
+      for (int i = 0; i < players.length; i++) {
+        players[i] = new Player("Player " + i);
+      }
+
+      Leaderboard leaderboard = new Leaderboard();
+      ArrayList<GameResult> results = new ArrayList<GameResult>(size);
+      for (int i = 0; i < size; i++) {
+        results.add(new GameResult(players[i % players.length], randomScore(random)));
+      }
+      leaderboard.addResults(results);
+
+      runner.runSlow("Leaderboard.getLeaderboard@" + size, () -> leaderboard.getLeaderboard().length);
+      runner.run("Leaderboard.getRank@" + size, () -> leaderboard.getRank(randomScore(random)));
+      runner.run("Leaderboard.getResults(20)@" + size, () -> {
+        int from = random.nextInt(leaderboard.size());
+        return leaderboard.getResults(from, 20).size();
+      });
+      // last, as it grows the leaderboard
+      runner.run("Leaderboard.addResult@" + size, () -> {
+        leaderboard.addResult(new GameResult(players[random.nextInt(players.length)], randomScore(random)));
+        return 1;
+      });
+    }
+  }
+
+  /**
+   * Benchmarks free-for-all turns at several numbers of participants: resolving a turn of given moves and targets
+   * with FreeForAll.resolve(), and a whole turn of a match between AIs, which also picks their moves and targets and
+   * learns from their opponents. The moves resolved are random and every attack is aimed at a random other
+   * participant.
+   *
+   * @param runner The runner to use.
+   */
+  static void freeForAllBenchmarks(BenchRunner runner) {
+    byte[] outcomes = Rules.STANDARD.getOutcomeMatrix();
+    int size = Rules.STANDARD.size();
+    for (int n : new int[]{2, 16, 256}) {
+      // 64 turns to cycle through, so the outcomes are not predictable
+      SplittableRandom random = new SplittableRandom(n);
+      int[][] moves = new int[64][n];
+      int[][] targets = new int[64][n];
+      for (int t = 0; t < 64; t++) {
+        for (int i = 0; i < n; i++) {
+          moves[t][i] = Move.FIREBALL_ID + random.nextInt(4);
+          targets[t][i] = moves[t][i] == Move.FIREBALL_ID || moves[t][i] == Move.SUPER_FIREBALL_ID
+            ? (i + 1 + random.nextInt(n - 1)) % n : i;
+        }
+      }
+      boolean[] hit = new boolean[n];
+      int[] turn = {0};
+      runner.run("FreeForAll.resolve@" + n, () -> {
+        int t = turn[0]++ & 63;
+        FreeForAll.resolve(outcomes, size, moves[t], targets[t], hit, n);
+        return hit[t % n] ? 1 : 0;
+      });
+
+      // AIs that adapt, and AIs that play the equilibrium, whose moves are table lookups, to show the match's own cost
+      for (String mode : new String[]{"adaptive", "equilibrium"}) {
+        AI[] ais = new AI[n];
+        for (int i = 0; i < n; i++) {
+          ais[i] = new AI();
+          ais[i].setRandom(random.split());
+          if (mode.equals("equilibrium")) ais[i].setEquilibriumWeight(1);
+        }
+        FreeForAll match = new FreeForAll(Rules.STANDARD, ais, random.split());
+        runner.run("FreeForAll.step:" + mode + "@" + n, () -> match.step() ? 1 : 0);
+      }
+    }
+  }
+
+  /**
+   * Benchmarks the player profiles and the best score per player at several leaderboard sizes, with one player per
+   * ten results.
+   *
+   * @param runner The runner to use.
+   */
+  static void profileBenchmarks(BenchRunner runner) {
+    for (int size : LEADERBOARD_SIZES) {
+      Random random = new Random(size);
+      Player[] players = new Player[size / 10];
+      for (int i = 0; i < players.length; i++) {
+        players[i] = new Player("Player " + i);
+      }
+
+      Leaderboard leaderboard = new Leaderboard();
+      for (int i = 0; i < size; i++) {
+        leaderboard.addResult(new GameResult(players[i % players.length], randomScore(random)));
+      }
+
+      runner.run("Leaderboard.getProfile@" + size,
+        () -> leaderboard.getProfile(players[random.nextInt(players.length)].getName()).getGames());
+      runner.run("Leaderboard.getPlayerRank@" + size,
+        () -> leaderboard.getPlayerRank(players[random.nextInt(players.length)].getName()));
+      runner.run("Leaderboard.getPlayers(20)@" + size,
+        () -> leaderboard.getPlayers(random.nextInt(leaderboard.getPlayerCount()), 20).size());
+    }
+  }
+
+  /**
+   * Benchmarks opening a saved Leaderboard with a snapshot of 1M results and a log tail of 10k results, and reading a
+   * player profile from it.
+   *
+   * @param runner The runner to use.
+   */
+  static void storeBenchmarks(BenchRunner runner) {
+    // writing the snapshot takes a while, so skip it when the benchmark is filtered out
+    if (!"Leaderboard.open@1000000".contains(runner.getFilter())
+      && !"Leaderboard.open+getProfile@1000000".contains(runner.getFilter())) return;
+    try {
+      Path directory = Files.createTempDirectory("fireball-bench");
+      Random random = new Random(1);
+      ArrayList<GameResult> results = new ArrayList<GameResult>();
+      for (int i = 0; i < 1_000_000; i++) {
+        results.add(new GameResult(new Player("Player " + i % 64), randomScore(random)));
+      }
+      LeaderboardSnapshot.write(directory.resolve("leaderboard-1.snap"), 1, null, results);
+      Leaderboard saved = Leaderboard.open(directory);
+      for (int i = 0; i < 10_000; i++) {
+        saved.addResult(new GameResult(new Player("Player " + i % 64), randomScore(random)));
+      }
+      saved.close();
+
+      runner.runSlow("Leaderboard.open@1000000", () -> {
+        try {
+          Leaderboard leaderboard = Leaderboard.open(directory);
+          leaderboard.close();
+          return leaderboard.size();
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      });
+      // the first profile read counts the snapshot into the profiles
+      runner.runSlow("Leaderboard.open+getProfile@1000000", () -> {
+        try {
+          Leaderboard leaderboard = Leaderboard.open(directory);
+          int games = leaderboard.getProfile("Player 1").getGames();
+          leaderboard.close();
+          return games;
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      });
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Benchmarks checking out a player's AI model from memory and from disk, against creating a fresh AI.
+   *
+   * @param runner The runner to use.
+   */
+  static void modelBenchmarks(BenchRunner runner) {
+    try {
+      Path directory = Files.createTempDirectory("fireball-models");
+      AIModelStore saved = new AIModelStore(directory, 0);
+      Random random = new Random(1);
+      for (int p = 0; p < 1000; p++) {
+        AI ai = new AI();
+        for (int t = 0; t < 200; t++) {
+          int playerCharge = random.nextInt(5);
+          int aiCharge = random.nextInt(5);
+          ai.updateUsersMove(playerCharge, aiCharge, playerCharge == 0 ? 1 + random.nextInt(2) : random.nextInt(3));
+        }
+        saved.checkIn("Player " + p, ai); // written out at once, nothing stays resident
+      }
+
+      int[] player = {0};
+      runner.run("AI.new", () -> new AI().getCharge());
+      runner.run("AIModelStore.checkOut:disk", () -> saved.checkOut("Player " + player[0]++ % 1000).getCharge());
+      AIModelStore resident = new AIModelStore(directory, 1000 * 4096);
+      for (int p = 0; p < 1000; p++) {
+        resident.checkIn("Player " + p, resident.checkOut("Player " + p));
+      }
+      runner.run("AIModelStore.checkOut+checkIn:memory", () -> {
+        String name = "Player " + player[0]++ % 1000;
+        AI ai = resident.checkOut(name);
+        resident.checkIn(name, ai);
+        return ai.getCharge();
+      });
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Benchmarks recording a turn with ReplayWriter.turn() and scanning a replay of a million turns with ReplayReader.
+   *
+   * @param runner The runner to use.
+   */
+  static void replayBenchmarks(BenchRunner runner) {
+    try {
+      Path directory = Files.createTempDirectory("fireball-replays");
+      Move[] moves = {Rules.FIREBALL, Rules.SHIELD, Rules.CHARGE, Rules.SUPER_FIREBALL};
+      MatchEngine.Outcome[] outcomes = MatchEngine.Outcome.values();
+      int[] turn = {0};
+      try (ReplayWriter writer = new ReplayWriter(directory.resolve("turns.fbr"))) {
+        runner.run("ReplayWriter.turn", () -> {
+          int t = turn[0]++;
+          writer.turn(t >>> 10, 1 + (t >>> 4 & 31), 1 + (t & 15), moves[t & 3], moves[t >>> 2 & 3], t % 5, t % 7,
+            outcomes[t % 3]);
+          return t;
+        });
+      }
+
+      if (!"ReplayReader.read@1000000".contains(runner.getFilter())) return;
+      Path file = directory.resolve("scan.fbr");
+      Random random = new Random(1);
+      try (ReplayWriter writer = new ReplayWriter(file)) {
+        for (int t = 0; t < 1_000_000; t++) {
+          if (t % 50 == 0) writer.matchStart(t / 50, "Player " + random.nextInt(1000), Rules.STANDARD.getChargeCap());
+          writer.turn(t / 50, 1 + t % 50 / 5, 1 + t % 5, moves[random.nextInt(4)], moves[random.nextInt(4)],
+            random.nextInt(6), random.nextInt(6), outcomes[random.nextInt(3)]);
+        }
+      }
+      long bytes = Files.size(file);
+      System.out.printf("(replay of 1000000 turns: %d bytes, %.2f bytes/turn)%n", bytes, bytes / 1e6);
+      ReplayReader reader = new ReplayReader();
+      ReplayStats stats = new ReplayStats();
+      runner.runSlow("ReplayReader.read@1000000", () -> {
+        try {
+          return reader.read(file, stats);
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      });
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Benchmarks a turn of an AI that learns habits over one long session: a million turns against a player with a
+   * habit and some noise, printing the memory the session holds as it goes. The habit model's table has a fixed size
+   * and the model has at most one slot per state, so the memory must stay flat however many turns are played.
+   *
+   * @param runner The runner to use.
+   */
+  static void habitBenchmarks(BenchRunner runner) {
+    if (!"AI.habits@1000000".contains(runner.getFilter())) return;
+    AI ai = new AI();
+    ai.setHabitOrder(3);
+    ai.setRandom(new SplittableRandom(1));
+    Random random = new Random(1);
+    int[] last = {2, 2};
+    MatchEngine[] engine = {new MatchEngine(new Player("Player"), ai)};
+    LongSupplier turn = () -> {
+      if (engine[0].isOver()) engine[0] = new MatchEngine(new Player("Player"), ai);
+      int charge = engine[0].getPlayer().getCharge();
+      // charges twice, then shields, then fireballs if it can, one move in ten at random
+      int action = last[0] == 2 && last[1] == 2 ? 1 : last[0] == 1 && charge > 0 ? 0 : 2;
+      if (random.nextInt(10) == 0) action = charge == 0 ? 1 + random.nextInt(2) : random.nextInt(3);
+      Move move = charge >= 5 ? Rules.SUPER_FIREBALL : action == 0 ? Rules.FIREBALL
+        : action == 1 ? Rules.SHIELD : Rules.CHARGE;
+      last[1] = last[0];
+      last[0] = action;
+      return engine[0].step(move).ordinal();
+    };
+    long turns = 0;
+    for (long checkpoint : new long[]{1_000, 10_000, 100_000, 1_000_000}) {
+      for (; turns < checkpoint; turns++) {
+        turn.getAsLong();
+      }
+      System.out.printf("(habits after %d turns: %d stored states, %d B of habit counts, %d KB of heap in use)%n", turns,
+        ai.getStoredStates(), ai.getHabitBytes(), usedHeap() / 1024);
+    }
+    runner.run("AI.habits@1000000", turn);
+  }
+
+  /**
+   * Measures the heap an AI takes, fresh and after learning 200 user moves in random states like the saved models of
+   * modelBenchmarks(), by creating 10,000 of each and printing the heap they retain per AI. The solved prior they
+   * share is created before measuring.
+   *
+   * @param runner The runner to use.
+   */
+  static void footprintBenchmarks(BenchRunner runner) {
+    if (!"AI.footprint".contains(runner.getFilter())) return;
+    new AI().computeProbability();
+    Random random = new Random(1);
+    for (int moves : new int[]{0, 200}) {
+      AI[] ais = new AI[10_000];
+      long before = usedHeap();
+      for (int p = 0; p < ais.length; p++) {
+        ais[p] = new AI();
+        for (int t = 0; t < moves; t++) {
+          int playerCharge = random.nextInt(5);
+          int aiCharge = random.nextInt(5);
+          ais[p].updateUsersMove(playerCharge, aiCharge, playerCharge == 0 ? 1 + random.nextInt(2) : random.nextInt(3));
+        }
+        ais[p].computeProbability();
+      }
+      long bytes = (usedHeap() - before) / ais.length;
+      System.out.printf("(AI.footprint after %d moves: %d B per AI, %d stored states)%n", moves, bytes,
+        ais[0].getStoredStates());
+    }
+  }
+
+  /**
+   * Returns the heap in use after collecting the garbage, which is what the benchmarks so far retain.
+   *
+   * @return The bytes of heap in use.
+   */
+  private static long usedHeap() {
+    MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+    }
+    return memory.getHeapMemoryUsage().getUsed();
+  }
+
+  /**
+   * Draws a score with roughly the distribution of real games: most players lose early, few win many rounds.
+   *
+   * @param random The random source.
+   * @return A score of at least 0.
+   */
+  static int randomScore(Random random) {
+    int score = 0;
+    while (score < 30 && random.nextInt(3) == 0) score++;
+    return score;
+  }
+}
\ No newline at end of file
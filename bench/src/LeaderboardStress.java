@@ -0,0 +1,133 @@
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Stress test for concurrent Leaderboard ingestion.
+ * <p>
+ * For 1, 2, 4, ... threads up to the number of cores, every thread adds the same number of GameResults to a shared
+ * Leaderboard while a reader keeps reading pages and versions. The test checks that no result is lost, that versions
+ * only grow, and reports the ingestion throughput and its speedup over a single thread. With more threads than
+ * available processors the threads only take turns, so those rows get a warning and no speedup.
+ * <p>
+ * Run with {@code java LeaderboardStress [resultsPerThread] [maxThreads]}; maxThreads defaults to the number of cores.
+ *
+ * @author Alex
+ */
+public class LeaderboardStress {
+  /**
+   * Runs the stress test.
+   *
+   * @param args {@code [resultsPerThread] [maxThreads]}
+   * @throws Exception If a thread fails.
+   */
+  public static void main(String[] args) throws Exception {
+    int perThread = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+    int cores = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+    ArrayList<Integer> threadCounts = new ArrayList<Integer>();
+    for (int threads = 1; threads < cores; threads *= 2) {
+      threadCounts.add(threads);
+    }
+    threadCounts.add(cores);
+
+    // warm up the JIT first
+    for (int threads : threadCounts) {
+      run(threads, perThread);
+    }
+
+    int available = Runtime.getRuntime().availableProcessors();
+    if (cores > available) {
+      System.err.printf("Warning: %d threads on %d available processors, no speedup is reported beyond %d threads%n",
+          cores, available, available);
+    }
+    System.out.printf("%8s %16s %10s %14s%n", "threads", "results/s", "speedup", "reader pages");
+    double single = 0;
+    for (int threads : threadCounts) {
+      double[] result = run(threads, perThread);
+      if (threads == 1) single = result[0];
+      // the writers and the reader share the processors, so more threads than processors can't speed anything up
+      String speedup = threads > available ? "n/a" : String.format("%.2f", result[0] / single);
+      System.out.printf("%8d %16.0f %10s %14.0f%n", threads, result[0], speedup, result[1]);
+    }
+  }
+
+  /**
+   * Runs one configuration of the stress test.
+   *
+   * @param threads   Number of writer threads.
+   * @param perThread Number of GameResults each writer adds.
+   * @return The ingestion rate in results per second and the number of pages the reader read meanwhile.
+   * @throws Exception If a thread fails or a check does not hold.
+   */
+  private static double[] run(int threads, int perThread) throws Exception {
+    Leaderboard leaderboard = new Leaderboard();
+    Player[] players = new Player[64];
+    for (int i = 0; i < players.length; i++) {
+      players[i] = new Player("Player " + i);
+    }
+    GameResult[][] results = new GameResult[threads][perThread];
+    for (int t = 0; t < threads; t++) {
+      Random random = new Random(t);
+      for (int i = 0; i < perThread; i++) {
+        results[t][i] = new GameResult(players[random.nextInt(players.length)], Benchmarks.randomScore(random));
+      }
+    }
+
+    CyclicBarrier start = new CyclicBarrier(threads + 1);
+    Thread[] writers = new Thread[threads];
+    for (int t = 0; t < threads; t++) {
+      GameResult[] mine = results[t];
+      writers[t] = new Thread(() -> {
+        await(start);
+        for (GameResult result : mine) {
+          leaderboard.addResult(result);
+        }
+      });
+      writers[t].start();
+    }
+
+    // a reader that must never see the leaderboard shrink or go back in time
+    AtomicBoolean done = new AtomicBoolean();
+    long[] pages = {0};
+    boolean[] wentBack = {false};
+    Thread reader = new Thread(() -> {
+      long lastVersion = 0;
+      while (!done.get()) {
+        long version = leaderboard.getVersion();
+        if (version < lastVersion) wentBack[0] = true;
+        lastVersion = version;
+        leaderboard.getResults(0, 20);
+        pages[0]++;
+      }
+    });
+    reader.start();
+
+    await(start);
+    long begin = System.nanoTime();
+    for (Thread writer : writers) {
+      writer.join();
+    }
+    int size = leaderboard.size();
+    long nanos = System.nanoTime() - begin;
+    done.set(true);
+    reader.join();
+
+    if (size != threads * perThread) throw new IllegalStateException("Lost results: " + size);
+    if (wentBack[0]) throw new IllegalStateException("The reader saw the version go back");
+    return new double[]{size / (nanos / 1e9), pages[0]};
+  }
+
+  /**
+   * Waits at a barrier.
+   *
+   * @param barrier The barrier.
+   */
+  private static void await(CyclicBarrier barrier) {
+    try {
+      barrier.await();
+    } catch (Exception e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
\ No newline at end of file
@@ -0,0 +1,237 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.SplittableRandom;
+
+/**
+ * Load generator for GameServer.
+ * <p>
+ * Opens the given number of sessions and keeps every one of them busy: each session starts a match, plays a random
+ * affordable move as soon as the previous turn's reply arrives, and starts a new match after losing. All sessions are
+ * driven by one thread through a Selector, so the client itself needs no thread per session. The time from sending a
+ * move to receiving its reply is recorded as the turn latency.
+ * <p>
+ * Run with {@code java LoadClient [sessionCounts] [seconds] [host:port]}, where sessionCounts is a comma-separated
+ * list such as {@code 1000,10000,50000}. Without host:port a GameServer is started in this JVM; since every session
+ * then costs two file descriptors in one process, large runs are better made against a separate
+ * {@code java Main server 7777 50000}.
+ *
+ * @author Dougy
+ */
+public class LoadClient {
+  private static final byte[][] MOVES = {
+    "MOVE F\n".getBytes(StandardCharsets.US_ASCII),
+    "MOVE S\n".getBytes(StandardCharsets.US_ASCII),
+    "MOVE C\n".getBytes(StandardCharsets.US_ASCII),
+    "MOVE X\n".getBytes(StandardCharsets.US_ASCII)
+  };
+
+  /**
+   * The state of one client session.
+   */
+  private static class Session {
+    final ByteBuffer in = ByteBuffer.allocate(128);
+    ByteBuffer out;
+    boolean playing; // whether a match was started, i.e. replies are turn results
+    int charge;
+    long sentAt;
+  }
+
+  /**
+   * Runs the load test.
+   *
+   * @param args {@code [sessionCounts] [seconds] [host:port]}
+   * @throws IOException If the server cannot be started or reached.
+   */
+  public static void main(String[] args) throws IOException {
+    String[] counts = (args.length > 0 ? args[0] : "1000,10000,50000").split(",");
+    int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+    GameServer server = null;
+    InetSocketAddress address;
+    if (args.length > 2) {
+      String[] hostPort = args[2].split(":");
+      address = new InetSocketAddress(hostPort[0], Integer.parseInt(hostPort[1]));
+    } else {
+      int most = 0;
+      for (String count : counts) {
+        most = Math.max(most, Integer.parseInt(count.trim()));
+      }
+      server = new GameServer(0, new Leaderboard(), most, GameServer.DEFAULT_IDLE_TIMEOUT);
+      GameServer running = server;
+      Thread acceptor = new Thread(() -> {
+        try {
+          running.run();
+        } catch (IOException e) {
+          System.err.println("Server failed: " + e.getMessage());
+        }
+      }, "Game server");
+      acceptor.setDaemon(true);
+      acceptor.start();
+      address = new InetSocketAddress("127.0.0.1", server.getPort());
+    }
+
+    System.out.printf("%10s %14s %12s %12s %12s %10s%n", "sessions", "turns/s", "p50 us", "p99 us", "max us", "errors");
+    for (String count : counts) {
+      run(address, Integer.parseInt(count.trim()), seconds);
+    }
+    if (server != null) server.close();
+  }
+
+  /**
+   * Runs the load test with one number of sessions and prints a line of results.
+   *
+   * @param address  The server's address.
+   * @param sessions The number of sessions.
+   * @param seconds  The number of seconds to measure for, after every session is connected.
+   * @throws IOException If the server cannot be reached.
+   */
+  private static void run(InetSocketAddress address, int sessions, int seconds) throws IOException {
+    LatencyHistogram latency = new LatencyHistogram();
+    SplittableRandom random = new SplittableRandom(sessions);
+    long turns = 0;
+    long errors = 0;
+    int connected = 0;
+    try (Selector selector = Selector.open()) {
+      // connect in steps so that the server's accept backlog is not overrun
+      int started = 0;
+      long measureFrom = Long.MAX_VALUE;
+      long end = Long.MAX_VALUE;
+      while (System.nanoTime() < end) {
+        while (started < sessions && started - connected < 1000) {
+          SocketChannel channel = SocketChannel.open();
+          channel.configureBlocking(false);
+          channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+          channel.connect(address);
+          channel.register(selector, SelectionKey.OP_CONNECT, new Session());
+          started++;
+        }
+        selector.select(100);
+        Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+        while (keys.hasNext()) {
+          SelectionKey key = keys.next();
+          keys.remove();
+          SocketChannel channel = (SocketChannel) key.channel();
+          Session session = (Session) key.attachment();
+          if (key.isConnectable()) {
+            channel.finishConnect();
+            connected++;
+            send(key, session, ("PLAY load" + connected + "\n").getBytes(StandardCharsets.US_ASCII));
+            continue;
+          }
+          if (key.isWritable()) {
+            writePending(key, session);
+          }
+          if (!key.isValid() || !key.isReadable()) continue;
+          if (channel.read(session.in) < 0) throw new IOException("The server closed a session");
+
+          String reply;
+          while ((reply = nextLine(session.in)) != null) {
+            if (reply.startsWith("ERR")) {
+              if (reply.equals("ERR busy")) throw new IOException("The server is full");
+              errors++;
+              session.charge = 0;
+              session.playing = false;
+              send(key, session, ("PLAY load\n").getBytes(StandardCharsets.US_ASCII));
+              continue;
+            }
+            if (session.playing) {
+              // <AI move> <outcome> <round> <turn> <player charge> <AI charge>
+              latency.record(System.nanoTime() - session.sentAt);
+              turns++;
+              String[] fields = reply.split(" ");
+              session.charge = Integer.parseInt(fields[4]);
+              if (fields[1].equals("MATCH_LOST")) {
+                session.charge = 0;
+                session.playing = false;
+                send(key, session, ("PLAY load\n").getBytes(StandardCharsets.US_ASCII));
+                continue;
+              }
+            }
+            session.playing = true;
+            session.sentAt = System.nanoTime();
+            send(key, session, MOVES[pickMove(random, session.charge)]);
+          }
+        }
+
+        if (connected == sessions && measureFrom == Long.MAX_VALUE) {
+          // every session is up, start measuring from a clean slate
+          latency.reset();
+          turns = 0;
+          errors = 0;
+          measureFrom = System.nanoTime();
+          end = measureFrom + seconds * 1_000_000_000L;
+        }
+      }
+      double elapsed = (System.nanoTime() - measureFrom) / 1e9;
+      System.out.printf("%10d %14.0f %12.1f %12.1f %12.1f %10d%n", sessions, turns / elapsed,
+        latency.getPercentile(50) / 1e3, latency.getPercentile(99) / 1e3, latency.getMax() / 1e3, errors);
+
+      for (SelectionKey key : selector.keys()) {
+        key.channel().close();
+      }
+    }
+  }
+
+  /**
+   * Picks a random move the session can afford.
+   *
+   * @param random The random number generator.
+   * @param charge The session Player's charge.
+   * @return The index of the move in MOVES.
+   */
+  private static int pickMove(SplittableRandom random, int charge) {
+    if (charge >= 5 && random.nextInt(4) == 0) return 3;
+    if (charge >= 1) return random.nextInt(3);
+    return 1 + random.nextInt(2);
+  }
+
+  /**
+   * Sends a request, keeping whatever the socket does not take yet for when it becomes writable.
+   *
+   * @param key     The session's key.
+   * @param session The session.
+   * @param request The request.
+   * @throws IOException If writing fails.
+   */
+  private static void send(SelectionKey key, Session session, byte[] request) throws IOException {
+    session.out = ByteBuffer.wrap(request);
+    writePending(key, session);
+  }
+
+  /**
+   * Writes the rest of a session's request, and waits for replies once it is written.
+   *
+   * @param key     The session's key.
+   * @param session The session.
+   * @throws IOException If writing fails.
+   */
+  private static void writePending(SelectionKey key, Session session) throws IOException {
+    ((SocketChannel) key.channel()).write(session.out);
+    key.interestOps(session.out.hasRemaining() ? SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+  }
+
+  /**
+   * Takes the next complete line out of a session's input buffer.
+   *
+   * @param in The buffer, in write mode.
+   * @return The line without its '\n', or null if no complete line was received yet.
+   */
+  private static String nextLine(ByteBuffer in) {
+    for (int i = 0; i < in.position(); i++) {
+      if (in.get(i) == '\n') {
+        String line = new String(in.array(), 0, i, StandardCharsets.US_ASCII);
+        in.flip();
+        in.position(i + 1);
+        in.compact();
+        return line;
+      }
+    }
+    return null;
+  }
+}
\ No newline at end of file
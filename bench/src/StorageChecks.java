@@ -0,0 +1,115 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Checks that what the game saves reads back the same: every check writes to a temporary directory, reopens it and
+ * throws an IllegalStateException if something came back different.
+ * <p>
+ * Run with {@code java StorageChecks}; it prints the checks as they pass.
+ *
+ * @author Dougy
+ */
+public class StorageChecks {
+  /**
+   * Runs the checks.
+   *
+   * @param args Not used.
+   * @throws IOException If a temporary directory cannot be used.
+   */
+  public static void main(String[] args) throws IOException {
+    longNamesSurviveCompaction();
+    replayKeepsWholeCharacters();
+    System.out.println("ok");
+  }
+
+  /**
+   * Compacts and reopens a leaderboard holding names longer than a snapshot row, and checks that each player still
+   * has a single profile with all their results.
+   *
+   * @throws IOException If the leaderboard cannot be saved.
+   */
+  private static void longNamesSurviveCompaction() throws IOException {
+    String[] names = {"x".repeat(LeaderboardSnapshot.MAX_NAME_BYTES + 11),
+      "a" + "\u00e9".repeat(LeaderboardSnapshot.MAX_NAME_BYTES), "\ud83d\udd25".repeat(20)};
+    Path directory = Files.createTempDirectory("fireball-check");
+    try {
+      Leaderboard leaderboard = Leaderboard.open(directory, 4);
+      for (int score = 0; score < 10; score++) {
+        for (String name : names) {
+          leaderboard.addResult(new GameResult(new Player(name), score));
+        }
+      }
+      leaderboard.close();
+      try (Stream<Path> files = Files.list(directory)) {
+        if (files.noneMatch(file -> file.toString().endsWith(".snap"))) throw new IllegalStateException("No snapshot");
+      }
+
+      leaderboard = Leaderboard.open(directory, 4);
+      for (String name : names) {
+        leaderboard.addResult(new GameResult(new Player(name), 3));
+      }
+      if (leaderboard.getPlayerCount() != names.length) {
+        throw new IllegalStateException("Players after reopening: " + leaderboard.getPlayerCount());
+      }
+      for (String name : names) {
+        PlayerProfile profile = leaderboard.getProfile(name);
+        if (profile == null || profile.getGames() != 11 || profile.getBestScore() != 9) {
+          throw new IllegalStateException("Lost results of " + name);
+        }
+        String saved = profile.getName();
+        if (!name.startsWith(saved) || Character.isHighSurrogate(saved.charAt(saved.length() - 1))) {
+          throw new IllegalStateException("Bad name: " + saved);
+        }
+      }
+      leaderboard.close();
+      System.out.println("long names survive compaction");
+    } finally {
+      try (Stream<Path> files = Files.walk(directory)) {
+        files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+      }
+    }
+  }
+
+  /**
+   * Records matches of players whose names are longer than a replay keeps, with a supplementary character across
+   * the limit, and checks that the replay reads back the names cut before that character rather than through it.
+   *
+   * @throws IOException If the replay cannot be written or read.
+   */
+  private static void replayKeepsWholeCharacters() throws IOException {
+    int max = ReplayWriter.MAX_NAME_CHARS;
+    String fire = "\ud83d\udd25"; // two chars
+    String[] names = {"a".repeat(max - 1) + fire, "a".repeat(max - 2) + fire + "b", fire.repeat(max)};
+    String[] expected = {"a".repeat(max - 1), "a".repeat(max - 2) + fire, fire.repeat(max / 2)};
+    Path file = Files.createTempFile("fireball-check", ".replay");
+    Files.delete(file);
+    try {
+      try (ReplayWriter writer = new ReplayWriter(file)) {
+        for (String name : names) {
+          writer.matchStart(writer.newSession(), name, 5);
+        }
+      }
+      ArrayList<String> read = new ArrayList<String>();
+      new ReplayReader().read(file, new ReplayReader.Visitor() {
+        @Override
+        public void matchStart(long session, String name, int chargeCap) {
+          read.add(name);
+        }
+
+        @Override
+        public void turn(long session, int round, int turn, int playerMoveId, int aiMoveId, int playerCharge,
+                         int aiCharge, MatchEngine.Outcome outcome) {
+        }
+      });
+      if (!read.equals(Arrays.asList(expected))) throw new IllegalStateException("Replay names read back differ");
+      System.out.println("replays keep whole characters");
+    } finally {
+      Files.deleteIfExists(file);
+    }
+  }
+}
\ No newline at end of file
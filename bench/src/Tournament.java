@@ -0,0 +1,354 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Self-play tournament between AI variants and scripted bots, for evaluating an AI change without playing it by hand.
+ * <p>
+ * Every pair of entrants plays the same number of matches. A match is ROUNDS rounds between the same two bots, so the
+ * adaptive AIs can learn their opponent as they would learn a user; a round that lasts longer than MAX_TURNS turns is a
+ * draw. The entrant that wins more rounds wins the match. Matches are spread over a ForkJoinPool, and every match draws
+ * its randomness from its own SplittableRandom, split off a single root generator in a fixed order, so a run gives the
+ * same results for the same seed whatever the number of threads.
+ * <p>
+ * Run with {@code java Tournament [matchesPerPairing] [seed] [threads] [chargeCap]}, where a charge cap other than 5
+ * plays a rule variant whose super fireball costs that much (without the equilibrium AI, whose table is solved for the
+ * standard rules). For every pairing and every entrant overall it prints wins, draws and losses and the score (a win
+ * counts 1, a draw 1/2) with its 95% confidence interval.
+ *
+ * @author Dougy
+ */
+public class Tournament {
+  private static final int ROUNDS = 9;
+  private static final int MAX_TURNS = 200;
+  private static final int MATCHES_PER_TASK = 16;
+
+  private static final byte WIN = 0;
+  private static final byte DRAW = 1;
+  private static final byte LOSS = 2;
+
+  /**
+   * A player of the tournament. Each match gets new bots, so a bot only needs to remember one match.
+   */
+  interface Bot {
+    /**
+     * Picks the bot's Move for a turn.
+     *
+     * @param charge         The bot's charge.
+     * @param opponentCharge The opponent's charge.
+     * @return An affordable Move.
+     */
+    Move choose(int charge, int opponentCharge);
+
+    /**
+     * Tells the bot what the opponent did in a turn.
+     *
+     * @param charge         The bot's charge before the turn.
+     * @param opponentCharge The opponent's charge before the turn.
+     * @param opponentMove   The opponent's Move.
+     */
+    default void observe(int charge, int opponentCharge, Move opponentMove) {
+    }
+  }
+
+  /**
+   * Creates the bots of an entrant from a match's generator.
+   */
+  interface BotFactory {
+    /**
+     * Creates a bot for a match.
+     *
+     * @param random The generator of the bot's choices, owned by the bot.
+     * @return The bot.
+     */
+    Bot create(SplittableRandom random);
+  }
+
+  /**
+   * A named kind of bot taking part in the tournament.
+   */
+  static class Entrant {
+    final String name;
+    final BotFactory factory;
+
+    /**
+     * Creates an entrant.
+     *
+     * @param name    The name shown in the results.
+     * @param factory Creates the entrant's bots.
+     */
+    Entrant(String name, BotFactory factory) {
+      this.name = name;
+      this.factory = factory;
+    }
+  }
+
+  /**
+   * Plays as an AI, as the game does: the opponent is the AI's user.
+   */
+  static class AIBot implements Bot {
+    private final AI ai;
+
+    /**
+     * Wraps an AI.
+     *
+     * @param ai     The AI.
+     * @param random The generator of the AI's choices.
+     */
+    AIBot(AI ai, SplittableRandom random) {
+      this.ai = ai;
+      ai.setRandom(random);
+    }
+
+    @Override
+    public Move choose(int charge, int opponentCharge) {
+      return ai.makeMove(opponentCharge, charge);
+    }
+
+    @Override
+    public void observe(int charge, int opponentCharge, Move opponentMove) {
+      int action = MatchEngine.actionIndex(opponentMove);
+      if (action >= 0) ai.updateUsersMove(opponentCharge, charge, action);
+    }
+  }
+
+  /**
+   * Returns the entrants of the standard tournament.
+   *
+   * @param rules The Rules the tournament is played by.
+   * @return The entrants.
+   */
+  static List<Entrant> standardEntrants(Rules rules) {
+    Move superFireball = rules.getMove(Move.SUPER_FIREBALL_ID);
+    Move[] moves = {Rules.FIREBALL, Rules.SHIELD, Rules.CHARGE, superFireball};
+    List<Entrant> entrants = new ArrayList<>();
+    for (double exponent : new double[]{1, 3, 9}) {
+      entrants.add(new Entrant("adaptive^" + (int) exponent, random -> {
+        AI ai = new AI(rules);
+        ai.setExponent(exponent);
+        return new AIBot(ai, random);
+      }));
+    }
+    if (rules == Rules.STANDARD) {
+      entrants.add(new Entrant("equilibrium", random -> {
+        AI ai = new AI();
+        ai.setEquilibriumWeight(1);
+        return new AIBot(ai, random);
+      }));
+    }
+    // charges up, then fires a super fireball
+    entrants.add(new Entrant("charger", random -> (charge, opponentCharge) ->
+      charge >= superFireball.getCost() ? superFireball : Rules.CHARGE));
+    // any affordable Move, uniformly
+    entrants.add(new Entrant("random", random -> (charge, opponentCharge) -> {
+      while (true) {
+        Move move = moves[random.nextInt(moves.length)];
+        if (move.getCost() <= charge) return move;
+      }
+    }));
+    return entrants;
+  }
+
+  private final Rules rules;
+  private final List<Entrant> entrants;
+  private final int matchesPerPairing;
+  private final int[][] pairings; // pairings[p] holds the indices of the two entrants of pairing p
+  private final byte[] results; // results[match] from the first entrant's view, matches of pairing p are consecutive
+  private long turns;
+
+  /**
+   * Creates a tournament.
+   *
+   * @param rules             The Rules the matches are played by.
+   * @param entrants          The entrants; every pair of them plays.
+   * @param matchesPerPairing The number of matches each pair plays.
+   */
+  public Tournament(Rules rules, List<Entrant> entrants, int matchesPerPairing) {
+    this.rules = rules;
+    this.entrants = entrants;
+    this.matchesPerPairing = matchesPerPairing;
+    List<int[]> pairs = new ArrayList<>();
+    for (int a = 0; a < entrants.size(); a++) {
+      for (int b = a + 1; b < entrants.size(); b++) {
+        pairs.add(new int[]{a, b});
+      }
+    }
+    pairings = pairs.toArray(new int[0][]);
+    results = new byte[pairings.length * matchesPerPairing];
+  }
+
+  /**
+   * Plays every match of a range, splitting the range and its generator between subtasks.
+   */
+  private class Matches extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final int from;
+    private final int to;
+    private final SplittableRandom random;
+    long turns;
+
+    /**
+     * Creates the task for a range of matches.
+     *
+     * @param from   The first match.
+     * @param to     The match after the last.
+     * @param random The generator the range's matches draw from.
+     */
+    Matches(int from, int to, SplittableRandom random) {
+      this.from = from;
+      this.to = to;
+      this.random = random;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from <= MATCHES_PER_TASK) {
+        for (int match = from; match < to; match++) {
+          int[] pairing = pairings[match / matchesPerPairing];
+          SplittableRandom matchRandom = random.split();
+          Bot first = entrants.get(pairing[0]).factory.create(matchRandom.split());
+          Bot second = entrants.get(pairing[1]).factory.create(matchRandom.split());
+          results[match] = playMatch(first, second);
+        }
+        return;
+      }
+      // the split happens before either half runs, so the streams do not depend on scheduling
+      int middle = (from + to) >>> 1;
+      Matches left = new Matches(from, middle, random.split());
+      Matches right = new Matches(middle, to, random);
+      invokeAll(left, right);
+      turns = left.turns + right.turns;
+    }
+
+    /**
+     * Plays one match.
+     *
+     * @param first  The first entrant's bot.
+     * @param second The second entrant's bot.
+     * @return The result for the first bot.
+     */
+    private byte playMatch(Bot first, Bot second) {
+      int firstRounds = 0;
+      int secondRounds = 0;
+      for (int round = 0; round < ROUNDS; round++) {
+        int firstCharge = 0;
+        int secondCharge = 0;
+        for (int turn = 0; turn < MAX_TURNS; turn++) {
+          Move firstMove = first.choose(firstCharge, secondCharge);
+          Move secondMove = second.choose(secondCharge, firstCharge);
+          first.observe(firstCharge, secondCharge, secondMove);
+          second.observe(secondCharge, firstCharge, firstMove);
+          firstCharge -= firstMove.getCost();
+          secondCharge -= secondMove.getCost();
+          turns++;
+          byte result = rules.resolve(firstMove, secondMove);
+          if (result == Rules.WIN) {
+            firstRounds++;
+            break;
+          }
+          if (result == Rules.LOSE) {
+            secondRounds++;
+            break;
+          }
+        }
+      }
+      return firstRounds > secondRounds ? WIN : firstRounds < secondRounds ? LOSS : DRAW;
+    }
+  }
+
+  /**
+   * Plays every match.
+   *
+   * @param pool The pool to play on.
+   * @param seed The seed all randomness is derived from.
+   */
+  public void play(ForkJoinPool pool, long seed) {
+    Matches all = new Matches(0, results.length, new SplittableRandom(seed));
+    pool.invoke(all);
+    turns = all.turns;
+  }
+
+  /**
+   * Returns the number of turns played.
+   *
+   * @return The number of turns.
+   */
+  public long getTurns() {
+    return turns;
+  }
+
+  /**
+   * Counts the results of an entrant.
+   *
+   * @param entrant  The entrant's index.
+   * @param opponent The opponent's index, or -1 for all opponents.
+   * @return The numbers of wins, draws and losses.
+   */
+  long[] count(int entrant, int opponent) {
+    long[] counts = new long[3];
+    for (int p = 0; p < pairings.length; p++) {
+      int[] pairing = pairings[p];
+      boolean first = pairing[0] == entrant && (opponent < 0 || pairing[1] == opponent);
+      boolean second = pairing[1] == entrant && (opponent < 0 || pairing[0] == opponent);
+      if (!first && !second) continue;
+      for (int match = p * matchesPerPairing; match < (p + 1) * matchesPerPairing; match++) {
+        // results are from the first entrant's view
+        counts[first ? results[match] : 2 - results[match]]++;
+      }
+    }
+    return counts;
+  }
+
+  /**
+   * Formats wins, draws and losses with the score and its 95% confidence interval, by the normal approximation.
+   *
+   * @param counts The numbers of wins, draws and losses.
+   * @return The formatted results.
+   */
+  static String format(long[] counts) {
+    double n = counts[WIN] + counts[DRAW] + counts[LOSS];
+    double score = (counts[WIN] + counts[DRAW] / 2.0) / n;
+    double squares = (counts[WIN] + counts[DRAW] / 4.0) / n; // mean of the squared per-match scores
+    double halfWidth = 1.96 * Math.sqrt(Math.max(0, squares - score * score) / n);
+    return String.format("%7d %7d %7d   %5.1f%% +- %4.1f%%", counts[WIN], counts[DRAW], counts[LOSS], score * 100,
+      halfWidth * 100);
+  }
+
+  /**
+   * Runs the standard tournament and prints the results.
+   *
+   * @param args {@code [matchesPerPairing] [seed] [threads] [chargeCap]}
+   */
+  public static void main(String[] args) {
+    int matches = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+    long seed = args.length > 1 ? Long.parseLong(args[1]) : 1;
+    int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+    Rules rules = Rules.withChargeCap(args.length > 3 ? Integer.parseInt(args[3]) : SuperFireball.DEFAULT_COST);
+
+    List<Entrant> entrants = standardEntrants(rules);
+    Tournament tournament = new Tournament(rules, entrants, matches);
+    ForkJoinPool pool = new ForkJoinPool(threads);
+    long start = System.nanoTime();
+    tournament.play(pool, seed);
+    double seconds = (System.nanoTime() - start) / 1e9;
+    pool.shutdown();
+
+    System.out.printf("%d matches of %d rounds with charge cap %d on %d threads, seed %d: %.2f s, %.0f matches/s, "
+        + "%.0f turns/s%n", tournament.results.length, ROUNDS, rules.getChargeCap(), threads, seed, seconds,
+      tournament.results.length / seconds, tournament.getTurns() / seconds);
+    System.out.println();
+    System.out.printf("%-28s %7s %7s %7s   %s%n", "Pairing", "wins", "draws", "losses", "score (95% CI)");
+    for (int[] pairing : tournament.pairings) {
+      System.out.printf("%-28s %s%n", entrants.get(pairing[0]).name + " vs " + entrants.get(pairing[1]).name,
+        format(tournament.count(pairing[0], pairing[1])));
+    }
+    System.out.println();
+    System.out.printf("%-28s %7s %7s %7s   %s%n", "Entrant", "wins", "draws", "losses", "score (95% CI)");
+    for (int e = 0; e < entrants.size(); e++) {
+      System.out.printf("%-28s %s%n", entrants.get(e).name, format(tournament.count(e, -1)));
+    }
+  }
+}
\ No newline at end of file
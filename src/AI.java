@@ -1,3 +1,7 @@
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
+
 /**
  * A Player that has additional methods to facilitate smart AI gameplay for the user to play against.
  *
@@ -24,89 +28,429 @@
  * move (meaning the AI doesn't necessarily always choose the best
  * action, so it's a little more randomized and fun)
  * <p>
+ * The charge cap comes from the Rules: it is the cost of their most expensive Move, the finishing move that a side
+ * uses as soon as it can afford it (5 for the super fireball of the standard rules), so there are (cap + 1)^2 states.
+ * Every AI of a cap starts from the same solved model, which is shared. An AI only stores the states its user's moves
+ * changed, and the solver only visits those and their neighbours, so memory and solve time grow with the states a
+ * player actually reaches rather than with the square of the cap.
+ * <p>
  * The idea for our AI is influenced from the following source:
  * https://math.stackexchange.com/questions/1612290/optimal-strategy-for-this-schoolyard-game-charge-block-shoot
  */
 
 public class AI extends Player {
-  // The following arrays store the states and transitions
-  // All arrays stores a double from 0 to 1, representing the probability of a
-  // particular event
-  private double[][] states = new double[6][6]; // chance of AI winning in this state
-  private double[][][] winningProb = new double[6][6][3]; // chance of AI winning if it chooses move (k) in state (i, j)
-  private double[][] statesCount = new double[6][6]; // number of times the game reached state (i, j)
-  private double[][][] userChoice = new double[6][6][3]; // number of times the user choose action (k) in state (i, j)
-  private double[][][] userProb = new double[6][6][3]; // the probability of the user choosing action (k) in state (i, j)
+  private final int cap; // charge of the finishing move; states have charges 0 to cap
+  private final int side; // cap + 1, the number of charges per player
+  private final Move finisher; // the Move used at the cap
+  private AI prior; // the model of the states this AI never changed, or null if this is a prior, which holds them all
+
+  // The states this AI changed from its prior: the index gives state (i, j), keyed i * side + j, a slot. A slot is
+  // kept in two parallel blocks rather than one: its values are one run of STRIDE doubles in model, starting at
+  // s * STRIDE, and its counts one run of COUNTS ints in counts, starting at s * COUNTS, so the counts stay exact
+  // integers and the doubles of a state fill one cache line. The offsets of each value in its run are below. The
+  // solver's queued flags and worklist are separate arrays again. A prior holds every state and its slots equal the
+  // keys.
+  private StateIndex index;
+  private double[] model;
+  private int[] counts;
+
+  // The values of a state in model, each a double from 0 to 1, representing the probability of a particular event.
+  private static final int STATE = 0; // chance of AI winning in this state
+  private static final int WINNING = 1; // chance of AI winning if it chooses move (k), at WINNING + k
+  private static final int POLICY = 4; // cached probability of the AI choosing action (k), at POLICY + k
+  // the cached probability of the AI choosing fireball or shield, so a move is picked with two comparisons against
+  // POLICY and SAMPLE
+  private static final int SAMPLE = 7;
+  private static final int STRIDE = 8; // 64 bytes
+
+  // The counts of a state in counts. The probability of the user choosing action (k) is USER_CHOICE + k divided by
+  // STATE_COUNT.
+  private static final int STATE_COUNT = 0; // number of times the game reached the state
+  private static final int USER_CHOICE = 1; // number of times the user choose action (k), at USER_CHOICE + k
+  private static final int COUNTS = 4;
+
+  // The solver only revisits states whose inputs changed. Each stored state is queued at most once, so the worklist
+  // never holds more entries than there are slots.
+  private boolean[] queued;
+  private int[] worklist;
+  private int worklistHead;
+  private int worklistSize;
+  private double epsilon = 1e-6; // a state change smaller than this does not propagate to its neighbours
+  private long moveBudgetNanos; // hard limit on the time makeMove spends solving, 0 for no limit
+  private double equilibriumWeight; // share of moves taken from the equilibrium table instead of the model
+  private EquilibriumTable equilibrium; // loaded when equilibriumWeight is first set above 0
+  private double exponent = 3; // the AI picks a move with probability proportional to its winning chance to this power
+  private SplittableRandom random; // the source of the AI's choices, or null to use Math.random()
+  // Counts calls to pick the ones that are timed, see Metrics.SAMPLE_MASK. It starts anywhere, so that AIs which
+  // only live for a few calls are sampled too.
+  private int calls = ThreadLocalRandom.current().nextInt();
+  // What the current makeMove did, for its AIMoveEvent.
+  private int solverUpdates; // states solved
+  private boolean converged; // whether the model was solved before the budget ran out
+  private boolean fromEquilibrium; // whether the move was picked from the equilibrium
+  // What the user tends to do after their last few moves, or null if the AI only looks at the state.
+  private HabitModel habits;
+  private int[] habitCounts; // scratch for the counts the habit model predicts
+  private double[] habitPolicy; // the AI's chances of each move in the state of the last move picked with habits
 
   /**
-   * Initializes all the states and edge cases for the probability graph
+   * The number of counts in the observations of an AI of the standard rules: one per state and user action.
+   */
+  public static final int OBSERVATIONS = 6 * 6 * 3;
+
+  // The AI never looks back at its own moves, so it only keeps the latest few for display.
+  private static final int HISTORY_WINDOW = 16;
+
+  // The size of the habit model's count table, 12 KB: enough buckets that the contexts of a few past moves rarely
+  // collide in both rows.
+  private static final int HABIT_WIDTH = 512;
+  private static final int HABIT_DEPTH = 2;
+
+  // How many times a context must have been seen before the habit model counts as much as the state's counts.
+  private static final double HABIT_PRIOR = 4;
+
+  // The slots a new AI has room for before its arrays grow.
+  private static final int INITIAL_SLOTS = 8;
+  // The heap an AI takes besides the elements of its arrays: its objects and the array headers, as measured by the
+  // AI.footprint benchmark.
+  private static final int OBJECT_BYTES = 320;
+
+  /**
+   * Creates an AI for the standard rules that starts from the solved initial model.
    */
   public AI() {
-    super("Computer");
-    // winning probability initialization
-    for (int i = 0; i <= 4; i++) {
-      for (int j = 0; j <= 4; j++) {
-        states[i][j] = winningProb[i][j][0] = winningProb[i][j][1] = winningProb[i][j][2] = (double) (1) / 2;
-      }
-    }
-    for (int i = 0; i <= 5; i++) {
-      states[i][5] = winningProb[i][5][0] = winningProb[i][5][1] = winningProb[i][5][2] = 1;
-    }
-    for (int i = 0; i <= 4; i++) {
-      states[5][i] = winningProb[5][i][0] = winningProb[5][i][1] = winningProb[5][i][2] = 0;
-    }
-    states[5][5] = winningProb[5][5][0] = winningProb[5][5][1] = winningProb[5][5][2] = 0.5;
+    this(Rules.STANDARD);
+  }
 
-    // statesCount
+  /**
+   * Creates an AI that starts from the solved initial model of the given rules. The model knows fireball, shield and
+   * charge, plus the finishing move: the most expensive Move of the rules, which the AI uses as soon as it has enough
+   * charge and expects the user to do the same. Any other Move of the rules is not modelled.
+   *
+   * @param rules The Rules, which must include the standard fireball, shield and charge.
+   * @throws IllegalArgumentException If the rules lack one of those Moves or have no Move costing at least 1.
+   */
+  public AI(Rules rules) {
+    super("Computer", rules, HISTORY_WINDOW);
+    cap = rules.getChargeCap();
+    side = cap + 1;
+    finisher = finisherOf(rules, cap);
+    prior = priorOf(rules, cap, exponent);
+    index = new StateIndex(INITIAL_SLOTS, side * side);
+    allocate(INITIAL_SLOTS);
+  }
+
+  /**
+   * Creates an AI for the standard rules that starts from the solved initial model and has already seen the given user
+   * actions, such as an AI saved by AIModelStore. The states the actions were seen in are solved again on the first
+   * move.
+   *
+   * @param observations The number of times the user chose each action in each state, as returned by
+   *                     getObservations().
+   * @throws IllegalArgumentException If there are not OBSERVATIONS counts or a count is negative.
+   */
+  public AI(int[] observations) {
+    this();
+    if (observations.length != OBSERVATIONS) {
+      throw new IllegalArgumentException("Expected " + OBSERVATIONS + " observations, got " + observations.length);
+    }
     for (int i = 0; i <= 5; i++) {
       for (int j = 0; j <= 5; j++) {
-        statesCount[i][j] = 3;
+        boolean seen = false;
+        for (int k = 0; k < 3; k++) {
+          int count = observations[(i * 6 + j) * 3 + k];
+          if (count < 0) throw new IllegalArgumentException("Negative observation count: " + count);
+          seen |= count > 0;
+        }
+        if (seen) {
+          int slot = store(i, j);
+          int c = slot * COUNTS;
+          for (int k = 0; k < 3; k++) {
+            int count = observations[(i * 6 + j) * 3 + k];
+            counts[c + STATE_COUNT] += count;
+            counts[c + USER_CHOICE + k] += count;
+          }
+          enqueue(i, j);
+        }
       }
     }
-    // user's Choice
-    for (int i = 0; i <= 5; i++) {
-      for (int j = 0; j <= 5; j++) {
-        userChoice[i][j][0] = userChoice[i][j][1] = userChoice[i][j][2] = 1;
+  }
+
+  /**
+   * Returns what this AI learned about the user: the number of times the user chose action (k) in state (i, j),
+   * beyond the initial model, at index (i * (cap + 1) + j) * 3 + k.
+   *
+   * @return (cap + 1)^2 * 3 counts, OBSERVATIONS for the standard rules.
+   */
+  public int[] getObservations() {
+    int[] observations = new int[side * side * 3];
+    for (int slot = 0; slot < index.size(); slot++) {
+      int key = index.keyOf(slot);
+      for (int k = 0; k < 3; k++) {
+        observations[key * 3 + k] = counts[slot * COUNTS + USER_CHOICE + k]
+          - prior.counts[key * COUNTS + USER_CHOICE + k];
       }
     }
-    // user's Prob
-    for (int i = 0; i <= 5; i++) {
-      for (int j = 0; j <= 5; j++) {
-        for (int k = 0; k < 3; k++) {
-          userProb[i][j][k] = userChoice[i][j][k] / statesCount[i][j];
-        }
+    return observations;
+  }
+
+  /**
+   * Initializes all the states and edge cases for the probability graph, then solves it
+   *
+   * @param rules    The Rules of the AIs that will start from this model.
+   * @param cap      The charge cap.
+   * @param exponent The exponent the model's policy is solved with.
+   */
+  private AI(Rules rules, int cap, double exponent) {
+    super("Computer", rules, HISTORY_WINDOW);
+    this.cap = cap;
+    side = cap + 1;
+    finisher = finisherOf(rules, cap);
+    this.exponent = exponent;
+    index = new StateIndex(side * side, side * side);
+    allocate(side * side);
+    for (int key = 0; key < side * side; key++) {
+      index.add(key);
+    }
+    int last = cap - 1; // the highest charge of a state that is not decided yet
+
+    // winning probability initialization
+    for (int i = 0; i <= last; i++) {
+      for (int j = 0; j <= last; j++) {
+        setAll(i, j, (double) (1) / 2);
       }
     }
+    for (int i = 0; i <= cap; i++) {
+      setAll(i, cap, 1);
+    }
+    for (int i = 0; i <= last; i++) {
+      setAll(cap, i, 0);
+    }
+    setAll(cap, cap, 0.5);
+
+    // statesCount and user's Choice
+    for (int s = 0; s < side * side; s++) {
+      counts[s * COUNTS + STATE_COUNT] = 3;
+      Arrays.fill(counts, s * COUNTS + USER_CHOICE, s * COUNTS + USER_CHOICE + 3, 1);
+    }
 
     // hard code (edge adjustments)
-    for (int i = 0; i <= 4; i++) {
-      userProb[0][i][0] = 0;
-      userProb[0][i][1] = userProb[0][i][2] = (double) (1) / 2; // can't fireball when user has 0 charge
+    for (int i = 0; i <= last; i++) {
+      int c = i * COUNTS; // state (0, i): can't fireball when user has 0 charge
+      counts[c + STATE_COUNT] = 2;
+      counts[c + USER_CHOICE + 1] = counts[c + USER_CHOICE + 2] = 1;
+      counts[c + USER_CHOICE] = 0;
 
-      statesCount[0][i] = 2;
-      userChoice[0][i][1] = userChoice[0][i][2] = 1;
-      userChoice[0][i][0] = 0;
+      model[i * side * STRIDE + WINNING] = 0; // can't fireball when AI has 0 charge
+    }
+
+    for (int i = 0; i <= last; i++) {
+      int c = i * side * COUNTS; // state (i, 0): no need to shield when the AI has 0 charge
+      counts[c + STATE_COUNT] = 2;
+      counts[c + USER_CHOICE] = counts[c + USER_CHOICE + 2] = 1;
+      counts[c + USER_CHOICE + 1] = 0;
 
-      winningProb[i][0][0] = 0; // can't fireball when AI has 0 charge
+      model[i * STRIDE + WINNING + 1] = 0; // no need to shield when user has 0 charge
     }
 
-    for (int i = 0; i <= 4; i++) {
-      userProb[i][0][1] = 0;
-      userProb[i][0][0] = userProb[i][0][2] = (double) (1) / 2; // no need to shield when the AI has 0 charge
+    // edge case for the beginning of the game: both player and AI should charge up
+    counts[STATE_COUNT] = 1;
+    counts[USER_CHOICE + 2] = 1;
+    counts[USER_CHOICE] = counts[USER_CHOICE + 1] = 0;
+
+    // nothing has been solved yet: cache the initial policy and queue every state
+    for (int s = 0; s < side * side; s++) {
+      updatePolicy(s);
+    }
+    for (int i = 0; i <= last; i++) {
+      for (int j = 0; j <= last; j++) {
+        enqueue(i, j);
+      }
+    }
+    computeProbability();
+  }
+
+  /**
+   * Creates a copy of another AI's model, without its charge, moves, source of randomness or habit model.
+   *
+   * @param source The AI to copy.
+   */
+  private AI(AI source) {
+    super("Computer", source.getRules(), HISTORY_WINDOW);
+    cap = source.cap;
+    side = source.side;
+    finisher = source.finisher;
+    prior = source.prior;
+    exponent = source.exponent;
+    epsilon = source.epsilon;
+    index = new StateIndex(source.index);
+    model = source.model.clone();
+    counts = source.counts.clone();
+    queued = source.queued.clone();
+    worklist = source.worklist.clone();
+    worklistHead = source.worklistHead;
+    worklistSize = source.worklistSize;
+  }
 
-      statesCount[i][0] = 2;
-      userChoice[i][0][0] = userChoice[i][0][2] = 1;
-      userChoice[i][0][1] = 0;
+  /**
+   * Returns a copy of this AI's model that can be updated and solved on another thread, e.g. to find out what the
+   * model will be after each move the user may make. The copy is independent of this AI and does not learn habits.
+   *
+   * @return The copy.
+   */
+  AI copyModel() {
+    return new AI(this);
+  }
 
-      winningProb[0][i][1] = 0; // no need to shield when user has 0 charge
+  /**
+   * Takes over the model of a copy made by copyModel(), for example one that was updated and solved in the background.
+   * The copy must not be used afterwards. The AI keeps its own habit model.
+   *
+   * @param model The copy of this AI's model or of one derived from it.
+   * @throws IllegalArgumentException If the copy is of an AI with another charge cap or exponent.
+   */
+  void adoptModel(AI model) {
+    if (model.prior != prior) throw new IllegalArgumentException("The model is of another kind of AI");
+    index = model.index;
+    this.model = model.model;
+    counts = model.counts;
+    queued = model.queued;
+    worklist = model.worklist;
+    worklistHead = model.worklistHead;
+    worklistSize = model.worklistSize;
+  }
+
+  /**
+   * Returns whether the model is solved, so that the next makeMove() does not need to solve it.
+   *
+   * @return Whether no state is waiting to be recomputed.
+   */
+  boolean isSolved() {
+    return worklistSize == 0;
+  }
+
+  /**
+   * Returns the solved initial model of a set of rules and an exponent, solving it the first time it is needed. The
+   * priors are kept by the Rules, so every AI of the same Rules object shares them and they are dropped together
+   * with the Rules.
+   *
+   * @param rules    The Rules of the AI asking.
+   * @param cap      The charge cap.
+   * @param exponent The exponent of the AI's policy.
+   * @return The prior, which must not be changed.
+   */
+  private static AI priorOf(Rules rules, int cap, double exponent) {
+    return rules.priors.computeIfAbsent(exponent, key -> new AI(rules, cap, exponent));
+  }
+
+  /**
+   * Returns the finishing move of a set of rules and checks that the AI can play them.
+   *
+   * @param rules The Rules.
+   * @param cap   Their charge cap.
+   * @return The Move with the highest cost.
+   * @throws IllegalArgumentException If the rules lack fireball, shield or charge, or no Move costs at least 1.
+   */
+  private static Move finisherOf(Rules rules, int cap) {
+    for (int id : new int[]{Move.FIREBALL_ID, Move.SHIELD_ID, Move.CHARGE_ID}) {
+      if (id >= rules.size() || rules.getMove(id) == null) {
+        throw new IllegalArgumentException("The AI needs fireball, shield and charge, missing move id " + id);
+      }
     }
+    if (cap < 1) throw new IllegalArgumentException("The AI needs a move that costs charge");
+    for (int id = 0; id < rules.size(); id++) {
+      Move move = rules.getMove(id);
+      if (move != null && move.getCost() == cap) return move;
+    }
+    throw new IllegalStateException("No move costs the charge cap " + cap);
+  }
 
-    // edge case for the beginning of the game: both player and AI should charge up
-    userProb[0][0][0] = userProb[0][0][1] = 0;
-    userProb[0][0][2] = 1;
-    statesCount[0][0] = 1;
-    userChoice[0][0][2] = 1;
-    userChoice[0][0][0] = userChoice[0][0][1] = 0;
+  /**
+   * Allocates the arrays for the given number of slots.
+   *
+   * @param slots The number of slots.
+   */
+  private void allocate(int slots) {
+    model = new double[slots * STRIDE];
+    counts = new int[slots * COUNTS];
+    queued = new boolean[slots];
+    worklist = new int[slots];
+  }
+
+  /**
+   * Doubles the number of slots the arrays have room for.
+   */
+  private void grow() {
+    int slots = queued.length * 2;
+    model = Arrays.copyOf(model, slots * STRIDE);
+    counts = Arrays.copyOf(counts, slots * COUNTS);
+    queued = Arrays.copyOf(queued, slots);
+    // unroll the worklist so that it starts at 0
+    int[] unrolled = new int[slots];
+    for (int i = 0; i < worklistSize; i++) {
+      unrolled[i] = worklist[(worklistHead + i) % worklist.length];
+    }
+    worklist = unrolled;
+    worklistHead = 0;
+  }
+
+  /**
+   * Sets the winning chance of a prior state and of every move in it.
+   *
+   * @param i     Player's charge
+   * @param j     AI's charge
+   * @param value The winning chance.
+   */
+  private void setAll(int i, int j, double value) {
+    int m = (i * side + j) * STRIDE;
+    model[m + STATE] = model[m + WINNING] = model[m + WINNING + 1] = model[m + WINNING + 2] = value;
+  }
+
+  /**
+   * Returns the slot of state (j, k), storing the state with its prior values if this AI never changed it.
+   *
+   * @param j Player's charge
+   * @param k AI's charge
+   * @return The state's slot.
+   */
+  private int store(int j, int k) {
+    int key = j * side + k;
+    int slot = index.find(key);
+    if (slot >= 0) return slot;
+    slot = index.add(key);
+    if (slot == queued.length) grow();
+    System.arraycopy(prior.model, key * STRIDE, model, slot * STRIDE, STRIDE);
+    System.arraycopy(prior.counts, key * COUNTS, counts, slot * COUNTS, COUNTS);
+    return slot;
+  }
+
+  /**
+   * Returns the charge cap of the AI's rules, the cost of the finishing move.
+   *
+   * @return The cap.
+   */
+  public int getCap() {
+    return cap;
+  }
+
+  /**
+   * Returns the number of states this AI stores because its user's moves changed them.
+   *
+   * @return The number of stored states.
+   */
+  public int getStoredStates() {
+    return index.size();
+  }
+
+  /**
+   * Estimates the heap this AI takes, without the prior it shares with other AIs: its model and solver arrays, its
+   * state index, its habit table and its Player history. An AIModelStore bounds the memory of idle AIs with it.
+   *
+   * @return The estimated number of bytes.
+   */
+  public long getModelBytes() {
+    return OBJECT_BYTES + model.length * 8L + counts.length * 4L + queued.length + worklist.length * 4L
+      + index.getBytes() + getHabitBytes() + getHistoryBytes();
   }
 
   /**
@@ -120,7 +464,17 @@ public class AI extends Player {
   }
 
   /**
-   * Computes the probability that the AI is going to choose a move.
+   * Raises a winning chance to the exponent the AI picks its moves by.
+   *
+   * @param x The winning chance.
+   * @return x to the power of the exponent.
+   */
+  private double weigh(double x) {
+    return exponent == 3 ? cube(x) : Math.pow(x, exponent);
+  }
+
+  /**
+   * Returns the probability that the AI is going to choose a move.
    * The probability is proportional to the cube of the computed winning chance of that move.
    *
    * @param playerCharge Player's charge
@@ -129,43 +483,341 @@ public class AI extends Player {
    * @return The probability for the AI to choose the move indexed i, factoring in both player's charge count.
    */
   double getProbability(int playerCharge, int aiCharge, int i) {
-    double sum = cube(winningProb[playerCharge][aiCharge][0]) + cube(winningProb[playerCharge][aiCharge][1]) + cube(winningProb[playerCharge][aiCharge][2]);
-    return cube(winningProb[playerCharge][aiCharge][i]) / sum;
+    int key = playerCharge * side + aiCharge;
+    int slot = index.find(key);
+    return slot >= 0 ? model[slot * STRIDE + POLICY + i] : prior.model[key * STRIDE + POLICY + i];
+  }
+
+  /**
+   * Returns the AI's winning chance in a state.
+   *
+   * @param playerCharge Player's charge
+   * @param aiCharge     AI's charge
+   * @return The chance of the AI winning from state (playerCharge, aiCharge).
+   */
+  double getStateValue(int playerCharge, int aiCharge) {
+    int key = playerCharge * side + aiCharge;
+    int slot = index.find(key);
+    return slot >= 0 ? model[slot * STRIDE + STATE] : prior.model[key * STRIDE + STATE];
+  }
+
+  /**
+   * Returns the number of times the game reached a state, including the initial model's pseudo-counts.
+   *
+   * @param playerCharge Player's charge
+   * @param aiCharge     AI's charge
+   * @return The count of state (playerCharge, aiCharge).
+   */
+  int getStateCount(int playerCharge, int aiCharge) {
+    int key = playerCharge * side + aiCharge;
+    int slot = index.find(key);
+    return slot >= 0 ? counts[slot * COUNTS + STATE_COUNT] : prior.counts[key * COUNTS + STATE_COUNT];
+  }
+
+  /**
+   * Returns the number of times the user chose an action in a state, including the initial model's pseudo-counts.
+   *
+   * @param playerCharge Player's charge
+   * @param aiCharge     AI's charge
+   * @param i            Action index (0 for fireball, 1 for shield, 2 for charge)
+   * @return The count of action i in state (playerCharge, aiCharge).
+   */
+  int getUserChoice(int playerCharge, int aiCharge, int i) {
+    int key = playerCharge * side + aiCharge;
+    int slot = index.find(key);
+    return slot >= 0 ? counts[slot * COUNTS + USER_CHOICE + i] : prior.counts[key * COUNTS + USER_CHOICE + i];
+  }
+
+  /**
+   * Recomputes the cached move probabilities of a stored state from its winning chances.
+   * States where no move can win (the player is about to use a super fireball) always charge.
+   *
+   * @param slot The state's slot.
+   */
+  private void updatePolicy(int slot) {
+    int m = slot * STRIDE;
+    double fireball = weigh(model[m + WINNING]);
+    double shield = weigh(model[m + WINNING + 1]);
+    double charge = weigh(model[m + WINNING + 2]);
+    double sum = fireball + shield + charge;
+    if (sum > 0) {
+      model[m + POLICY] = fireball / sum;
+      model[m + POLICY + 1] = shield / sum;
+      model[m + POLICY + 2] = charge / sum;
+    } else {
+      model[m + POLICY] = model[m + POLICY + 1] = 0;
+      model[m + POLICY + 2] = 1;
+    }
+    model[m + SAMPLE] = model[m + POLICY] + model[m + POLICY + 1];
+  }
+
+  /**
+   * Sets how precisely the model is solved. Smaller values give a more accurate model but take more updates.
+   *
+   * @param epsilon The smallest change of a state's winning chance that is propagated to the states depending on it.
+   */
+  public void setSolverEpsilon(double epsilon) {
+    this.epsilon = epsilon;
+  }
+
+  /**
+   * Sets a hard limit on the time makeMove may spend solving the model. When the limit is hit the move is made from
+   * the current, partially updated model and the remaining work is continued on the next call.
+   *
+   * @param moveBudgetNanos The limit in nanoseconds, or 0 to always solve the model fully.
+   */
+  public void setMoveBudgetNanos(long moveBudgetNanos) {
+    this.moveBudgetNanos = moveBudgetNanos;
+  }
+
+  /**
+   * Sets how greedily the AI plays. The AI picks each move with a probability proportional to the move's winning
+   * chance raised to this exponent: 3 by default, higher values favour the best move more and 0 plays every move
+   * equally often. The AI switches to the initial model solved with the exponent, and the states it learned are
+   * solved again on the next move.
+   *
+   * @param exponent The exponent, at least 0.
+   * @throws IllegalArgumentException If the exponent is negative.
+   */
+  public void setExponent(double exponent) {
+    if (!(exponent >= 0)) throw new IllegalArgumentException("Negative exponent: " + exponent);
+    this.exponent = exponent;
+    prior = priorOf(getRules(), cap, exponent);
+    for (int slot = 0; slot < index.size(); slot++) {
+      updatePolicy(slot);
+      int key = index.keyOf(slot);
+      enqueue(key / side, key % side);
+    }
+  }
+
+  /**
+   * Returns how greedily the AI plays.
+   *
+   * @return The exponent the winning chances are raised to when picking a move.
+   */
+  public double getExponent() {
+    return exponent;
+  }
+
+  /**
+   * Makes the AI draw its random choices from the given generator instead of Math.random(), so that its play can be
+   * reproduced from a seed. A SplittableRandom is not thread-safe; give every AI its own, e.g. by split().
+   *
+   * @param random The generator, or null to use Math.random() again.
+   */
+  public void setRandom(SplittableRandom random) {
+    this.random = random;
+  }
+
+  /**
+   * Returns a uniformly distributed number in [0, 1) from the AI's generator.
+   *
+   * @return The number.
+   */
+  private double nextRandom() {
+    return random != null ? random.nextDouble() : Math.random();
+  }
+
+  /**
+   * Blends the AI's play toward the equilibrium strategy of the standard rules. With weight 1 the AI plays the
+   * equilibrium only: every move is one lookup in the EquilibriumTable, the model is not solved, and the player cannot
+   * exploit the AI however they play. The AI still records the user's moves, so lowering the weight again resumes
+   * adapting with everything it saw.
+   *
+   * @param weight The share of moves picked from the equilibrium, from 0 (adaptive, the default) to 1.
+   * @throws IllegalArgumentException If the weight is not between 0 and 1.
+   * @throws IllegalStateException    If the AI's charge cap is not the one the equilibrium table was solved for.
+   */
+  public void setEquilibriumWeight(double weight) {
+    if (!(weight >= 0 && weight <= 1)) throw new IllegalArgumentException("Weight must be between 0 and 1: " + weight);
+    if (weight > 0 && equilibrium == null) {
+      if (cap != EquilibriumSolver.STANDARD_CAP) {
+        throw new IllegalStateException("The equilibrium table is only solved for the standard charge cap");
+      }
+      equilibrium = EquilibriumTable.standard();
+    }
+    equilibriumWeight = weight;
+  }
+
+  /**
+   * Returns how much the AI's play is blended toward the equilibrium strategy.
+   *
+   * @return The share of moves picked from the equilibrium.
+   */
+  public double getEquilibriumWeight() {
+    return equilibriumWeight;
+  }
+
+  /**
+   * Makes the AI also learn what the user does after their last few moves, such as "charges twice, then shields", and
+   * not only what they do in each state. The habits are counted in a table of fixed size, a HabitModel, so learning
+   * and looking them up cost the same however long the user plays. When the AI moves, its estimate of the user's
+   * next action in the state is blended with what the user did after the same last moves: the more often the AI saw
+   * that context, the more it counts. The solved model itself stays the same, only the move in the current state is
+   * picked with the blended estimate. Habits are not saved with the AI's observations.
+   *
+   * @param order The number of last moves to look at, from 1 to HabitModel.MAX_ORDER, or 0 to stop learning habits
+   *              (the default). Setting the order the AI already has keeps what it learned.
+   * @throws IllegalArgumentException If the order is out of range.
+   */
+  public void setHabitOrder(int order) {
+    if (order < 0 || order > HabitModel.MAX_ORDER) throw new IllegalArgumentException("Order out of range: " + order);
+    if (order == getHabitOrder()) return;
+    if (order == 0) {
+      habits = null;
+      habitCounts = null;
+      habitPolicy = null;
+    } else {
+      habits = new HabitModel(order, HABIT_WIDTH, HABIT_DEPTH);
+      habitCounts = new int[3];
+      habitPolicy = new double[3];
+    }
+  }
+
+  /**
+   * Returns the number of last moves the AI learns the user's habits from.
+   *
+   * @return The order of the habit model, or 0 if the AI does not learn habits.
+   */
+  public int getHabitOrder() {
+    return habits == null ? 0 : habits.getOrder();
+  }
+
+  /**
+   * Returns the memory the habit model's counts take, which stays the same however long the user plays.
+   *
+   * @return The size of the count table in bytes, or 0 if the AI does not learn habits.
+   */
+  public int getHabitBytes() {
+    return habits == null ? 0 : habits.getTableBytes();
   }
 
   /**
    * Computes the probabilities for each state (i, j, k) uses the dynamic probability model.
+   * Only the states affected by the user's moves since the last call are recomputed, until the model converges.
    */
   public void computeProbability() {
-    int i, j, k;
-
-    for (i = 0; i < 100; i++) {
-      for (j = 0; j < 5; j++) {
-        for (k = 0; k < 5; k++) {
-          // fireball
-          if (k > 0) {
-            if (j > 0) {
-              winningProb[j][k][0] = userProb[j][k][0] * states[j - 1][k - 1] + userProb[j][k][1] * states[j][k - 1]
-                + userProb[j][k][2] * 1;
-            } else {
-              winningProb[j][k][0] = userProb[j][k][1] * states[j][k - 1] + userProb[j][k][2] * 1;
-            }
-          }
-          // shield
-          if (j > 0) {
-            winningProb[j][k][1] = userProb[j][k][0] * states[j - 1][k] + userProb[j][k][1] * states[j][k]
-              + userProb[j][k][2] * states[j + 1][k];
-          } else {
-            winningProb[j][k][2] = userProb[j][k][1] * states[j][k] + userProb[j][k][2] * states[j + 1][k];
-          }
-          // charge
-          winningProb[j][k][2] = userProb[j][k][1] * states[j][k + 1] + userProb[j][k][2] * states[j + 1][k + 1];
-          // update states
-          states[j][k] = getProbability(j, k, 0) * winningProb[j][k][0] + getProbability(j, k, 1) * winningProb[j][k][1]
-            + getProbability(j, k, 2) * winningProb[j][k][2];
-        }
+    solve(0, sampled());
+  }
+
+  /**
+   * Returns whether to time the current call for the Metrics.
+   *
+   * @return Whether the call is timed.
+   */
+  private boolean sampled() {
+    return Metrics.ENABLED && (++calls & Metrics.SAMPLE_MASK) == 0;
+  }
+
+  /**
+   * Solves the queued states until the model converges or the deadline passes.
+   *
+   * @param deadline The System.nanoTime() value at which to stop, or 0 for no deadline.
+   * @param timed    Whether to record the time taken in the Metrics.
+   * @return Whether the model converged.
+   */
+  private boolean solve(long deadline, boolean timed) {
+    if (!timed) return solve(deadline);
+    long start = System.nanoTime();
+    boolean converged = solve(deadline);
+    Metrics.COMPUTE_PROBABILITY.record(System.nanoTime() - start);
+    return converged;
+  }
+
+  /**
+   * Solves the queued states until the model converges or the deadline passes.
+   *
+   * @param deadline The System.nanoTime() value at which to stop, or 0 for no deadline.
+   * @return Whether the model converged.
+   */
+  private boolean solve(long deadline) {
+    int updates = 0;
+    while (worklistSize > 0) {
+      if (deadline != 0 && (updates++ & 7) == 0 && System.nanoTime() - deadline >= 0) return false;
+      int slot = worklist[worklistHead];
+      worklistHead = (worklistHead + 1) % worklist.length;
+      worklistSize--;
+      queued[slot] = false;
+      solverUpdates++;
+      int key = index.keyOf(slot);
+      int j = key / side;
+      int k = key % side;
+
+      double delta = Math.abs(updateState(slot, j, k));
+      if (delta > epsilon) {
+        // every state whose update reads the state
+        enqueue(j, k);
+        enqueue(j + 1, k);
+        enqueue(j - 1, k);
+        enqueue(j, k + 1);
+        enqueue(j, k - 1);
+        enqueue(j + 1, k + 1);
+        enqueue(j - 1, k - 1);
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Queues state (j, k) to be recomputed, unless it is a fixed edge state or already queued.
+   *
+   * @param j Player's charge
+   * @param k AI's charge
+   */
+  private void enqueue(int j, int k) {
+    if (j < 0 || k < 0 || j >= cap || k >= cap) return;
+    int slot = store(j, k);
+    if (queued[slot]) return;
+    queued[slot] = true;
+    worklist[(worklistHead + worklistSize) % worklist.length] = slot;
+    worklistSize++;
+  }
+
+  /**
+   * Recomputes the winning chances of a stored state (j, k) from its neighbouring states.
+   *
+   * @param slot The state's slot.
+   * @param j    Player's charge
+   * @param k    AI's charge
+   * @return How much the AI's winning chance in the state changed.
+   */
+  private double updateState(int slot, int j, int k) {
+    int m = slot * STRIDE;
+    int c = slot * COUNTS;
+    // the probabilities of the user's actions
+    double count = counts[c + STATE_COUNT];
+    double userFireball = counts[c + USER_CHOICE] / count;
+    double userShield = counts[c + USER_CHOICE + 1] / count;
+    double userCharge = counts[c + USER_CHOICE + 2] / count;
+    // fireball
+    if (k > 0) {
+      if (j > 0) {
+        model[m + WINNING] = userFireball * getStateValue(j - 1, k - 1) + userShield * getStateValue(j, k - 1)
+          + userCharge * 1;
+      } else {
+        model[m + WINNING] = userShield * getStateValue(j, k - 1) + userCharge * 1;
       }
     }
+    // charge
+    model[m + WINNING + 2] = userShield * getStateValue(j, k + 1) + userCharge * getStateValue(j + 1, k + 1);
+    double previous = model[m + STATE];
+    // shield (no need to shield when the user has 0 charge)
+    // Shielding against a shield stays in this state, so iterate the state on its own until it settles before
+    // its neighbours are updated from it.
+    double shielded = j > 0 ? getStateValue(j - 1, k) : 0;
+    double charged = j > 0 ? getStateValue(j + 1, k) : 0;
+    for (int i = 0; i < 100; i++) {
+      double current = model[m + STATE];
+      if (j > 0) {
+        model[m + WINNING + 1] = userFireball * shielded + userShield * current + userCharge * charged;
+      }
+      // update states
+      updatePolicy(slot);
+      model[m + STATE] = model[m + POLICY] * model[m + WINNING] + model[m + POLICY + 1] * model[m + WINNING + 1]
+        + model[m + POLICY + 2] * model[m + WINNING + 2];
+      if (j == 0 || Math.abs(model[m + STATE] - current) <= epsilon) break;
+    }
+    return model[m + STATE] - previous;
   }
 
   /**
@@ -176,26 +828,165 @@ public class AI extends Player {
    * @return The AI's Move
    */
   public Move makeMove(int playerCharge, int aiCharge) {
+    AIMoveEvent event = Metrics.recording() ? new AIMoveEvent() : null;
+    if (event != null) event.begin();
+    boolean timed = sampled();
+    long start = timed ? System.nanoTime() : 0;
+    Move move = chooseMove(playerCharge, aiCharge, timed);
+    if (timed) Metrics.MAKE_MOVE.record(System.nanoTime() - start);
+    if (event != null) {
+      event.end();
+      if (event.shouldCommit()) describe(event, playerCharge, aiCharge, move);
+    }
+    return move;
+  }
+
+  /**
+   * Fills in and commits the event of a move.
+   *
+   * @param event        The event, which has ended.
+   * @param playerCharge The player's charge amount
+   * @param aiCharge     The AI's charge amount
+   * @param move         The AI's Move
+   */
+  private void describe(AIMoveEvent event, int playerCharge, int aiCharge, Move move) {
+    event.playerCharge = playerCharge;
+    event.aiCharge = aiCharge;
+    event.move = move.getName();
+    if (playerCharge > cap) playerCharge = cap;
+    if (aiCharge >= cap) {
+      event.strategy = "finisher";
+    } else if (fromEquilibrium) {
+      event.strategy = "equilibrium";
+      event.fireballProbability = equilibrium.getProbability(playerCharge, aiCharge, Rules.FIREBALL);
+      event.shieldProbability = equilibrium.getProbability(playerCharge, aiCharge, Rules.SHIELD);
+      event.chargeProbability = equilibrium.getProbability(playerCharge, aiCharge, Rules.CHARGE);
+    } else {
+      boolean fromHabits = habits != null && playerCharge < cap;
+      event.strategy = fromHabits ? "habits" : "model";
+      event.fireballProbability = fromHabits ? habitPolicy[0] : getProbability(playerCharge, aiCharge, 0);
+      event.shieldProbability = fromHabits ? habitPolicy[1] : getProbability(playerCharge, aiCharge, 1);
+      event.chargeProbability = fromHabits ? habitPolicy[2] : getProbability(playerCharge, aiCharge, 2);
+      event.solverUpdates = solverUpdates;
+      event.converged = converged;
+    }
+    event.commit();
+  }
+
+  /**
+   * Picks a move from state (i, j) or (player charge, AI charge)
+   *
+   * @param playerCharge The player's charge amount
+   * @param aiCharge     The AI's charge amount
+   * @param timed        Whether to record the time spent solving the model in the Metrics.
+   * @return The AI's Move
+   */
+  private Move chooseMove(int playerCharge, int aiCharge, boolean timed) {
     // edge case
-    if (aiCharge >= 5)
-      return new SuperFireball();
+    if (aiCharge >= cap)
+      return finisher;
 
-    if (playerCharge > 5) playerCharge = 5;
+    if (playerCharge > cap) playerCharge = cap;
 
-    computeProbability();
+    // mixing the two strategies move by move blends their probabilities; the model is only solved when it is used
+    fromEquilibrium = equilibriumWeight > 0 && (equilibriumWeight == 1 || nextRandom() < equilibriumWeight);
+    if (fromEquilibrium) {
+      return equilibrium.sample(playerCharge, aiCharge, nextRandom());
+    }
+
+    solverUpdates = 0;
+    converged = solve(moveBudgetNanos > 0 ? System.nanoTime() + moveBudgetNanos : 0, timed);
 
-    double prob0 = getProbability(playerCharge, aiCharge, 0);
-    double prob1 = getProbability(playerCharge, aiCharge, 1);
-    double prob2 = getProbability(playerCharge, aiCharge, 2);
+    double prob0;
+    double prob01; // of fireball or shield
+    if (habits != null && playerCharge < cap) {
+      weighHabits(playerCharge, aiCharge);
+      prob0 = habitPolicy[0];
+      prob01 = habitPolicy[0] + habitPolicy[1];
+    } else {
+      int key = playerCharge * side + aiCharge;
+      int slot = index.find(key);
+      double[] values = slot >= 0 ? model : prior.model;
+      int m = (slot >= 0 ? slot : key) * STRIDE;
+      prob0 = values[m + POLICY];
+      prob01 = values[m + SAMPLE];
+    }
 
-    double randomVal = Math.random();
+    double randomVal = nextRandom();
     if (randomVal < prob0) {
-      return new Fireball();
-    } else if (randomVal > prob0 && randomVal < prob0 + prob1) {
-      return new Shield();
+      return Rules.FIREBALL;
+    } else if (randomVal < prob01) {
+      return Rules.SHIELD;
+    } else {
+      return Rules.CHARGE;
+    }
+  }
+
+  /**
+   * Computes the AI's chances of each move in state (j, k) like updateState(), but against the user's action
+   * probabilities blended with their habits, and stores them in habitPolicy. The neighbouring states keep their solved
+   * values, so this is one step of lookahead.
+   *
+   * @param j Player's charge, less than the cap
+   * @param k AI's charge, less than the cap
+   */
+  private void weighHabits(int j, int k) {
+    int seen = habits.predict(j * side + k, habitCounts);
+    double count = getStateCount(j, k);
+    // the state's counts act as HABIT_PRIOR observations of the context
+    double fireballed = (HABIT_PRIOR * getUserChoice(j, k, 0) / count + habitCounts[0]) / (HABIT_PRIOR + seen);
+    double shielded = (HABIT_PRIOR * getUserChoice(j, k, 1) / count + habitCounts[1]) / (HABIT_PRIOR + seen);
+    double charged = (HABIT_PRIOR * getUserChoice(j, k, 2) / count + habitCounts[2]) / (HABIT_PRIOR + seen);
+    double fireball = 0;
+    if (k > 0) {
+      fireball = (j > 0 ? fireballed * getStateValue(j - 1, k - 1) : 0) + shielded * getStateValue(j, k - 1) + charged;
+    }
+    double shield = 0;
+    if (j > 0) {
+      shield = fireballed * getStateValue(j - 1, k) + shielded * getStateValue(j, k)
+        + charged * getStateValue(j + 1, k);
+    }
+    double charge = shielded * getStateValue(j, k + 1) + charged * getStateValue(j + 1, k + 1);
+    fireball = weigh(fireball);
+    shield = weigh(shield);
+    charge = weigh(charge);
+    double sum = fireball + shield + charge;
+    if (sum > 0) {
+      habitPolicy[0] = fireball / sum;
+      habitPolicy[1] = shield / sum;
+      habitPolicy[2] = charge / sum;
     } else {
-      return new Charge();
+      habitPolicy[0] = habitPolicy[1] = 0;
+      habitPolicy[2] = 1;
+    }
+  }
+
+  /**
+   * Picks which opponents to aim an attack at in a game with several opponents, such as a FreeForAll, where the AI
+   * models the state against each opponent by the opponent's charge. A fireball only wins against a charge, so the AI
+   * aims at the opponents its model expects to charge most often; the finishing move wins against anything but
+   * another finishing move, so it is aimed at opponents who can't afford one.
+   *
+   * @param aiCharge  The AI's charge.
+   * @param opponents The number of opponents at each charge from 0 to the cap, where the cap counts every opponent
+   *                  with at least that much charge; at least one opponent.
+   * @return The charge of the opponents to aim at, for which opponents has a count above 0.
+   */
+  public int aimAt(int aiCharge, int[] opponents) {
+    if (aiCharge > cap) aiCharge = cap;
+    int best = -1;
+    double bestChance = -1;
+    for (int c = 0; c <= cap; c++) {
+      if (opponents[c] == 0) continue;
+      // prefer anyone below the cap for the finisher, and the likeliest to charge among them
+      double chance = (double) getUserChoice(c, aiCharge, 2) / getStateCount(c, aiCharge);
+      if (aiCharge == cap && c < cap) chance += 1;
+      if (chance > bestChance) {
+        best = c;
+        bestChance = chance;
+      }
     }
+    return best;
   }
 
   /**
@@ -207,11 +998,12 @@ public class AI extends Player {
    *                          2 for charge)
    */
   public void updateUsersMove(int playerCharge, int aiCharge, int playerActionIndex) {
-    if (playerCharge > 5) playerCharge = 5;
-    statesCount[playerCharge][aiCharge]++;
-    userChoice[playerCharge][aiCharge][playerActionIndex]++;
-    userProb[playerCharge][aiCharge][0] = userChoice[playerCharge][aiCharge][0] / statesCount[playerCharge][aiCharge];
-    userProb[playerCharge][aiCharge][1] = userChoice[playerCharge][aiCharge][1] / statesCount[playerCharge][aiCharge];
-    userProb[playerCharge][aiCharge][2] = userChoice[playerCharge][aiCharge][2] / statesCount[playerCharge][aiCharge];
+    if (playerCharge > cap) playerCharge = cap;
+    if (aiCharge > cap) aiCharge = cap;
+    int slot = store(playerCharge, aiCharge);
+    counts[slot * COUNTS + STATE_COUNT]++;
+    counts[slot * COUNTS + USER_CHOICE + playerActionIndex]++;
+    enqueue(playerCharge, aiCharge);
+    if (habits != null) habits.observe(playerCharge * side + aiCharge, playerActionIndex);
   }
 }
\ No newline at end of file
@@ -0,0 +1,259 @@
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Evaluates the AI models of many matches together.
+ * <p>
+ * An AI keeps the values of each state together and solves it on its own, one state at a time. An AIBatch holds the
+ * models of up to a fixed number of matches (slots) as struct-of-arrays: for every state and value there is one
+ * contiguous run of doubles with an entry per slot. The solver then sweeps the states in order and updates every slot
+ * in a tight loop over those runs, which the JIT compiles to SIMD instructions where it can, and picks the moves of all
+ * slots in one call.
+ * <p>
+ * The batch solves the same equations as AI, with Gauss-Seidel sweeps over all states instead of a worklist, so its
+ * probabilities match those of an AI fed the same user actions within the solver's precision. It always plays the
+ * learned model with the default exponent of 3, without an equilibrium blend or habits.
+ *
+ * @author Dougy
+ */
+public class AIBatch {
+  private static final int STATES = 6 * 6;
+
+  private final int capacity;
+  private int size;
+  private double epsilon = 1e-6;
+  private int lastSweeps;
+  private SplittableRandom random; // the source of the moves, or null to use Math.random()
+
+  // Each array holds one run of capacity entries per row; row (j * 6 + k) is state (j, k), and arrays with three
+  // values per state use row (j * 6 + k) * 3 + i.
+  private final double[] states; // chance of AI winning in state (j, k)
+  private final double[] statesCount; // number of times the game reached state (j, k)
+  private final double[] userChoice; // number of times the user chose action (i) in state (j, k)
+  private final double[] userProb; // the probability of the user choosing action (i) in state (j, k)
+  private final double[] policy; // probability of the AI choosing action (i) in state (j, k)
+  private final double[] delta; // scratch: the largest change of each slot during a sweep
+
+  /**
+   * Creates an empty batch.
+   *
+   * @param capacity The number of matches the batch can hold.
+   */
+  public AIBatch(int capacity) {
+    if (capacity <= 0) throw new IllegalArgumentException("capacity must be positive: " + capacity);
+    this.capacity = capacity;
+    states = new double[STATES * capacity];
+    statesCount = new double[STATES * capacity];
+    userChoice = new double[STATES * 3 * capacity];
+    userProb = new double[STATES * 3 * capacity];
+    policy = new double[STATES * 3 * capacity];
+    delta = new double[capacity];
+  }
+
+  /**
+   * Returns the number of matches in the batch.
+   *
+   * @return The number of slots in use.
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Sets how precisely the models are solved, like AI.setSolverEpsilon().
+   *
+   * @param epsilon The largest change of any state's winning chance at which a sweep counts as converged.
+   */
+  public void setSolverEpsilon(double epsilon) {
+    this.epsilon = epsilon;
+  }
+
+  /**
+   * Makes the batch draw the moves it picks from the given generator instead of Math.random(), so that its play can be
+   * reproduced from a seed, like AI.setRandom(). A SplittableRandom is not thread-safe; give every batch its own.
+   *
+   * @param random The generator, or null to use Math.random() again.
+   */
+  public void setRandom(SplittableRandom random) {
+    this.random = random;
+  }
+
+  /**
+   * Returns the number of sweeps over all states that the last solve took.
+   *
+   * @return The number of sweeps.
+   */
+  public int getLastSweeps() {
+    return lastSweeps;
+  }
+
+  /**
+   * Adds a match to the batch, starting from a copy of its AI's model.
+   *
+   * @param ai The AI of the match.
+   * @return The slot of the match.
+   * @throws IllegalStateException    If the batch is full.
+   * @throws IllegalArgumentException If the AI does not play with the standard charge cap and exponent.
+   */
+  public int add(AI ai) {
+    if (size == capacity) throw new IllegalStateException("The batch is full");
+    if (ai.getCap() != 5) throw new IllegalArgumentException("The batch only holds AIs with charge cap 5");
+    if (ai.getExponent() != 3) throw new IllegalArgumentException("The batch only holds AIs with exponent 3");
+    int slot = size++;
+    for (int j = 0; j <= 5; j++) {
+      for (int k = 0; k <= 5; k++) {
+        int row = j * 6 + k;
+        states[row * capacity + slot] = ai.getStateValue(j, k);
+        statesCount[row * capacity + slot] = ai.getStateCount(j, k);
+        for (int i = 0; i < 3; i++) {
+          userChoice[(row * 3 + i) * capacity + slot] = ai.getUserChoice(j, k, i);
+          userProb[(row * 3 + i) * capacity + slot] = (double) ai.getUserChoice(j, k, i) / ai.getStateCount(j, k);
+          policy[(row * 3 + i) * capacity + slot] = ai.getProbability(j, k, i);
+        }
+      }
+    }
+    return slot;
+  }
+
+  /**
+   * Adjusts the model of a match based on the user's most recent action, like AI.updateUsersMove().
+   *
+   * @param slot              The slot of the match.
+   * @param playerCharge      Player's charge count
+   * @param aiCharge          AI's charge count
+   * @param playerActionIndex Player's action (0 for fireball, 1 for shield, 2 for charge)
+   */
+  public void updateUsersMove(int slot, int playerCharge, int aiCharge, int playerActionIndex) {
+    if (playerCharge > 5) playerCharge = 5;
+    int row = playerCharge * 6 + aiCharge;
+    double count = ++statesCount[row * capacity + slot];
+    userChoice[(row * 3 + playerActionIndex) * capacity + slot]++;
+    for (int i = 0; i < 3; i++) {
+      userProb[(row * 3 + i) * capacity + slot] = userChoice[(row * 3 + i) * capacity + slot] / count;
+    }
+  }
+
+  /**
+   * Returns the probability that the AI of a match is going to choose a move.
+   *
+   * @param slot         The slot of the match.
+   * @param playerCharge Player's charge
+   * @param aiCharge     AI's charge
+   * @param i            Move index (0 for fireball, 1 for shield, 2 for charge)
+   * @return The probability for the AI to choose the move indexed i.
+   */
+  public double getProbability(int slot, int playerCharge, int aiCharge, int i) {
+    return policy[((playerCharge * 6 + aiCharge) * 3 + i) * capacity + slot];
+  }
+
+  /**
+   * Solves the models of every match until none of them changes by more than epsilon in a sweep.
+   */
+  public void computeProbability() {
+    lastSweeps = 0;
+    double change;
+    do {
+      change = sweep();
+      lastSweeps++;
+    } while (change > epsilon && lastSweeps < 10_000);
+  }
+
+  /**
+   * Updates every state of every match once, in the same order as the equations depend on each other.
+   *
+   * @return The largest change of a winning chance.
+   */
+  private double sweep() {
+    Arrays.fill(delta, 0, size, 0);
+    for (int j = 0; j <= 4; j++) {
+      for (int k = 0; k <= 4; k++) {
+        updateState(j, k);
+      }
+    }
+    double change = 0;
+    for (int n = 0; n < size; n++) {
+      change = Math.max(change, delta[n]);
+    }
+    return change;
+  }
+
+  /**
+   * Recomputes the winning chances and policy of state (j, k) for every match, like AI.updateState().
+   *
+   * @param j Player's charge
+   * @param k AI's charge
+   */
+  private void updateState(int j, int k) {
+    int c = capacity;
+    int row = j * 6 + k;
+    // the runs every slot reads from, so that the loop below only adds the slot
+    int state = row * c;
+    int up0 = row * 3 * c;
+    int up1 = up0 + c;
+    int up2 = up1 + c;
+    int p0 = up0;
+    int p1 = up1;
+    int p2 = up2;
+    int downLeft = ((j - 1) * 6 + k - 1) * c; // both fireball
+    int left = (j * 6 + k - 1) * c; // the AI's fireball is shielded
+    int up = ((j - 1) * 6 + k) * c; // the user's fireball is shielded
+    int down = ((j + 1) * 6 + k) * c; // the user charges while the AI shields
+    int right = (j * 6 + k + 1) * c; // the AI charges while the user shields
+    int downRight = ((j + 1) * 6 + k + 1) * c; // both charge
+
+    for (int n = 0; n < size; n++) {
+      double u0 = userProb[up0 + n];
+      double u1 = userProb[up1 + n];
+      double u2 = userProb[up2 + n];
+      // can't fireball when the AI has 0 charge, no need to shield when the user has 0 charge
+      double fireball = k == 0 ? 0 : (j > 0 ? u0 * states[downLeft + n] : 0) + u1 * states[left + n] + u2;
+      double shield = j == 0 ? 0 : u0 * states[up + n] + u1 * states[state + n] + u2 * states[down + n];
+      double charge = u1 * states[right + n] + u2 * states[downRight + n];
+
+      double f3 = fireball * fireball * fireball;
+      double s3 = shield * shield * shield;
+      double c3 = charge * charge * charge;
+      double sum = f3 + s3 + c3;
+      double inverse = sum > 0 ? 1 / sum : 0;
+      double pf = f3 * inverse;
+      double ps = s3 * inverse;
+      double pc = sum > 0 ? c3 * inverse : 1;
+      policy[p0 + n] = pf;
+      policy[p1 + n] = ps;
+      policy[p2 + n] = pc;
+
+      double value = pf * fireball + ps * shield + pc * charge;
+      delta[n] = Math.max(delta[n], Math.abs(value - states[state + n]));
+      states[state + n] = value;
+    }
+  }
+
+  /**
+   * Solves every match's model and picks the AI's move in every match, like AI.makeMove().
+   *
+   * @param playerCharges The Player's charge in each slot.
+   * @param aiCharges     The AI's charge in each slot.
+   * @param moves         Receives the AI's Move for each slot.
+   */
+  public void makeMoves(int[] playerCharges, int[] aiCharges, Move[] moves) {
+    computeProbability();
+    for (int n = 0; n < size; n++) {
+      int aiCharge = aiCharges[n];
+      if (aiCharge >= 5) {
+        moves[n] = Rules.SUPER_FIREBALL;
+        continue;
+      }
+      int playerCharge = Math.min(playerCharges[n], 5);
+      double prob0 = getProbability(n, playerCharge, aiCharge, 0);
+      double prob1 = getProbability(n, playerCharge, aiCharge, 1);
+      double randomVal = random != null ? random.nextDouble() : Math.random();
+      if (randomVal < prob0) {
+        moves[n] = Rules.FIREBALL;
+      } else if (randomVal < prob0 + prob1) {
+        moves[n] = Rules.SHIELD;
+      } else {
+        moves[n] = Rules.CHARGE;
+      }
+    }
+  }
+}
\ No newline at end of file
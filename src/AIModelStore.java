@@ -0,0 +1,367 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Keeps what the AI learned about each player, so that a returning player meets an AI that already knows their
+ * habits.
+ * <p>
+ * A match checks out the AI of its player when it starts and checks it back in when it ends. Checked-in AIs stay in
+ * memory, ready for the player's next match, until the idle ones take more than a budget of bytes, as estimated by
+ * AI.getModelBytes(); then the least recently used ones are written to disk and dropped, so the memory held by models
+ * stays bounded however many players there are and however much each one played. A player's model is only read from
+ * disk when they start a match.
+ * <p>
+ * Models are written outside the store's lock, so matches starting and ending elsewhere never wait for the disk. A
+ * model being written is kept aside until its file is complete, and a check-out in the meantime takes it from there
+ * instead of reading the old file.
+ * <p>
+ * Each model is saved in its own file, named after a hash of the player's name. The file holds only the user actions
+ * the AI observed beyond its initial model, as varints, so a model takes a few hundred bytes at most.
+ * <p>
+ * File: magic (int), version (byte), name length (varint), name (UTF-8), OBSERVATIONS counts (varints), CRC32 of
+ * everything before it (int). A file that is damaged is ignored and the player starts over with a fresh AI.
+ *
+ * @author Dougy
+ */
+public class AIModelStore {
+  /**
+   * The memory idle models may take unless another limit is given: a 32nd of the maximum heap.
+   */
+  public static final long DEFAULT_MAX_RESIDENT_BYTES = Runtime.getRuntime().maxMemory() / 32;
+
+  private static final int MAGIC = 0x46424149; // "FBAI"
+  private static final byte VERSION = 1;
+
+  private final Path directory; // null if models are not saved
+  private final long maxResidentBytes;
+  private final LinkedHashMap<String, AI> resident = new LinkedHashMap<String, AI>(16, 0.75f, true);
+  private long residentBytes; // the sum of getModelBytes() over resident, which doesn't change while they are idle
+  private final HashMap<String, AI> writing = new HashMap<String, AI>(); // the latest evicted model of each name
+  private int loads;
+  private int evictions;
+
+  /**
+   * Creates a store that keeps idle models in memory only. Models evicted to bound memory are lost.
+   */
+  public AIModelStore() {
+    directory = null;
+    maxResidentBytes = DEFAULT_MAX_RESIDENT_BYTES;
+  }
+
+  /**
+   * Opens the store in a directory, creating the directory if needed.
+   *
+   * @param directory        The directory holding the model files.
+   * @param maxResidentBytes The memory idle models may take before the least recently used ones are written out.
+   * @throws IOException If the directory cannot be created.
+   */
+  public AIModelStore(Path directory, long maxResidentBytes) throws IOException {
+    if (maxResidentBytes < 0) throw new IllegalArgumentException("Negative maxResidentBytes: " + maxResidentBytes);
+    this.directory = directory;
+    this.maxResidentBytes = maxResidentBytes;
+    Files.createDirectories(directory);
+  }
+
+  /**
+   * Takes the AI of a player for a match. The AI belongs to the match until it is checked in again; if the same
+   * player plays two matches at once, each gets its own copy and the one checked in last is kept.
+   *
+   * @param name The player's name.
+   * @return The player's AI as it was last checked in, or a fresh AI for a new player.
+   */
+  public AI checkOut(String name) {
+    AI evicted;
+    synchronized (this) {
+      AI ai = resident.remove(name);
+      if (ai != null) {
+        residentBytes -= ai.getModelBytes();
+        return ai;
+      }
+      evicted = writing.get(name);
+      if (evicted == null) loads++;
+    }
+    // the file of an evicted model may not be complete yet; what it will hold is known
+    if (evicted != null) return new AI(evicted.getObservations());
+    try {
+      int[] observations = read(name);
+      if (observations != null) return new AI(observations);
+    } catch (IOException | IllegalArgumentException e) {
+      System.err.println("Could not load the AI model of " + name + ", starting over: " + e.getMessage());
+    }
+    return new AI();
+  }
+
+  /**
+   * Gives back the AI of a player after a match, writing out the least recently used idle models if too many are
+   * held in memory.
+   *
+   * @param name The player's name.
+   * @param ai   The AI the player played against.
+   */
+  public void checkIn(String name, AI ai) {
+    ArrayList<String> toWrite = null;
+    synchronized (this) {
+      AI replaced = resident.put(name, ai);
+      if (replaced != null) residentBytes -= replaced.getModelBytes();
+      residentBytes += ai.getModelBytes();
+      if (residentBytes > maxResidentBytes) {
+        toWrite = new ArrayList<String>();
+        Iterator<Map.Entry<String, AI>> eldest = resident.entrySet().iterator();
+        while (residentBytes > maxResidentBytes && eldest.hasNext()) {
+          Map.Entry<String, AI> entry = eldest.next();
+          residentBytes -= entry.getValue().getModelBytes();
+          evict(entry.getKey(), entry.getValue(), toWrite);
+          eldest.remove();
+          evictions++;
+        }
+      }
+    }
+    if (toWrite != null) writeOut(toWrite);
+  }
+
+  /**
+   * Writes every idle model to disk and drops them from memory, then waits until every model evicted before is
+   * written too.
+   */
+  public void close() {
+    ArrayList<String> toWrite = new ArrayList<String>();
+    synchronized (this) {
+      for (Map.Entry<String, AI> entry : resident.entrySet()) {
+        evict(entry.getKey(), entry.getValue(), toWrite);
+      }
+      resident.clear();
+      residentBytes = 0;
+    }
+    writeOut(toWrite);
+    synchronized (this) {
+      while (!writing.isEmpty()) {
+        try {
+          wait();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return;
+        }
+      }
+    }
+  }
+
+  /**
+   * Sets a model aside to be written. Must be called with the lock held.
+   *
+   * @param name    The player's name.
+   * @param ai      The player's AI, which is no longer resident.
+   * @param toWrite Receives the name if the caller has to write it; if another thread is writing an older model of
+   *                the player, that thread writes this one after it.
+   */
+  private void evict(String name, AI ai, ArrayList<String> toWrite) {
+    if (writing.put(name, ai) == null) toWrite.add(name);
+  }
+
+  /**
+   * Writes the models set aside for some players, without holding the lock, until the latest model of each is
+   * written.
+   *
+   * @param names The players.
+   */
+  private void writeOut(ArrayList<String> names) {
+    for (String name : names) {
+      AI ai;
+      synchronized (this) {
+        ai = writing.get(name);
+      }
+      while (true) {
+        save(name, ai);
+        synchronized (this) {
+          AI latest = writing.get(name);
+          if (latest == ai) {
+            writing.remove(name);
+            notifyAll();
+            break;
+          }
+          ai = latest;
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the number of idle models held in memory.
+   *
+   * @return The number of resident models.
+   */
+  public synchronized int getResidentCount() {
+    return resident.size();
+  }
+
+  /**
+   * Returns the memory taken by the idle models held in memory.
+   *
+   * @return The sum of their AI.getModelBytes().
+   */
+  public synchronized long getResidentBytes() {
+    return residentBytes;
+  }
+
+  /**
+   * Returns the number of check-outs that had to look on disk because the model was not in memory.
+   *
+   * @return The number of loads.
+   */
+  public synchronized int getLoadCount() {
+    return loads;
+  }
+
+  /**
+   * Returns the number of idle models written out to keep memory bounded.
+   *
+   * @return The number of evictions.
+   */
+  public synchronized int getEvictionCount() {
+    return evictions;
+  }
+
+  /**
+   * Writes a model to disk, reporting a failure without throwing.
+   *
+   * @param name The player's name.
+   * @param ai   The player's AI.
+   */
+  private void save(String name, AI ai) {
+    if (directory == null) return;
+    try {
+      write(name, ai.getObservations());
+    } catch (IOException e) {
+      System.err.println("Could not save the AI model of " + name + ": " + e.getMessage());
+    }
+  }
+
+  /**
+   * Returns the file of a player's model.
+   *
+   * @param name The player's name.
+   * @return The path of the model file.
+   */
+  private Path pathOf(String name) {
+    try {
+      byte[] hash = MessageDigest.getInstance("SHA-256").digest(name.getBytes(StandardCharsets.UTF_8));
+      StringBuilder file = new StringBuilder("ai-");
+      for (int i = 0; i < 16; i++) {
+        file.append(Character.forDigit((hash[i] >> 4) & 0xF, 16)).append(Character.forDigit(hash[i] & 0xF, 16));
+      }
+      return directory.resolve(file.append(".model").toString());
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 is always available", e);
+    }
+  }
+
+  /**
+   * Saves a player's observations, replacing the saved ones at once so that a crash never leaves a partial file.
+   *
+   * @param name         The player's name.
+   * @param observations The observations of the player's AI.
+   * @throws IOException If the file cannot be written.
+   */
+  void write(String name, int[] observations) throws IOException {
+    byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+    ByteBuffer out = ByteBuffer.allocate(4 + 1 + 5 + nameBytes.length + observations.length * 5 + 4);
+    out.putInt(MAGIC).put(VERSION);
+    putVarint(out, nameBytes.length);
+    out.put(nameBytes);
+    for (int count : observations) {
+      putVarint(out, count);
+    }
+    CRC32 crc = new CRC32();
+    crc.update(out.array(), 0, out.position());
+    out.putInt((int) crc.getValue());
+
+    Path file = pathOf(name);
+    Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+    Files.write(temporary, Arrays.copyOf(out.array(), out.position()));
+    Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * Reads a player's saved observations.
+   *
+   * @param name The player's name.
+   * @return The observations, or null if none were saved for the player.
+   * @throws IOException If the file cannot be read or is damaged.
+   */
+  int[] read(String name) throws IOException {
+    if (directory == null) return null;
+    byte[] bytes;
+    try {
+      bytes = Files.readAllBytes(pathOf(name));
+    } catch (NoSuchFileException e) {
+      return null;
+    }
+    if (bytes.length < 9) throw new IOException("Model file too short");
+    CRC32 crc = new CRC32();
+    crc.update(bytes, 0, bytes.length - 4);
+    ByteBuffer in = ByteBuffer.wrap(bytes);
+    if (in.getInt(bytes.length - 4) != (int) crc.getValue()) throw new IOException("Bad model checksum");
+    in.limit(bytes.length - 4);
+    if (in.getInt() != MAGIC || in.get() != VERSION) throw new IOException("Not a model file");
+    try {
+      byte[] nameBytes = new byte[getVarint(in)];
+      in.get(nameBytes);
+      // a different name means two names share a hash; the other player's model is no use
+      if (!new String(nameBytes, StandardCharsets.UTF_8).equals(name)) return null;
+      int[] observations = new int[AI.OBSERVATIONS];
+      for (int i = 0; i < observations.length; i++) {
+        observations[i] = getVarint(in);
+      }
+      return observations;
+    } catch (RuntimeException e) {
+      throw new IOException("Truncated model file", e);
+    }
+  }
+
+  /**
+   * Writes a non-negative int in 7-bit groups, lowest first, with the high bit set on all but the last group.
+   *
+   * @param out   The buffer to write to.
+   * @param value The value, at least 0.
+   */
+  private static void putVarint(ByteBuffer out, int value) {
+    while ((value & ~0x7F) != 0) {
+      out.put((byte) ((value & 0x7F) | 0x80));
+      value >>>= 7;
+    }
+    out.put((byte) value);
+  }
+
+  /**
+   * Reads an int written by putVarint.
+   *
+   * @param in The buffer to read from.
+   * @return The value.
+   * @throws IllegalArgumentException If the value does not fit in an int.
+   */
+  private static int getVarint(ByteBuffer in) {
+    int value = 0;
+    for (int shift = 0; shift < 35; shift += 7) {
+      byte b = in.get();
+      value |= (b & 0x7F) << shift;
+      if (b >= 0) {
+        if (value < 0) throw new IllegalArgumentException("Varint out of range");
+        return value;
+      }
+    }
+    throw new IllegalArgumentException("Varint too long");
+  }
+}
\ No newline at end of file
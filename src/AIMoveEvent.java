@@ -0,0 +1,50 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * A Flight Recorder event for one call to AI.makeMove(): the state it moved from, the probabilities it picked the
+ * move with, how much of the model it solved first, and how long it took.
+ *
+ * @author Dougy
+ */
+@Name("fireball.AIMove")
+@Label("AI Move")
+@Category({"Fireball", "AI"})
+@Description("A move picked by the AI")
+@StackTrace(false)
+@Threshold("1 ms")
+class AIMoveEvent extends jdk.jfr.Event {
+  @Label("Player Charge")
+  int playerCharge;
+
+  @Label("AI Charge")
+  int aiCharge;
+
+  @Label("Strategy")
+  @Description("model, equilibrium or finisher")
+  String strategy;
+
+  @Label("Move")
+  String move;
+
+  @Label("Fireball Probability")
+  double fireballProbability;
+
+  @Label("Shield Probability")
+  double shieldProbability;
+
+  @Label("Charge Probability")
+  double chargeProbability;
+
+  @Label("Solver Updates")
+  @Description("States of the model recomputed before the move was picked")
+  int solverUpdates;
+
+  @Label("Converged")
+  @Description("Whether the model was solved before the move budget ran out")
+  boolean converged;
+}
\ No newline at end of file
@@ -0,0 +1,142 @@
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Solves an AI's model in the background while the user decides on a move, so that the AI answers at once.
+ * <p>
+ * The AI's move only depends on its model, but the model has to be solved again after every move the user makes. While
+ * the user is deciding, the speculator solves a copy of the current model, and from it a copy updated with each of
+ * the three actions the user may choose. When the user moves, the AI takes over the solved current model and moves
+ * without solving anything; the branch of the chosen action becomes the next current model and the other branches are
+ * cancelled. If the user is faster than the solver, the turn waits for the model without blocking the caller's thread.
+ * <p>
+ * The AI itself is only touched by the thread using the speculator, such as the Swing event dispatch thread. The
+ * background only works on copies, and the solved models it delivers are never changed: the AI adopts copies of them.
+ *
+ * @author Dougy
+ */
+class AISpeculator {
+  private static final ExecutorService SOLVERS = Executors.newFixedThreadPool(
+    Runtime.getRuntime().availableProcessors(), task -> {
+      Thread thread = new Thread(task, "AI speculation");
+      thread.setDaemon(true);
+      return thread;
+    });
+
+  private final AI ai;
+  private CompletableFuture<AI> current; // the AI's model for the state the user is deciding in, solved
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  private final CompletableFuture<AI>[] branches = new CompletableFuture[3]; // the model after each action, solved
+
+  /**
+   * Creates a speculator for an AI.
+   *
+   * @param ai The AI, which only the caller's thread may use from now on.
+   */
+  AISpeculator(AI ai) {
+    this.ai = ai;
+  }
+
+  /**
+   * Starts solving, in the background, the AI's model and the model after each action the user may choose in a state.
+   * Call it whenever the user has to pick a move.
+   *
+   * @param playerCharge The Player's charge in the state.
+   * @param aiCharge     The AI's charge in the state.
+   */
+  void speculate(int playerCharge, int aiCharge) {
+    if (ai.getEquilibriumWeight() == 1) return; // the model is never used
+    if (current == null) {
+      AI model = ai.copyModel();
+      current = model.isSolved() ? CompletableFuture.completedFuture(model) : CompletableFuture.supplyAsync(() -> {
+        model.computeProbability();
+        return model;
+      }, SOLVERS);
+    }
+    for (int action = 0; action < 3; action++) {
+      // fireball is not possible without charge
+      if (action == 0 && playerCharge == 0) continue;
+      int chosen = action;
+      branches[action] = current.thenApplyAsync(solved -> {
+        AI branch = solved.copyModel();
+        branch.updateUsersMove(playerCharge, aiCharge, chosen);
+        branch.computeProbability();
+        return branch;
+      }, SOLVERS);
+    }
+  }
+
+  /**
+   * Returns whether the AI can move at once, without waiting for its model.
+   *
+   * @return Whether the model for the current state is solved, or not needed.
+   */
+  boolean isReady() {
+    return current == null || current.isDone();
+  }
+
+  /**
+   * Hands the AI its solved model and then plays a turn. The turn runs right away if the model is ready, and
+   * otherwise on the given executor once it is.
+   *
+   * @param turn  The turn, which calls the AI's makeMove() and updateUsersMove() and then advance().
+   * @param owner The executor of the thread that owns the AI, e.g. SwingUtilities::invokeLater.
+   */
+  void whenReady(Runnable turn, Executor owner) {
+    if (current == null) {
+      turn.run();
+    } else if (current.isDone()) {
+      adoptCurrent();
+      turn.run();
+    } else {
+      CompletableFuture<AI> waited = current;
+      waited.whenCompleteAsync((model, failure) -> {
+        if (waited != current) return; // cancelled in the meantime
+        adoptCurrent();
+        turn.run();
+      }, owner);
+    }
+  }
+
+  /**
+   * Moves on to the model of the action the user chose, and cancels the others. Call it after the turn, then call
+   * speculate() for the next state.
+   *
+   * @param action The action the user chose: 0 for fireball, 1 for shield, 2 for charge, or -1 for a move the model
+   *               does not learn from, which leaves it as it is.
+   */
+  void advance(int action) {
+    if (action >= 0) current = branches[action];
+    for (int other = 0; other < 3; other++) {
+      if (other != action && branches[other] != null) branches[other].cancel(false);
+      branches[other] = null;
+    }
+  }
+
+  /**
+   * Cancels all work, for example because the match ended. The AI keeps the model it has.
+   */
+  void cancel() {
+    if (current != null) current.cancel(false);
+    advance(-1);
+    current = null;
+  }
+
+  /**
+   * Lets the AI take over a copy of the solved current model. If solving failed, the AI solves its model itself.
+   */
+  private void adoptCurrent() {
+    AI model;
+    try {
+      model = current.join();
+    } catch (CancellationException | CompletionException e) {
+      current = null;
+      return;
+    }
+    ai.adoptModel(model.copyModel());
+  }
+}
\ No newline at end of file
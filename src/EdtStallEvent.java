@@ -0,0 +1,53 @@
+import java.awt.event.ActionListener;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/**
+ * A Flight Recorder event for a Swing listener that kept the event dispatch thread busy, during which the GUI could
+ * not repaint or react. Only listeners that run longer than the threshold are recorded.
+ *
+ * @author Dougy
+ */
+@Name("fireball.EdtStall")
+@Label("EDT Stall")
+@Category({"Fireball", "GUI"})
+@Description("A Swing listener that blocked the event dispatch thread")
+@Threshold("50 ms")
+class EdtStallEvent extends jdk.jfr.Event {
+  @Label("Listener")
+  String listener;
+
+  @Label("Action Command")
+  String command;
+
+  /**
+   * Wraps a listener so that its slow runs are recorded.
+   *
+   * @param listener The name of the listener, e.g. "Game.move".
+   * @param body     The listener.
+   * @return A listener that runs the body.
+   */
+  static ActionListener watch(String listener, ActionListener body) {
+    return action -> {
+      if (!Metrics.recording()) {
+        body.actionPerformed(action);
+        return;
+      }
+      EdtStallEvent event = new EdtStallEvent();
+      event.begin();
+      try {
+        body.actionPerformed(action);
+      } finally {
+        event.end();
+        if (event.shouldCommit()) {
+          event.listener = listener;
+          event.command = action.getActionCommand();
+          event.commit();
+        }
+      }
+    };
+  }
+}
\ No newline at end of file
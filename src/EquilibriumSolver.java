@@ -0,0 +1,320 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Computes the equilibrium strategy of a round of Fireball offline and saves it as an EquilibriumTable.
+ * <p>
+ * A round is a zero-sum game whose states are the (player charge, AI charge) pairs. In every state both sides pick
+ * one of the Moves they can afford at the same time; the Rules decide whether the AI wins (worth 1), the player wins
+ * (worth 0) or the round goes on in the state reached after paying the Moves' costs. The solver runs value
+ * iteration over the states: each sweep solves the matrix game of every state, in parallel across cores, with the
+ * values of the previous sweep for the states a draw leads to. The matrix games are small (at most four Moves a
+ * side), so each is solved exactly as a linear program by enumerating its vertices.
+ * <p>
+ * Run with {@code java EquilibriumSolver [file]} to write the standard table, by default to src/equilibrium.table.
+ *
+ * @author Dougy
+ */
+public class EquilibriumSolver {
+  /**
+   * The highest charge the standard table distinguishes. Above it a super fireball is always affordable, so more
+   * charge changes little.
+   */
+  public static final int STANDARD_CAP = 5;
+
+  private static final int MAX_SWEEPS = 2_000;
+  private static final double TOLERANCE = 1e-12;
+
+  private final Rules rules;
+  private final Move[] moves;
+  private final int cap;
+  private final int side; // cap + 1, the number of charges per player
+  private final double[] values; // values[state] is the AI's winning chance from the state
+  private final double[][] strategies; // strategies[state][i] is the AI's probability of using moves[i]
+  private int sweeps;
+
+  /**
+   * Creates a solver.
+   *
+   * @param rules The Rules deciding every pair of Moves.
+   * @param moves The Moves both sides may use, when they can afford them.
+   * @param cap   The highest charge told apart; higher charges count as the cap.
+   */
+  public EquilibriumSolver(Rules rules, Move[] moves, int cap) {
+    this.rules = rules;
+    this.moves = moves.clone();
+    this.cap = cap;
+    side = cap + 1;
+    int states = side * side;
+    values = new double[states];
+    strategies = new double[states][moves.length];
+    Arrays.fill(values, 0.5);
+  }
+
+  /**
+   * Solves the standard rules.
+   *
+   * @return The table of the standard game.
+   */
+  public static EquilibriumTable solveStandard() {
+    Move[] moves = {Rules.FIREBALL, Rules.SHIELD, Rules.CHARGE, Rules.SUPER_FIREBALL};
+    return new EquilibriumSolver(Rules.STANDARD, moves, STANDARD_CAP).solve();
+  }
+
+  /**
+   * Runs value iteration until no state's value changes by more than the tolerance.
+   *
+   * @return The table of the equilibrium.
+   */
+  public EquilibriumTable solve() {
+    int states = side * side;
+    double[] next = new double[states];
+    sweeps = MAX_SWEEPS;
+    for (int sweep = 0; sweep < MAX_SWEEPS; sweep++) {
+      IntStream.range(0, states).parallel().forEach(s -> next[s] = solveState(s));
+      double change = 0;
+      for (int s = 0; s < states; s++) {
+        change = Math.max(change, Math.abs(next[s] - values[s]));
+      }
+      System.arraycopy(next, 0, values, 0, states);
+      if (change <= TOLERANCE) {
+        sweeps = sweep + 1;
+        break;
+      }
+    }
+
+    double[] table = new double[states * moves.length];
+    for (int s = 0; s < states; s++) {
+      System.arraycopy(strategies[s], 0, table, s * moves.length, moves.length);
+    }
+    return new EquilibriumTable(cap, moves, values, table);
+  }
+
+  /**
+   * Returns the number of sweeps the last solve took.
+   *
+   * @return The number of sweeps, MAX_SWEEPS if it did not converge.
+   */
+  public int getSweeps() {
+    return sweeps;
+  }
+
+  /**
+   * Solves a state's matrix game with the current values of the states a draw leads to.
+   *
+   * @param state The state.
+   * @return The game's value: the AI's winning chance from the state.
+   */
+  private double solveState(int state) {
+    int playerCharge = state / side;
+    int aiCharge = state % side;
+
+    // only affordable Moves take part; payoff[i][j] is the AI's winning chance when it uses ai[i] and the player
+    // uses player[j]
+    int[] ai = affordable(aiCharge);
+    int[] player = affordable(playerCharge);
+    double[][] payoff = new double[ai.length][player.length];
+    for (int i = 0; i < ai.length; i++) {
+      for (int j = 0; j < player.length; j++) {
+        Move aiMove = moves[ai[i]];
+        Move playerMove = moves[player[j]];
+        byte outcome = rules.resolve(aiMove, playerMove);
+        if (outcome == Rules.WIN) payoff[i][j] = 1;
+        else if (outcome == Rules.LOSE) payoff[i][j] = 0;
+        else payoff[i][j] = values[next(playerCharge, playerMove) * side + next(aiCharge, aiMove)];
+      }
+    }
+
+    double[] best = solveGame(payoff);
+    double[] strategy = strategies[state];
+    Arrays.fill(strategy, 0);
+    for (int i = 0; i < ai.length; i++) {
+      strategy[ai[i]] = best[i];
+    }
+    return best[ai.length];
+  }
+
+  /**
+   * Returns the indices of the Moves a side can afford.
+   *
+   * @param charge The side's charge.
+   * @return The indices into moves.
+   */
+  private int[] affordable(int charge) {
+    int count = 0;
+    for (Move move : moves) {
+      if (move.getCost() <= charge) count++;
+    }
+    int[] indices = new int[count];
+    count = 0;
+    for (int i = 0; i < moves.length; i++) {
+      if (moves[i].getCost() <= charge) indices[count++] = i;
+    }
+    return indices;
+  }
+
+  /**
+   * Finds the AI's maximin strategy of a matrix game exactly.
+   * <p>
+   * The maximin strategy is a vertex of a small linear program: on some set of k of its Moves it makes the player
+   * indifferent between some k of theirs. Every pair of such sets is tried by solving its linear system, and the
+   * strategy guaranteeing the most against every reply is kept. With at most four Moves a side that is at most 69
+   * systems of up to 5 equations.
+   *
+   * @param payoff The AI's payoff for each of its Moves (rows) against each of the player's (columns).
+   * @return The AI's probability of each row, followed by the value of the game.
+   */
+  static double[] solveGame(double[][] payoff) {
+    int rows = payoff.length;
+    int columns = payoff[0].length;
+    double[] best = null;
+    double bestValue = -Double.MAX_VALUE;
+    for (int rowSet = 1; rowSet < 1 << rows; rowSet++) {
+      int k = Integer.bitCount(rowSet);
+      for (int columnSet = 1; columnSet < 1 << columns; columnSet++) {
+        if (Integer.bitCount(columnSet) != k) continue;
+        double[] x = indifferent(payoff, rowSet, columnSet, k);
+        if (x == null) continue;
+        // what the strategy guarantees whatever the player does
+        double guaranteed = Double.MAX_VALUE;
+        for (int j = 0; j < columns; j++) {
+          double against = 0;
+          for (int i = 0; i < rows; i++) {
+            against += x[i] * payoff[i][j];
+          }
+          guaranteed = Math.min(guaranteed, against);
+        }
+        if (guaranteed > bestValue + 1e-12) {
+          bestValue = guaranteed;
+          best = x;
+        }
+      }
+    }
+    double[] result = Arrays.copyOf(best, rows + 1);
+    result[rows] = bestValue;
+    return result;
+  }
+
+  /**
+   * Solves for the AI strategy on a set of rows that gives the same payoff against every column of a set.
+   *
+   * @param payoff    The payoff matrix.
+   * @param rowSet    The rows the strategy may use, as a bit set.
+   * @param columnSet The columns it must be indifferent between, as a bit set of the same size.
+   * @param k         The size of both sets.
+   * @return The strategy over all rows, or null if there is no unique one or it is not a probability distribution.
+   */
+  private static double[] indifferent(double[][] payoff, int rowSet, int columnSet, int k) {
+    int[] r = bits(rowSet, k);
+    int[] c = bits(columnSet, k);
+    // unknowns: x[r[0]] .. x[r[k - 1]], v
+    // equations: sum_i x[r[i]] * payoff[r[i]][c[j]] - v = 0 for each j, and sum_i x[r[i]] = 1
+    double[][] system = new double[k + 1][k + 2];
+    for (int j = 0; j < k; j++) {
+      for (int i = 0; i < k; i++) {
+        system[j][i] = payoff[r[i]][c[j]];
+      }
+      system[j][k] = -1;
+    }
+    for (int i = 0; i < k; i++) {
+      system[k][i] = 1;
+    }
+    system[k][k + 1] = 1;
+    double[] solution = gauss(system);
+    if (solution == null) return null;
+    double[] x = new double[payoff.length];
+    for (int i = 0; i < k; i++) {
+      if (solution[i] < -1e-12) return null;
+      x[r[i]] = Math.max(0, solution[i]);
+    }
+    return x;
+  }
+
+  /**
+   * Returns the positions of the set bits of a bit set.
+   *
+   * @param set   The bit set.
+   * @param count The number of set bits.
+   * @return The positions, lowest first.
+   */
+  private static int[] bits(int set, int count) {
+    int[] positions = new int[count];
+    for (int i = 0; i < count; i++) {
+      positions[i] = Integer.numberOfTrailingZeros(set);
+      set &= set - 1;
+    }
+    return positions;
+  }
+
+  /**
+   * Solves a square linear system by Gaussian elimination with partial pivoting.
+   *
+   * @param system The augmented matrix, n rows of n coefficients and the right-hand side. It is overwritten.
+   * @return The solution, or null if the system is singular.
+   */
+  private static double[] gauss(double[][] system) {
+    int n = system.length;
+    for (int col = 0; col < n; col++) {
+      int pivot = col;
+      for (int row = col + 1; row < n; row++) {
+        if (Math.abs(system[row][col]) > Math.abs(system[pivot][col])) pivot = row;
+      }
+      if (Math.abs(system[pivot][col]) < 1e-12) return null;
+      double[] swap = system[col];
+      system[col] = system[pivot];
+      system[pivot] = swap;
+      for (int row = 0; row < n; row++) {
+        if (row == col) continue;
+        double factor = system[row][col] / system[col][col];
+        for (int i = col; i <= n; i++) {
+          system[row][i] -= factor * system[col][i];
+        }
+      }
+    }
+    double[] solution = new double[n];
+    for (int i = 0; i < n; i++) {
+      solution[i] = system[i][n] / system[i][i];
+    }
+    return solution;
+  }
+
+  /**
+   * Returns a player's charge after using a Move, limited to the cap.
+   *
+   * @param charge The charge before the Move.
+   * @param move   The Move.
+   * @return The charge after paying the Move's cost.
+   */
+  private int next(int charge, Move move) {
+    return Math.max(0, Math.min(cap, charge - move.getCost()));
+  }
+
+  /**
+   * Solves the standard rules and writes the table.
+   *
+   * @param args {@code [file]}
+   * @throws IOException If the table cannot be written.
+   */
+  public static void main(String[] args) throws IOException {
+    Path file = Paths.get(args.length > 0 ? args[0] : "src/equilibrium.table");
+    long start = System.nanoTime();
+    EquilibriumTable table = solveStandard();
+    System.out.printf("Solved in %.0f ms%n", (System.nanoTime() - start) / 1e6);
+    try (OutputStream out = Files.newOutputStream(file)) {
+      table.write(out);
+    }
+    System.out.printf("%-8s %8s %8s %8s %8s %8s%n", "state", "value", "fireball", "shield", "charge", "super");
+    for (int p = 0; p <= table.getCap(); p++) {
+      for (int a = 0; a <= table.getCap(); a++) {
+        System.out.printf("(%d, %d)   %8.4f %8.4f %8.4f %8.4f %8.4f%n", p, a, table.getValue(p, a),
+          table.getProbability(p, a, Rules.FIREBALL), table.getProbability(p, a, Rules.SHIELD),
+          table.getProbability(p, a, Rules.CHARGE), table.getProbability(p, a, Rules.SUPER_FIREBALL));
+      }
+    }
+  }
+}
\ No newline at end of file
@@ -0,0 +1,218 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * The equilibrium strategy of the AI in every (player charge, AI charge) state, as computed by EquilibriumSolver.
+ * <p>
+ * For each state the table holds the AI's winning chance under equilibrium play and the cumulative probabilities of
+ * its Moves as 16-bit fixed point numbers, so picking a move is one array lookup and at most one comparison per Move.
+ * Charges above the table's cap are treated as the cap.
+ * <p>
+ * File: magic (int), version (byte), cap (byte), number of Moves (byte), Move ids (bytes), then for every state in
+ * order (0, 0), (0, 1), ... the winning chance (float) and one cumulative probability per Move (unsigned short).
+ *
+ * @author Dougy
+ */
+public class EquilibriumTable {
+  /**
+   * The classpath resource the standard table is loaded from.
+   */
+  public static final String RESOURCE = "/equilibrium.table";
+
+  private static final int MAGIC = 0x46424551; // "FBEQ"
+  private static final byte VERSION = 1;
+  private static final int ONE = 1 << 16;
+
+  private final int cap;
+  private final Move[] moves;
+  private final float[] values; // values[state] is the AI's winning chance in the state
+  private final char[] cumulative; // cumulative[state * moves + i] is the chance of picking one of moves 0..i, of ONE
+
+  /**
+   * Holds the table of the standard rules, loaded when it is first used.
+   */
+  private static class Standard {
+    static final EquilibriumTable TABLE = load();
+
+    /**
+     * Loads the standard table from the classpath, or solves the standard rules if it is missing.
+     *
+     * @return The standard table.
+     */
+    private static EquilibriumTable load() {
+      try (InputStream in = EquilibriumTable.class.getResourceAsStream(RESOURCE)) {
+        if (in != null) return read(in, Rules.STANDARD);
+      } catch (IOException e) {
+        System.err.println("Could not load the equilibrium table, solving it again: " + e.getMessage());
+      }
+      return EquilibriumSolver.solveStandard();
+    }
+  }
+
+  /**
+   * Creates a table.
+   *
+   * @param cap        The highest charge the table distinguishes.
+   * @param moves      The Moves the strategies choose between.
+   * @param values     The AI's winning chance in each state.
+   * @param strategies The AI's probability of each Move in each state, at [state * moves.length + i].
+   */
+  EquilibriumTable(int cap, Move[] moves, double[] values, double[] strategies) {
+    this.cap = cap;
+    this.moves = moves.clone();
+    int states = (cap + 1) * (cap + 1);
+    this.values = new float[states];
+    cumulative = new char[states * moves.length];
+    for (int s = 0; s < states; s++) {
+      this.values[s] = (float) values[s];
+      double sum = 0;
+      for (int i = 0; i < moves.length; i++) {
+        sum += strategies[s * moves.length + i];
+        // the last Move always covers the rest, so rounding never leaves a gap
+        int fixed = i == moves.length - 1 ? ONE - 1 : (int) Math.min(ONE - 1, Math.round(sum * ONE));
+        cumulative[s * moves.length + i] = (char) fixed;
+      }
+    }
+  }
+
+  /**
+   * Returns the table of the standard rules, loading it on first use.
+   *
+   * @return The standard table.
+   */
+  public static EquilibriumTable standard() {
+    return Standard.TABLE;
+  }
+
+  /**
+   * Returns the index of a state.
+   *
+   * @param playerCharge Player's charge
+   * @param aiCharge     AI's charge
+   * @return The state's index.
+   */
+  private int stateOf(int playerCharge, int aiCharge) {
+    return Math.min(playerCharge, cap) * (cap + 1) + Math.min(aiCharge, cap);
+  }
+
+  /**
+   * Returns the highest charge the table distinguishes.
+   *
+   * @return The cap.
+   */
+  public int getCap() {
+    return cap;
+  }
+
+  /**
+   * Returns the AI's chance of winning a round from a state if both sides play the equilibrium.
+   *
+   * @param playerCharge Player's charge
+   * @param aiCharge     AI's charge
+   * @return The winning chance.
+   */
+  public double getValue(int playerCharge, int aiCharge) {
+    return values[stateOf(playerCharge, aiCharge)];
+  }
+
+  /**
+   * Returns the probability of the AI choosing a Move in a state.
+   *
+   * @param playerCharge Player's charge
+   * @param aiCharge     AI's charge
+   * @param move         The Move.
+   * @return The probability, or 0 if the table does not use the Move.
+   */
+  public double getProbability(int playerCharge, int aiCharge, Move move) {
+    int state = stateOf(playerCharge, aiCharge);
+    for (int i = 0; i < moves.length; i++) {
+      if (moves[i].getId() == move.getId()) {
+        int low = i == 0 ? 0 : cumulative[state * moves.length + i - 1];
+        int high = i == moves.length - 1 ? ONE : cumulative[state * moves.length + i];
+        return (double) (high - low) / ONE;
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * Picks the AI's Move in a state.
+   *
+   * @param playerCharge Player's charge
+   * @param aiCharge     AI's charge
+   * @param random       A uniformly distributed number in [0, 1).
+   * @return The Move.
+   */
+  public Move sample(int playerCharge, int aiCharge, double random) {
+    int base = stateOf(playerCharge, aiCharge) * moves.length;
+    int r = (int) (random * ONE);
+    int last = moves.length - 1;
+    for (int i = 0; i < last; i++) {
+      // a bound of ONE - 1 is the most a char holds and stands for ONE: the Moves after it are never picked
+      if (r < cumulative[base + i] || cumulative[base + i] == ONE - 1) return moves[i];
+    }
+    return moves[last];
+  }
+
+  /**
+   * Writes the table.
+   *
+   * @param out The stream to write to.
+   * @throws IOException If writing fails.
+   */
+  public void write(OutputStream out) throws IOException {
+    DataOutputStream data = new DataOutputStream(out);
+    data.writeInt(MAGIC);
+    data.writeByte(VERSION);
+    data.writeByte(cap);
+    data.writeByte(moves.length);
+    for (Move move : moves) {
+      data.writeByte(move.getId());
+    }
+    for (int s = 0; s < values.length; s++) {
+      data.writeFloat(values[s]);
+      for (int i = 0; i < moves.length; i++) {
+        data.writeChar(cumulative[s * moves.length + i]);
+      }
+    }
+    data.flush();
+  }
+
+  /**
+   * Reads a table written by write().
+   *
+   * @param in    The stream to read from.
+   * @param rules The Rules that the table's Move ids belong to.
+   * @return The table.
+   * @throws IOException If reading fails or the stream does not hold a valid table.
+   */
+  public static EquilibriumTable read(InputStream in, Rules rules) throws IOException {
+    DataInputStream data = new DataInputStream(in);
+    if (data.readInt() != MAGIC || data.readByte() != VERSION) throw new IOException("Not an equilibrium table");
+    int cap = data.readUnsignedByte();
+    Move[] moves = new Move[data.readUnsignedByte()];
+    if (moves.length == 0) throw new IOException("Equilibrium table without moves");
+    for (int i = 0; i < moves.length; i++) {
+      int id = data.readUnsignedByte();
+      moves[i] = id < rules.size() ? rules.getMove(id) : null;
+      if (moves[i] == null) throw new IOException("Unknown move id in equilibrium table: " + id);
+    }
+    int states = (cap + 1) * (cap + 1);
+    double[] values = new double[states];
+    double[] strategies = new double[states * moves.length];
+    for (int s = 0; s < states; s++) {
+      values[s] = data.readFloat();
+      int previous = 0;
+      for (int i = 0; i < moves.length; i++) {
+        int current = data.readChar();
+        if (current < previous) throw new IOException("Bad equilibrium table");
+        strategies[s * moves.length + i] = (double) (i == moves.length - 1 ? ONE - previous : current - previous) / ONE;
+        previous = current;
+      }
+    }
+    return new EquilibriumTable(cap, moves, values, strategies);
+  }
+}
\ No newline at end of file
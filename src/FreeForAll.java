@@ -0,0 +1,403 @@
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Runs a free-for-all Fireball match between any number of participants, users or AIs, without any GUI.
+ * <p>
+ * Every turn each participant still in the round picks a Move, and a Move that beats another Move, such as a fireball,
+ * is aimed at one other participant. An attack is resolved like a two-player turn between the attacker's Move and its
+ * target's Move, whatever the target aimed at: a fireball hits a target that charges, and a target that shields or
+ * fires a fireball of its own is not hurt. A participant that is hit by any attack is out of the round. With two
+ * participants aiming at each other this is exactly the two-player game. The round ends when at most one participant
+ * is left, who wins it, and the next round starts with everyone back in and without charge.
+ * <p>
+ * The participants are kept in primitive arrays indexed by participant: the id of their Move, their target, their
+ * charge and whether they are still in. The turn is resolved by a single pass over those arrays that looks up every
+ * (attacker, target) pair in the outcome matrix of the Rules, so a turn costs one array load per participant and
+ * allocates nothing. Participants that don't attack aim at themselves, and no Move beats itself, so the pass needs no
+ * branches.
+ * <p>
+ * An AI participant sees the free-for-all through its two-player model: it plays against the opponent with the most
+ * charge, the biggest threat, and learns from that opponent's moves. It aims its attacks at opponents with the charge
+ * at which its model expects them to be most vulnerable, see AI.aimAt().
+ *
+ * @author Dougy
+ */
+public class FreeForAll {
+  private final Rules rules;
+  private final int size; // the number of Move ids of the rules
+  private final byte[] outcomes; // the outcome matrix of the rules, see Rules.getOutcomeMatrix()
+  private final boolean[] aimed; // aimed[id] is whether the Move with that id beats a Move, so it needs a target
+  private final int[] costs; // costs[id] is the cost of the Move with that id
+  private final int cap; // the charge cap of the rules; the AIs see higher charges as the cap
+
+  // The participants, by index.
+  private final AI[] ais; // the AI of each participant, or null for a user
+  private final int[] moves; // the id of the Move chosen for the turn, Move.NONE_ID while out of the round
+  private final int[] targets; // the participant the Move is aimed at, the participant itself for other Moves
+  private final boolean[] chosen; // whether the user chose a Move for the turn
+  private final int[] charges;
+  private final boolean[] in; // whether the participant is still in the round
+  private final int[] lastMoves; // the id of the Move used in the last turn
+  private final int[] lastTargets; // the participant the last Move was aimed at
+  private final boolean[] hit; // whether an attack hit the participant in the last turn
+  private final int[] wins; // the number of rounds the participant won
+  private final int[] threats; // the opponent an AI modelled this turn, or -1
+
+  // The participants in the round sorted by charge, for the AIs: those with charge c (capped) are at byCharge[i] for
+  // chargeStart[c] <= i < chargeStart[c + 1].
+  private final int[] byCharge;
+  private final int[] chargeStart;
+  private final int[] opponents; // scratch: the number of an AI's opponents with each charge
+
+  private final SplittableRandom random;
+  private int remaining; // the number of participants in the round
+  private int round = 1;
+  private int turn = 1;
+  private int lastWinner = -1;
+
+  /**
+   * Creates a match. The AIs pick their moves themselves and the users' moves are given by choose() each turn.
+   *
+   * @param rules  The Rules of the match.
+   * @param ais    The AI of each participant, or null for a participant that is a user; at least two participants.
+   * @param random The source of the AIs' choice of targets among equally good opponents.
+   * @throws IllegalArgumentException If there are fewer than two participants.
+   */
+  public FreeForAll(Rules rules, AI[] ais, SplittableRandom random) {
+    if (ais.length < 2) throw new IllegalArgumentException("A free-for-all needs at least two participants");
+    this.rules = rules;
+    size = rules.size();
+    outcomes = rules.getOutcomeMatrix();
+    aimed = new boolean[size];
+    costs = new int[size];
+    for (int id = 0; id < size; id++) {
+      Move move = rules.getMove(id);
+      if (move == null) continue;
+      costs[id] = move.getCost();
+      for (int other = 0; other < size; other++) {
+        aimed[id] |= outcomes[id * size + other] == Rules.WIN;
+      }
+    }
+    cap = rules.getChargeCap();
+    this.ais = ais.clone();
+    int n = ais.length;
+    moves = new int[n];
+    targets = new int[n];
+    chosen = new boolean[n];
+    charges = new int[n];
+    in = new boolean[n];
+    lastMoves = new int[n];
+    lastTargets = new int[n];
+    hit = new boolean[n];
+    wins = new int[n];
+    threats = new int[n];
+    byCharge = new int[n];
+    chargeStart = new int[cap + 2];
+    opponents = new int[cap + 1];
+    this.random = random;
+    startRound();
+  }
+
+  /**
+   * Resolves a turn: marks every participant that an attack hits. This is the whole resolution, kept apart so that it
+   * can be measured on its own.
+   *
+   * @param outcomes The outcome matrix of the Rules.
+   * @param size     The number of Move ids of the Rules.
+   * @param moves    The id of each participant's Move.
+   * @param targets  The participant each participant aims at, itself if it doesn't attack.
+   * @param hit      Set to whether each participant is hit; the other entries are cleared.
+   * @param n        The number of participants.
+   */
+  static void resolve(byte[] outcomes, int size, int[] moves, int[] targets, boolean[] hit, int n) {
+    Arrays.fill(hit, 0, n, false);
+    for (int i = 0; i < n; i++) {
+      int target = targets[i];
+      hit[target] |= outcomes[moves[i] * size + moves[target]] == Rules.WIN;
+    }
+  }
+
+  /**
+   * Chooses the Move of a user for the coming turn.
+   *
+   * @param participant The user.
+   * @param move        The Move, which the user must have enough charge for.
+   * @param target      The participant the Move is aimed at, which is ignored unless the Move beats another Move.
+   * @throws IllegalArgumentException If the participant is an AI or out of the round, the Move is not part of the
+   *                                  Rules or too expensive, or the target is not another participant in the round.
+   */
+  public void choose(int participant, Move move, int target) {
+    if (ais[participant] != null) throw new IllegalArgumentException("Participant " + participant + " is an AI");
+    if (!in[participant]) throw new IllegalArgumentException("Participant " + participant + " is out of the round");
+    int id = move.getId();
+    if (id >= size || rules.getMove(id) != move || id == Move.NONE_ID) {
+      throw new IllegalArgumentException("Move is not part of the rules: " + move.getName());
+    }
+    if (move.getCost() > charges[participant]) {
+      throw new IllegalArgumentException("Not enough charge for " + move.getName());
+    }
+    if (aimed[id] && (target < 0 || target >= in.length || target == participant || !in[target])) {
+      throw new IllegalArgumentException("Cannot aim at participant " + target);
+    }
+    moves[participant] = id;
+    targets[participant] = aimed[id] ? target : participant;
+    chosen[participant] = true;
+  }
+
+  /**
+   * Plays one turn: the AIs pick their Moves, the turn is resolved and everyone hit is out. If the round ends, the
+   * next one starts.
+   *
+   * @return Whether the turn ended the round.
+   * @throws IllegalStateException If a user in the round has not chosen a Move.
+   */
+  public boolean step() {
+    int n = ais.length;
+    for (int i = 0; i < n; i++) {
+      if (in[i] && ais[i] == null && !chosen[i]) throw new IllegalStateException("Participant " + i + " has no move");
+    }
+    sortByCharge();
+    for (int i = 0; i < n; i++) {
+      threats[i] = -1;
+      if (in[i] && ais[i] != null) decide(i);
+    }
+
+    resolve(outcomes, size, moves, targets, hit, n);
+    System.arraycopy(moves, 0, lastMoves, 0, n);
+    System.arraycopy(targets, 0, lastTargets, 0, n);
+
+    for (int i = 0; i < n; i++) {
+      int threat = threats[i];
+      if (threat >= 0) {
+        int action = MatchEngine.actionIndex(rules.getMove(moves[threat]));
+        if (action >= 0) ais[i].updateUsersMove(charges[threat], charges[i], action);
+      }
+    }
+    for (int i = 0; i < n; i++) {
+      charges[i] -= costs[moves[i]];
+      if (hit[i]) {
+        in[i] = false;
+        remaining--;
+        moves[i] = Move.NONE_ID;
+        targets[i] = i;
+      }
+      chosen[i] = false;
+    }
+
+    if (remaining > 1) {
+      turn++;
+      return false;
+    }
+    lastWinner = -1;
+    for (int i = 0; i < n; i++) {
+      if (in[i]) lastWinner = i;
+    }
+    if (lastWinner >= 0) wins[lastWinner]++;
+    round++;
+    startRound();
+    return true;
+  }
+
+  /**
+   * Puts every participant back in, without charge.
+   */
+  private void startRound() {
+    Arrays.fill(in, true);
+    Arrays.fill(charges, 0);
+    Arrays.fill(moves, Move.NONE_ID);
+    for (int i = 0; i < targets.length; i++) {
+      targets[i] = i;
+    }
+    remaining = in.length;
+    turn = 1;
+  }
+
+  /**
+   * Sorts the participants in the round by their charge, capped, with a counting sort.
+   */
+  private void sortByCharge() {
+    Arrays.fill(chargeStart, 0);
+    for (int i = 0; i < in.length; i++) {
+      if (in[i]) chargeStart[bucket(charges[i]) + 1]++;
+    }
+    for (int c = 0; c <= cap; c++) {
+      chargeStart[c + 1] += chargeStart[c];
+    }
+    int[] next = opponents; // borrowed as the next free position of each charge
+    System.arraycopy(chargeStart, 0, next, 0, cap + 1);
+    for (int i = 0; i < in.length; i++) {
+      if (in[i]) byCharge[next[bucket(charges[i])]++] = i;
+    }
+  }
+
+  /**
+   * Returns the charge an AI sees a participant with: charges above the cap are all worth the finishing move, and an
+   * AI may overspend with a Move it cannot afford, like in a two-player match.
+   *
+   * @param charge The participant's charge.
+   * @return The charge clamped to 0 to the cap.
+   */
+  private int bucket(int charge) {
+    return Math.max(0, Math.min(charge, cap));
+  }
+
+  /**
+   * Picks the Move and target of an AI participant, and which opponent it learns from.
+   *
+   * @param i The participant.
+   */
+  private void decide(int i) {
+    int own = bucket(charges[i]);
+    int threat = 0;
+    for (int c = 0; c <= cap; c++) {
+      opponents[c] = chargeStart[c + 1] - chargeStart[c] - (c == own ? 1 : 0);
+      if (opponents[c] > 0) threat = c;
+    }
+    Move move = ais[i].makeMove(threat, charges[i]);
+    moves[i] = move.getId();
+    targets[i] = aimed[moves[i]] ? pick(ais[i].aimAt(charges[i], opponents), i) : i;
+    threats[i] = pick(threat, i);
+  }
+
+  /**
+   * Returns a random participant in the round with a given charge, other than one.
+   *
+   * @param charge The charge, capped, which at least one participant other than the excluded one has.
+   * @param except The participant to exclude.
+   * @return The participant.
+   */
+  private int pick(int charge, int except) {
+    int from = chargeStart[charge];
+    int count = chargeStart[charge + 1] - from;
+    boolean excluded = bucket(charges[except]) == charge;
+    int picked = byCharge[from + random.nextInt(excluded ? count - 1 : count)];
+    // the excluded participant takes a position, so skip over it to the last one
+    return picked == except ? byCharge[from + count - 1] : picked;
+  }
+
+  /**
+   * Returns the number of participants.
+   *
+   * @return The number of participants.
+   */
+  public int getParticipants() {
+    return ais.length;
+  }
+
+  /**
+   * Returns whether a Move is aimed at a target, because it beats another Move.
+   *
+   * @param move A Move of the Rules.
+   * @return Whether choose() needs a target for the Move.
+   */
+  public boolean isAimed(Move move) {
+    return aimed[move.getId()];
+  }
+
+  /**
+   * Returns whether a participant is a user, who chooses Moves with choose().
+   *
+   * @param participant The participant.
+   * @return Whether the participant is not an AI.
+   */
+  public boolean isUser(int participant) {
+    return ais[participant] == null;
+  }
+
+  /**
+   * Returns whether a participant is still in the current round.
+   *
+   * @param participant The participant.
+   * @return Whether no attack hit the participant this round.
+   */
+  public boolean isIn(int participant) {
+    return in[participant];
+  }
+
+  /**
+   * Returns the number of participants still in the current round.
+   *
+   * @return The number of participants in the round.
+   */
+  public int getRemaining() {
+    return remaining;
+  }
+
+  /**
+   * Returns the charge of a participant.
+   *
+   * @param participant The participant.
+   * @return The participant's charge.
+   */
+  public int getCharge(int participant) {
+    return charges[participant];
+  }
+
+  /**
+   * Returns the Move a participant used in the last turn.
+   *
+   * @param participant The participant.
+   * @return The Move, or Rules.NONE if the participant was out of the round or no turn was played yet.
+   */
+  public Move getLastMove(int participant) {
+    return rules.getMove(lastMoves[participant]);
+  }
+
+  /**
+   * Returns the participant that the last Move of a participant was aimed at.
+   *
+   * @param participant The participant.
+   * @return The target, or -1 if the Move was not aimed at anyone.
+   */
+  public int getLastTarget(int participant) {
+    return lastTargets[participant] == participant ? -1 : lastTargets[participant];
+  }
+
+  /**
+   * Returns whether an attack hit a participant in the last turn, which put it out of the round.
+   *
+   * @param participant The participant.
+   * @return Whether the participant was hit.
+   */
+  public boolean wasHit(int participant) {
+    return hit[participant];
+  }
+
+  /**
+   * Returns the number of rounds a participant won.
+   *
+   * @param participant The participant.
+   * @return The participant's wins.
+   */
+  public int getWins(int participant) {
+    return wins[participant];
+  }
+
+  /**
+   * Returns the winner of the last round that ended.
+   *
+   * @return The participant, or -1 if no round ended yet or the last participants were all hit at once.
+   */
+  public int getLastWinner() {
+    return lastWinner;
+  }
+
+  /**
+   * Returns the current round, starting from 1.
+   *
+   * @return The current round.
+   */
+  public int getRound() {
+    return round;
+  }
+
+  /**
+   * Returns the turn about to be played in the current round, starting from 1.
+   *
+   * @return The upcoming turn.
+   */
+  public int getTurn() {
+    return turn;
+  }
+}
\ No newline at end of file
@@ -1,8 +1,9 @@
-import java.util.ArrayList;
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 
 /**
  * Fireball is a game that involves 2 Players, who each have access to moves such as
@@ -18,23 +19,27 @@ import java.awt.event.ActionListener;
  * <p>
  * The user plays against an AI Player until they lose a round. The user's score is the number of rounds they won.
  * <p>
- * The helper classes PlayerPanel and MoveButton help create components displaying game information in the Fireball GUI.
+ * The match is shown by a GameScreen, whose PlayerPanels and MoveButtons display the game information.
  *
  * @author David, Dougy
  */
 public class Game extends JFrame {
   /**
-   * The Player that the user plays as.
+   * The headless match that this window displays.
    */
-  private Player player;
+  private MatchEngine engine;
   /**
-   * The personalized AI for each game.
+   * Solves the AI's model while the user decides, so the AI answers clicks at once.
    */
-  private AI ai;
+  private AISpeculator speculator;
   /**
-   * The number of rounds played.
+   * The screen of the match, which only redraws what changed.
    */
-  private int round;
+  private GameScreen screen;
+  /**
+   * Switches between the setup, the match and the end screen.
+   */
+  private final CardLayout cards = new CardLayout();
 
   /**
    * Creates a new Game instance and sets up the setup GUI.
@@ -43,6 +48,7 @@ public class Game extends JFrame {
     super("Fireball Game");
     setSize(400, 300);
     setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+    setLayout(cards);
     JPanel gameSetup = new JPanel();
 
     // Set up prompt for player name
@@ -53,154 +59,95 @@ public class Game extends JFrame {
 
     // Create game and hide UI once name is submitted
     JButton submit = new JButton("Submit");
-    submit.addActionListener(new ActionListener() {
+    submit.addActionListener(EdtStallEvent.watch("Game.submit", new ActionListener() {
       @Override
       public void actionPerformed(ActionEvent e) {
-        round = 1;
-        player = new Player(nameField.getText());
-        ai = new AI();
+        String name = nameField.getText();
+        AI ai = Main.models.checkOut(name);
+        ai.setEquilibriumWeight(Main.equilibriumWeight);
+        ai.setHabitOrder(Main.habitOrder);
+        engine = new MatchEngine(new Player(name), ai);
+        speculator = new AISpeculator(ai);
+        if (Main.replays != null) engine.record(Main.replays, Main.replays.newSession());
         play();
-        gameSetup.setVisible(false);
       }
-    });
+    }));
 
     // Format and display window
     gameSetup.add(playerNameInput);
     gameSetup.add(submit);
-    add(gameSetup, BorderLayout.SOUTH);
+    add(card(gameSetup), "setup");
+
+    // Keep what the AI learned if the window is closed in the middle of a match
+    addWindowListener(new WindowAdapter() {
+      @Override
+      public void windowClosed(WindowEvent e) {
+        if (engine == null || engine.isOver()) return;
+        speculator.cancel();
+        Main.models.checkIn(engine.getPlayer().getName(), engine.getAI());
+      }
+    });
+  }
+
+  /**
+   * Returns a card holding a panel at the bottom of the window.
+   *
+   * @param panel The panel.
+   * @return The card.
+   */
+  private static JPanel card(JPanel panel) {
+    JPanel card = new JPanel(new BorderLayout());
+    card.add(panel, BorderLayout.SOUTH);
+    return card;
   }
 
   /**
    * Creates and facilitates a Fireball game along with its GUI.
    */
   public void play() {
+    Player player = engine.getPlayer();
 
-    // Set up moves
-    Move fireball = new Fireball();
-    Move shield = new Shield();
-    Move charge = new Charge();
-    Move superFireball = new SuperFireball();
-
-    // Set up bottom move panel with the above moves
-    MoveButton fireballButton = new MoveButton(fireball);
-    MoveButton superFireballButton = new MoveButton(superFireball);
-    MoveButton shieldButton = new MoveButton(shield);
-    MoveButton chargeButton = new MoveButton(charge);
-
-    MoveButton[] moveButtons = {fireballButton, superFireballButton, shieldButton, chargeButton};
-
-    JPanel bottomPanel = new JPanel();
-    bottomPanel.setLayout(new GridLayout(2, 1, 0, 0));
-    JPanel movePanel = new JPanel();
-    movePanel.setLayout(new GridLayout(2, 2, 0, 0));
-
-    bottomPanel.add(new JLabel(player.getName() + ", select a move below:"));
-    bottomPanel.add(movePanel);
-    PlayerPanel userStatus = new PlayerPanel(player);
-    PlayerPanel aiStatus = new PlayerPanel(ai);
+    // Main game loop, executes every time a button is pressed. The turn is played once the AI's model is solved, at
+    // once unless the user was faster than the solver.
+    ActionListener moveListener = EdtStallEvent.watch("Game.move", new ActionListener() {
+      private boolean pending; // a turn is waiting for the AI, further clicks are ignored
 
-    final int[] turnCount = {1}; // (has to be an Array to be accessed within the ActionPerformed)
-
-    // Create the panel that shows round number
-    JPanel scorePanel = new JPanel();
-    JLabel scoreLabel = new JLabel("Round " + (round));
-    scorePanel.add(scoreLabel);
-
-    // Create the panel that shows turn number
-    JPanel turnPanel = new JPanel();
-    JLabel turnLabel = new JLabel("Turn 1");
-    turnPanel.add(turnLabel);
-
-    // Format the GUI
-    setLayout(new BorderLayout());
-    add(userStatus, BorderLayout.WEST);
-    add(aiStatus, BorderLayout.EAST);
-    add(turnPanel, BorderLayout.CENTER);
-    add(scorePanel, BorderLayout.NORTH);
-    add(bottomPanel, BorderLayout.SOUTH);
-
-    // Panels to toggle off when the user loses
-    JPanel[] gamePanels = {scorePanel, turnPanel, aiStatus, userStatus, bottomPanel};
-
-    // Main game loop, executes every time a button is pressed
-    ActionListener moveListener = new ActionListener() {
       public void actionPerformed(ActionEvent move) {
-        if (scorePanel.getBackground() == Color.GREEN) {
-          scorePanel.setBackground(Color.WHITE);
-          scoreLabel.setText("Round: " + round);
-        }
-        Move playerMove;
-        int pCharge = player.getCharge();
-        int aiCharge = ai.getCharge();
-
-        // The AI is not cheating >_<
-        Move aiMove = ai.makeMove(pCharge, aiCharge);
-
-        String moveName = move.getActionCommand();
-        if (moveName.equals(fireball.getName())) {
-          playerMove = fireball;
-          ai.updateUsersMove(pCharge, aiCharge, 0); // update AI
-        } else if (moveName.equals(shield.getName())) {
-          playerMove = shield;
-          ai.updateUsersMove(pCharge, aiCharge, 1); // update AI
-        } else if (moveName.equals(charge.getName())) {
-          playerMove = charge;
-          ai.updateUsersMove(pCharge, aiCharge, 2); // update AI
-        } else {
-          playerMove = superFireball;
-        }
-
-        // Apply move cost and add Move to both player's move histories
-        player.useMove(playerMove);
-        ai.useMove(aiMove);
-
-        // update AI
-        ai.computeProbability();
-
-        // If the player wins, start a new round.
-        if (playerMove.win(aiMove)) {
-          scoreLabel.setText("Nice! You won Round " + round);
-          scorePanel.setBackground(Color.GREEN);
-          round++;
-          player.setCharge(0);
-          ai.setCharge(0);
-          turnCount[0] = 1;
-        }
+        if (pending || engine.isOver()) return;
+        long start = Metrics.ENABLED ? System.nanoTime() : 0;
+        Move playerMove = ((MoveButton) move.getSource()).getMove();
+        pending = true;
+        if (!speculator.isReady()) screen.setWaiting(true);
+        speculator.whenReady(() -> turn(playerMove, start), SwingUtilities::invokeLater);
+      }
 
-        // If the player loses, hide all gameplay panels and run the end() procedure
-        else if (playerMove.lose(aiMove)) {
-          for (JPanel panel : gamePanels) {
-            remove(panel);
-          }
-          remove(movePanel);
+      /**
+       * Plays a turn and shows its result.
+       *
+       * @param playerMove The Move the user chose.
+       * @param start      The System.nanoTime() of the click.
+       */
+      private void turn(Move playerMove, long start) {
+        pending = false;
+        MatchEngine.Outcome outcome = engine.step(playerMove);
+        speculator.advance(MatchEngine.actionIndex(playerMove));
+
+        // If the player loses, show the end screen instead of the game
+        if (outcome == MatchEngine.Outcome.MATCH_LOST) {
           end();
+        } else {
+          screen.setWaiting(false);
+          screen.show(engine.getTurn(), engine.getRound(), outcome == MatchEngine.Outcome.ROUND_WON);
+          speculator.speculate(player.getCharge(), engine.getAI().getCharge());
         }
-
-        // Refresh the panel for the next iteration of the game.
-        userStatus.refresh();
-        aiStatus.refresh();
-        turnLabel.setText("Turn: " + turnCount[0]);
-        turnCount[0]++;
-        for (MoveButton mb : moveButtons) {
-          mb.setEnabled(mb.getMove().getCost() <= player.getCharge());
-        }
-
-        // Repaint GUI
-        revalidate();
-        repaint();
+        if (Metrics.ENABLED) Metrics.TURN.record(System.nanoTime() - start);
       }
-    };
-
-    // Configure all move buttons properly
-    for (MoveButton mb : moveButtons) {
-      mb.addActionListener(moveListener);
-      mb.setEnabled(mb.getMove().getCost() <= player.getCharge());
-      movePanel.add(mb);
-    }
+    });
 
-    // Repaint GUI
-    revalidate();
-    repaint();
+    screen = new GameScreen(player, engine.getAI(), engine.getRound(), moveListener);
+    add(screen, "game");
+    cards.show(getContentPane(), "game");
+    speculator.speculate(player.getCharge(), engine.getAI().getCharge());
   }
 
   /**
@@ -208,90 +155,31 @@ public class Game extends JFrame {
    */
   public void end() {
     JLabel endLabel = new JLabel();
-    if (round > 1)
-      endLabel.setText("Good game! You lost after " + (round - 1) + " round(s).");
+    int score = engine.getScore();
+    if (score > 0)
+      endLabel.setText("Good game! You lost after " + score + " round(s).");
     else
       endLabel.setText("Darn, you didn't win a round this time.");
     JButton endButton = new JButton("GG.");
 
     // Set the endButton to close the window
-    endButton.addActionListener(new ActionListener() {
+    endButton.addActionListener(EdtStallEvent.watch("Game.end", new ActionListener() {
       @Override
       public void actionPerformed(ActionEvent e) {
         dispose();
       }
-    });
+    }));
     JPanel endPanel = new JPanel();
 
     // Format and display the end panel 
     endPanel.add(endLabel, BorderLayout.CENTER);
     endPanel.add(endButton, BorderLayout.SOUTH);
-    add(endPanel, BorderLayout.SOUTH);
-    endPanel.setVisible(true);
-
-    // Update the window
-    revalidate();
-    repaint();
+    add(card(endPanel), "end");
+    cards.show(getContentPane(), "end");
 
-    // Add the result to the leaderboard
-    Main.leaderboard.addResult(new GameResult(player, round - 1));
-  }
-}
-
-/**
- * A JButton with a simple setup to be linked to a specified Move.
- */
-class MoveButton extends JButton {
-  private final Move MOVE;
-
-  public MoveButton(Move move) {
-    super(move.getName() + ' ' + move.getIcon() + " (" + move.getCost() * -1 + ")");
-    MOVE = move;
-    setActionCommand(MOVE.getName());
-  }
-
-  /**
-   * Returns the move that this MoveButton is representing.
-   *
-   * @return The move that this MoveButton is representing.
-   */
-  public Move getMove() {
-    return MOVE;
-  }
-}
-
-/**
- * A JPanel with a simple setup to hold Player information.
- */
-class PlayerPanel extends JPanel {
-  private final Player PLAYER;
-  private final JLabel P_CHARGES = new JLabel();
-  private final JLabel P_LAST_MOVE = new JLabel();
-
-  /**
-   * Sets up the player panel.
-   *
-   * @param player The Player whose information will be displayed.
-   */
-  public PlayerPanel(Player player) {
-    setLayout(new GridLayout(5, 1, 0, 5));
-    this.PLAYER = player;
-
-    JLabel namePanel = new JLabel();
-    namePanel.setText(PLAYER.getName());
-    refresh();
-    for (JLabel panel : new JLabel[]{namePanel, P_CHARGES, P_LAST_MOVE}) {
-      panel.setHorizontalAlignment(SwingConstants.CENTER);
-      add(panel);
-    }
-  }
-
-  /**
-   * Updates the PlayerPanel with the latest player information.
-   */
-  public void refresh() {
-    P_CHARGES.setText("⚡ Charges: " + PLAYER.getCharge());
-    ArrayList<Move> moveHist = PLAYER.getMoveHistory();
-    P_LAST_MOVE.setText("Last Move: " + moveHist.get(moveHist.size() - 1).getIcon());
+    // Add the result to the leaderboard and keep what the AI learned for the player's next game
+    speculator.cancel();
+    Main.leaderboard.addResult(new GameResult(engine.getPlayer(), score));
+    Main.models.checkIn(engine.getPlayer().getName(), engine.getAI());
   }
 }
\ No newline at end of file
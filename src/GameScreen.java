@@ -0,0 +1,188 @@
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.ActionListener;
+
+/**
+ * The screen of a match in progress: both Players' status, the round and turn, and the move buttons.
+ * <p>
+ * The screen keeps the values it shows and only touches the components whose values changed. Changes are not drawn
+ * right away: show() marks what changed and the screen renders once per batch of events on the event dispatch thread,
+ * so a turn that changes several values costs one small repaint instead of a relayout of the whole window. The time
+ * from a render until it is painted is recorded as the frame time in the Metrics.
+ *
+ * @author Dougy
+ */
+class GameScreen extends JPanel {
+  // What changed since the last render.
+  private static final int PLAYER = 1;
+  private static final int AI_PLAYER = 1 << 1;
+  private static final int TURN = 1 << 2;
+  private static final int ROUND = 1 << 3;
+  private static final int MOVES = 1 << 4;
+
+  private final Player player;
+  private final Player ai;
+  private final PlayerPanel userStatus;
+  private final PlayerPanel aiStatus;
+  private final JPanel scorePanel = new JPanel();
+  private final JLabel scoreLabel;
+  private final JLabel turnLabel = new JLabel("Turn 1");
+  private final MoveButton[] moveButtons = {new MoveButton(Rules.FIREBALL), new MoveButton(Rules.SUPER_FIREBALL),
+    new MoveButton(Rules.SHIELD), new MoveButton(Rules.CHARGE)};
+
+  // The values on screen.
+  private int playerCharge;
+  private Move playerMove;
+  private int aiCharge;
+  private Move aiMove;
+  private int turn = 1;
+  private int round;
+  private boolean roundWon;
+  private int enabledMoves; // bit i is set if moveButtons[i] is enabled
+  private boolean waiting;
+
+  private int dirty;
+  private boolean renderQueued;
+
+  /**
+   * Creates the screen of a match.
+   *
+   * @param player The Player that the user plays as.
+   * @param ai     The AI.
+   * @param round  The round the match is in.
+   * @param moves  The listener of the move buttons.
+   */
+  GameScreen(Player player, Player ai, int round, ActionListener moves) {
+    super(new BorderLayout());
+    this.player = player;
+    this.ai = ai;
+    this.round = round;
+    playerCharge = player.getCharge();
+    playerMove = player.getLastMove();
+    aiCharge = ai.getCharge();
+    aiMove = ai.getLastMove();
+
+    // Set up bottom move panel with the moves
+    JPanel bottomPanel = new JPanel();
+    bottomPanel.setLayout(new GridLayout(2, 1, 0, 0));
+    JPanel movePanel = new JPanel();
+    movePanel.setLayout(new GridLayout(2, 2, 0, 0));
+    bottomPanel.add(new JLabel(player.getName() + ", select a move below:"));
+    bottomPanel.add(movePanel);
+    enabledMoves = affordableMoves();
+    for (int i = 0; i < moveButtons.length; i++) {
+      moveButtons[i].addActionListener(moves);
+      moveButtons[i].setEnabled((enabledMoves & 1 << i) != 0);
+      movePanel.add(moveButtons[i]);
+    }
+
+    userStatus = new PlayerPanel(player);
+    aiStatus = new PlayerPanel(ai);
+
+    // Create the panel that shows round number
+    scoreLabel = new JLabel("Round " + round);
+    scorePanel.add(scoreLabel);
+
+    // Create the panel that shows turn number
+    JPanel turnPanel = new JPanel();
+    turnPanel.add(turnLabel);
+
+    add(userStatus, BorderLayout.WEST);
+    add(aiStatus, BorderLayout.EAST);
+    add(turnPanel, BorderLayout.CENTER);
+    add(scorePanel, BorderLayout.NORTH);
+    add(bottomPanel, BorderLayout.SOUTH);
+  }
+
+  /**
+   * Shows the state of the match after a turn. Only what changed is rendered, after the current event.
+   *
+   * @param turn     The turn the match is in.
+   * @param round    The round the match is in.
+   * @param roundWon Whether the user just won a round.
+   */
+  void show(int turn, int round, boolean roundWon) {
+    if (player.getCharge() != playerCharge || player.getLastMove() != playerMove) {
+      playerCharge = player.getCharge();
+      playerMove = player.getLastMove();
+      dirty |= PLAYER;
+    }
+    if (ai.getCharge() != aiCharge || ai.getLastMove() != aiMove) {
+      aiCharge = ai.getCharge();
+      aiMove = ai.getLastMove();
+      dirty |= AI_PLAYER;
+    }
+    if (turn != this.turn) {
+      this.turn = turn;
+      dirty |= TURN;
+    }
+    if (round != this.round || roundWon != this.roundWon) {
+      this.round = round;
+      this.roundWon = roundWon;
+      dirty |= ROUND;
+    }
+    updateMoves();
+  }
+
+  /**
+   * Disables the move buttons while a turn waits for the AI, and enables the affordable ones again afterwards.
+   *
+   * @param waiting Whether a turn is waiting.
+   */
+  void setWaiting(boolean waiting) {
+    this.waiting = waiting;
+    updateMoves();
+  }
+
+  /**
+   * Marks the move buttons to update if the moves that may be clicked changed.
+   */
+  private void updateMoves() {
+    int enabled = waiting ? 0 : affordableMoves();
+    if (enabled != enabledMoves) {
+      enabledMoves = enabled;
+      dirty |= MOVES;
+    }
+    if (dirty != 0 && !renderQueued) {
+      renderQueued = true;
+      SwingUtilities.invokeLater(this::render);
+    }
+  }
+
+  /**
+   * Returns the moves the user has enough charge for.
+   *
+   * @return Bit i is set if the Move of moveButtons[i] is affordable.
+   */
+  private int affordableMoves() {
+    int affordable = 0;
+    for (int i = 0; i < moveButtons.length; i++) {
+      if (moveButtons[i].getMove().getCost() <= player.getCharge()) affordable |= 1 << i;
+    }
+    return affordable;
+  }
+
+  /**
+   * Updates the components whose values changed since the last render. Swing then repaints just those components.
+   */
+  private void render() {
+    long start = Metrics.ENABLED ? System.nanoTime() : 0;
+    renderQueued = false;
+    if ((dirty & PLAYER) != 0) userStatus.show(playerCharge, playerMove);
+    if ((dirty & AI_PLAYER) != 0) aiStatus.show(aiCharge, aiMove);
+    if ((dirty & TURN) != 0) turnLabel.setText("Turn: " + turn);
+    if ((dirty & ROUND) != 0) {
+      scoreLabel.setText(roundWon ? "Nice! You won Round " + (round - 1) : "Round: " + round);
+      scorePanel.setBackground(roundWon ? Color.GREEN : Color.WHITE);
+    }
+    if ((dirty & MOVES) != 0) {
+      for (int i = 0; i < moveButtons.length; i++) {
+        boolean enabled = (enabledMoves & 1 << i) != 0;
+        if (moveButtons[i].isEnabled() != enabled) moveButtons[i].setEnabled(enabled);
+      }
+    }
+    dirty = 0;
+    // the repaints requested above are queued before this, so it runs once they are painted
+    if (Metrics.ENABLED) SwingUtilities.invokeLater(() -> Metrics.FRAME.record(System.nanoTime() - start));
+  }
+}
\ No newline at end of file
@@ -0,0 +1,421 @@
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Hosts many Fireball matches at once over TCP, without any GUI. Every connection is a session with its own
+ * MatchEngine, the score of every lost match is added to a shared Leaderboard, and each player's AI is kept in an
+ * AIModelStore between matches.
+ * <p>
+ * Each session runs on its own thread and speaks a line-based protocol. Requests:
+ * <ul>
+ *   <li>{@code PLAY <name>} starts a new match as the named Player. Reply: {@code OK}.</li>
+ *   <li>{@code MOVE <F|S|C|X>} plays a turn with a fireball, shield, charge or super fireball. Reply:
+ *   {@code <AI move> <outcome> <round> <turn> <player charge> <AI charge>}, where the AI move is a letter as above and
+ *   the outcome is CONTINUE, ROUND_WON or MATCH_LOST.</li>
+ *   <li>{@code QUIT} ends the session. Reply: {@code BYE}.</li>
+ * </ul>
+ * Anything else gets {@code ERR <reason>}. A session is closed when it sends a line longer than 256 bytes or stays
+ * silent for longer than the idle timeout, connections beyond the session limit get {@code ERR busy}, and Players
+ * only keep their latest moves, so the memory held by sessions stays bounded.
+ * <p>
+ * When a ReplayWriter is set, every turn is recorded into it, under one session id per connection.
+ * <p>
+ * Sessions run on virtual threads when the JVM has them (Java 21 and later). Otherwise each session gets a platform
+ * thread with a small stack.
+ *
+ * @author Dougy
+ */
+public class GameServer {
+  /**
+   * The port the server listens on unless another one is given.
+   */
+  public static final int DEFAULT_PORT = 7777;
+  /**
+   * The number of sessions the server hosts at once unless another limit is given.
+   */
+  public static final int DEFAULT_MAX_SESSIONS = 10_000;
+  /**
+   * The number of milliseconds a session may stay silent before it is closed, unless another timeout is given.
+   */
+  public static final int DEFAULT_IDLE_TIMEOUT = 60_000;
+
+  private static final int MAX_LINE = 256;
+  private static final int HISTORY_WINDOW = 64;
+  private static final int ACCEPT_BACKLOG = 4096;
+  private static final long PLATFORM_STACK_SIZE = 256 * 1024;
+
+  private final ServerSocket serverSocket;
+  private final Leaderboard leaderboard;
+  private final AIModelStore models;
+  private final int idleTimeout;
+  private final Semaphore slots;
+  private final ExecutorService sessions = newSessionExecutor();
+  private final Set<Socket> open = ConcurrentHashMap.newKeySet();
+  private volatile double equilibriumWeight;
+  private volatile int habitOrder;
+  private volatile ReplayWriter replays;
+  private volatile boolean closed;
+
+  /**
+   * Creates a server listening on the loopback interface, whose AIs remember each player until the server stops.
+   *
+   * @param port        The port to listen on, or 0 for any free port.
+   * @param leaderboard The Leaderboard that match results are added to.
+   * @param maxSessions The maximum number of sessions hosted at once.
+   * @param idleTimeout The number of milliseconds a session may stay silent before it is closed.
+   * @throws IOException If the port cannot be opened.
+   */
+  public GameServer(int port, Leaderboard leaderboard, int maxSessions, int idleTimeout) throws IOException {
+    this(port, leaderboard, new AIModelStore(), maxSessions, idleTimeout);
+  }
+
+  /**
+   * Creates a server listening on the loopback interface, whose AIs remember each player.
+   *
+   * @param port        The port to listen on, or 0 for any free port.
+   * @param leaderboard The Leaderboard that match results are added to.
+   * @param models      The store that every match checks its player's AI out of and back into.
+   * @param maxSessions The maximum number of sessions hosted at once.
+   * @param idleTimeout The number of milliseconds a session may stay silent before it is closed.
+   * @throws IOException If the port cannot be opened.
+   */
+  public GameServer(int port, Leaderboard leaderboard, AIModelStore models, int maxSessions, int idleTimeout)
+    throws IOException {
+    if (maxSessions <= 0) throw new IllegalArgumentException("maxSessions must be positive: " + maxSessions);
+    serverSocket = new ServerSocket(port, ACCEPT_BACKLOG, InetAddress.getLoopbackAddress());
+    this.leaderboard = leaderboard;
+    this.models = models;
+    this.idleTimeout = idleTimeout;
+    slots = new Semaphore(maxSessions);
+  }
+
+  /**
+   * Returns an executor that runs every task on a new virtual thread, or on a platform thread with a small stack if
+   * the JVM has no virtual threads.
+   *
+   * @return The executor for sessions.
+   */
+  private static ExecutorService newSessionExecutor() {
+    try {
+      return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+    } catch (ReflectiveOperationException e) {
+      return Executors.newCachedThreadPool(task -> {
+        Thread thread = new Thread(null, task, "Game session", PLATFORM_STACK_SIZE);
+        thread.setDaemon(true);
+        return thread;
+      });
+    }
+  }
+
+  /**
+   * Sets how much the AIs of new matches play the precomputed equilibrium instead of adapting to their player.
+   *
+   * @param weight The share of moves picked from the equilibrium, see AI.setEquilibriumWeight().
+   * @throws IllegalArgumentException If the weight is not between 0 and 1.
+   */
+  public void setEquilibriumWeight(double weight) {
+    if (!(weight >= 0 && weight <= 1)) throw new IllegalArgumentException("Weight must be between 0 and 1: " + weight);
+    if (weight > 0) EquilibriumTable.standard();
+    equilibriumWeight = weight;
+  }
+
+  /**
+   * Sets how many of their player's last moves the AIs of new matches learn habits from.
+   *
+   * @param order The order, see AI.setHabitOrder(), or 0 to only learn from the state.
+   * @throws IllegalArgumentException If the order is out of range.
+   */
+  public void setHabitOrder(int order) {
+    if (order < 0 || order > HabitModel.MAX_ORDER) throw new IllegalArgumentException("Order out of range: " + order);
+    habitOrder = order;
+  }
+
+  /**
+   * Sets the replay that the matches started from now on record their turns into.
+   *
+   * @param replays The replay, or null to stop recording.
+   */
+  public void setReplayWriter(ReplayWriter replays) {
+    this.replays = replays;
+  }
+
+  /**
+   * Returns the port the server listens on.
+   *
+   * @return The local port.
+   */
+  public int getPort() {
+    return serverSocket.getLocalPort();
+  }
+
+  /**
+   * Returns the number of sessions being hosted.
+   *
+   * @return The number of open sessions.
+   */
+  public int getSessionCount() {
+    return open.size();
+  }
+
+  /**
+   * Accepts connections until the server is closed.
+   *
+   * @throws IOException If accepting fails for another reason than the server being closed.
+   */
+  public void run() throws IOException {
+    while (!closed) {
+      Socket socket;
+      try {
+        socket = serverSocket.accept();
+      } catch (IOException e) {
+        if (closed) return;
+        throw e;
+      }
+      if (!slots.tryAcquire()) {
+        reject(socket);
+        continue;
+      }
+      open.add(socket);
+      sessions.execute(() -> {
+        try {
+          serve(socket);
+        } finally {
+          open.remove(socket);
+          slots.release();
+        }
+      });
+    }
+  }
+
+  /**
+   * Stops accepting connections and closes every session.
+   */
+  public void close() {
+    closed = true;
+    try {
+      serverSocket.close();
+    } catch (IOException e) {
+      // already closed
+    }
+    for (Socket socket : open) {
+      closeQuietly(socket);
+    }
+    sessions.shutdown();
+  }
+
+  /**
+   * Turns a connection away because the server is full.
+   *
+   * @param socket The connection.
+   */
+  private static void reject(Socket socket) {
+    try (socket) {
+      socket.getOutputStream().write("ERR busy\n".getBytes(StandardCharsets.US_ASCII));
+    } catch (IOException e) {
+      // the client is gone already
+    }
+  }
+
+  /**
+   * Closes a socket, ignoring errors.
+   *
+   * @param socket The socket.
+   */
+  private static void closeQuietly(Socket socket) {
+    try {
+      socket.close();
+    } catch (IOException e) {
+      // nothing left to do
+    }
+  }
+
+  /**
+   * Runs one session until the client quits, disconnects, misbehaves or stays idle too long.
+   *
+   * @param socket The session's connection.
+   */
+  private void serve(Socket socket) {
+    try (socket) {
+      socket.setTcpNoDelay(true);
+      socket.setSoTimeout(idleTimeout);
+      InputStream in = new BufferedInputStream(socket.getInputStream(), 512);
+      OutputStream out = socket.getOutputStream();
+      byte[] line = new byte[MAX_LINE];
+      StringBuilder reply = new StringBuilder(64);
+      MatchEngine engine = null;
+      ReplayWriter replay = replays;
+      long session = replay == null ? 0 : replay.newSession();
+
+      try {
+        while (!closed) {
+          int length = readLine(in, line);
+          if (length < 0) return;
+          reply.setLength(0);
+          boolean quit = false;
+          if (length > MAX_LINE) {
+            reply.append("ERR line too long");
+            quit = true;
+          } else if (startsWith(line, length, "PLAY ") && length > 5) {
+            String name = new String(line, 5, length - 5, StandardCharsets.UTF_8).trim();
+            abandon(engine);
+            AI ai = models.checkOut(name);
+            ai.setEquilibriumWeight(equilibriumWeight);
+            ai.setHabitOrder(habitOrder);
+            engine = new MatchEngine(new Player(name, Rules.STANDARD, HISTORY_WINDOW), ai);
+            if (replay != null) engine.record(replay, session);
+            reply.append("OK");
+          } else if (startsWith(line, length, "MOVE ") && length == 6) {
+            play(engine, line[5], reply);
+          } else if (startsWith(line, length, "QUIT") && length == 4) {
+            reply.append("BYE");
+            quit = true;
+          } else {
+            reply.append("ERR unknown request");
+          }
+          reply.append('\n');
+          out.write(reply.toString().getBytes(StandardCharsets.UTF_8));
+          if (quit) return;
+        }
+      } finally {
+        abandon(engine);
+      }
+    } catch (SocketTimeoutException e) {
+      // idle for too long, the session is reaped
+    } catch (SocketException e) {
+      // the client disconnected or the server is closing
+    } catch (IOException e) {
+      System.err.println("Game session failed: " + e.getMessage());
+    }
+  }
+
+  /**
+   * Plays a turn of a session's match and describes the result.
+   *
+   * @param engine The session's match, or null if none was started.
+   * @param letter The letter of the Move the Player chose.
+   * @param reply  The reply to append the result or an error to.
+   */
+  private void play(MatchEngine engine, byte letter, StringBuilder reply) {
+    Move move = moveOf(letter);
+    if (engine == null || engine.isOver()) {
+      reply.append("ERR no match, send PLAY first");
+    } else if (move == null) {
+      reply.append("ERR unknown move");
+    } else if (move.getCost() > engine.getPlayer().getCharge()) {
+      reply.append("ERR not enough charge");
+    } else {
+      long start = Metrics.ENABLED ? System.nanoTime() : 0;
+      MatchEngine.Outcome outcome = engine.step(move);
+      if (outcome == MatchEngine.Outcome.MATCH_LOST) {
+        leaderboard.addResult(new GameResult(engine.getPlayer(), engine.getScore()));
+        models.checkIn(engine.getPlayer().getName(), engine.getAI());
+      }
+      if (Metrics.ENABLED) Metrics.TURN.record(System.nanoTime() - start);
+      reply.append(letterOf(engine.getLastAiMove())).append(' ').append(outcome.name())
+        .append(' ').append(engine.getRound()).append(' ').append(engine.getTurn())
+        .append(' ').append(engine.getPlayer().getCharge()).append(' ').append(engine.getAI().getCharge());
+    }
+  }
+
+  /**
+   * Checks the AI of a match that was left unfinished back into the model store. Finished matches checked theirs in
+   * when they ended.
+   *
+   * @param engine The session's match, or null if none was started.
+   */
+  private void abandon(MatchEngine engine) {
+    if (engine != null && !engine.isOver()) models.checkIn(engine.getPlayer().getName(), engine.getAI());
+  }
+
+  /**
+   * Reads a line terminated by '\n', dropping a trailing '\r'.
+   *
+   * @param in   The stream to read from.
+   * @param line The buffer the line is read into.
+   * @return The length of the line, more than the buffer's length if the line does not fit, or -1 at the end of the
+   * stream.
+   * @throws IOException If reading fails.
+   */
+  private static int readLine(InputStream in, byte[] line) throws IOException {
+    int length = 0;
+    int b;
+    while ((b = in.read()) != '\n') {
+      if (b < 0) return -1;
+      if (length == line.length) return length + 1;
+      line[length++] = (byte) b;
+    }
+    if (length > 0 && line[length - 1] == '\r') length--;
+    return length;
+  }
+
+  /**
+   * Returns whether a line starts with an ASCII prefix.
+   *
+   * @param line   The line.
+   * @param length The length of the line.
+   * @param prefix The prefix.
+   * @return Whether the line starts with the prefix.
+   */
+  private static boolean startsWith(byte[] line, int length, String prefix) {
+    if (length < prefix.length()) return false;
+    for (int i = 0; i < prefix.length(); i++) {
+      if (line[i] != prefix.charAt(i)) return false;
+    }
+    return true;
+  }
+
+  /**
+   * Returns the Move a protocol letter stands for.
+   *
+   * @param letter The letter.
+   * @return The Move, or null if the letter stands for none.
+   */
+  static Move moveOf(int letter) {
+    switch (letter) {
+      case 'F':
+        return Rules.FIREBALL;
+      case 'S':
+        return Rules.SHIELD;
+      case 'C':
+        return Rules.CHARGE;
+      case 'X':
+        return Rules.SUPER_FIREBALL;
+      default:
+        return null;
+    }
+  }
+
+  /**
+   * Returns the protocol letter of a Move.
+   *
+   * @param move The Move.
+   * @return The letter.
+   */
+  static char letterOf(Move move) {
+    switch (move.getId()) {
+      case Move.FIREBALL_ID:
+        return 'F';
+      case Move.SHIELD_ID:
+        return 'S';
+      case Move.CHARGE_ID:
+        return 'C';
+      case Move.SUPER_FIREBALL_ID:
+        return 'X';
+      default:
+        return '-';
+    }
+  }
+}
\ No newline at end of file
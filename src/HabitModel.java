@@ -0,0 +1,138 @@
+/**
+ * Learns which action a user picks after their last few actions, such as "charges twice, then shields", in a fixed
+ * amount of memory however long they play.
+ * <p>
+ * A context is the state the user is in together with their last (order) actions. Each context has a count of every
+ * action chosen in it, but the counts are not stored per context: they are kept in a count-min sketch, a table of
+ * depth rows of width buckets with one counter per action. Every row hashes the context to one of its buckets with
+ * its own hash, and the count of an action is the smallest of its counters over the rows. Contexts that share a bucket
+ * in a row add to the same counters, so a count can only be too high, and it is exact unless the context collides with
+ * others in every row. Adding an action only increments the counters that hold its smallest count (the conservative
+ * update), which keeps collisions from inflating counts that are already higher.
+ * <p>
+ * Both observing and predicting an action touch depth buckets. When a counter reaches LIMIT, every counter is halved,
+ * so counts never overflow and old habits weigh less than new ones.
+ *
+ * @author Dougy
+ */
+class HabitModel {
+  /**
+   * The largest number of past actions a context can hold.
+   */
+  static final int MAX_ORDER = 8;
+
+  // The count at which every counter is halved.
+  private static final int LIMIT = 1 << 16;
+
+  private final int order;
+  private final int width;
+  private final int depth;
+  private final int[] counts; // counts[(row * width + bucket) * 3 + action]
+  private final int[] buckets; // the bucket of the current context in each row, see locate()
+  private int history; // the last (order) actions, 2 bits each with the latest lowest: 0 for none, else action + 1
+  private int located = -1; // the state the buckets were located for, or -1 if the history changed since
+
+  /**
+   * Creates an empty model.
+   *
+   * @param order The number of past actions a context holds, from 1 to MAX_ORDER.
+   * @param width The number of buckets in each row, a power of 2.
+   * @param depth The number of rows, at least 1.
+   * @throws IllegalArgumentException If a parameter is out of range.
+   */
+  HabitModel(int order, int width, int depth) {
+    if (order < 1 || order > MAX_ORDER) throw new IllegalArgumentException("Order out of range: " + order);
+    if (Integer.bitCount(width) != 1 || width < 0) {
+      throw new IllegalArgumentException("Width not a power of 2: " + width);
+    }
+    if (depth < 1) throw new IllegalArgumentException("Depth out of range: " + depth);
+    this.order = order;
+    this.width = width;
+    this.depth = depth;
+    counts = new int[depth * width * 3];
+    buckets = new int[depth];
+  }
+
+  /**
+   * Returns the number of past actions a context holds.
+   *
+   * @return The order.
+   */
+  int getOrder() {
+    return order;
+  }
+
+  /**
+   * Returns the number of bytes the counters take, which never changes.
+   *
+   * @return The size of the table.
+   */
+  int getTableBytes() {
+    return counts.length * Integer.BYTES;
+  }
+
+  /**
+   * Estimates how often the user chose each action in a state after the same last actions as now.
+   *
+   * @param state  The key of the state.
+   * @param counts Receives the count of action (k) at [k].
+   * @return The sum of the counts.
+   */
+  int predict(int state, int[] counts) {
+    locate(state);
+    int total = 0;
+    for (int k = 0; k < 3; k++) {
+      int count = Integer.MAX_VALUE;
+      for (int row = 0; row < depth; row++) {
+        count = Math.min(count, this.counts[buckets[row] + k]);
+      }
+      counts[k] = count;
+      total += count;
+    }
+    return total;
+  }
+
+  /**
+   * Records the action the user chose in a state after their current last actions, then adds it to their last
+   * actions.
+   *
+   * @param state  The key of the state.
+   * @param action The action: 0 for fireball, 1 for shield, 2 for charge.
+   */
+  void observe(int state, int action) {
+    locate(state);
+    int smallest = Integer.MAX_VALUE;
+    for (int row = 0; row < depth; row++) {
+      smallest = Math.min(smallest, counts[buckets[row] + action]);
+    }
+    for (int row = 0; row < depth; row++) {
+      int i = buckets[row] + action;
+      if (counts[i] == smallest) counts[i]++;
+    }
+    if (smallest + 1 >= LIMIT) {
+      for (int i = 0; i < counts.length; i++) {
+        counts[i] >>>= 1;
+      }
+    }
+    history = (history << 2 | action + 1) & (1 << 2 * order) - 1;
+    located = -1;
+  }
+
+  /**
+   * Finds the bucket of the context of a state and the current last actions in every row.
+   *
+   * @param state The key of the state.
+   */
+  private void locate(int state) {
+    if (state == located) return;
+    long context = (long) state << 2 * MAX_ORDER | history;
+    for (int row = 0; row < depth; row++) {
+      // a different odd multiplier per row gives the rows independent hashes
+      long h = (context + row) * (0x9E3779B97F4A7C15L + 2L * row);
+      h ^= h >>> 29;
+      h *= 0xBF58476D1CE4E5B9L;
+      buckets[row] = (row * width + ((int) (h >>> 32) & width - 1)) * 3;
+    }
+    located = state;
+  }
+}
\ No newline at end of file
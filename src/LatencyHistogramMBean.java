@@ -0,0 +1,47 @@
+/**
+ * The view of a LatencyHistogram that JMX clients such as JConsole see.
+ *
+ * @author Dougy
+ */
+public interface LatencyHistogramMBean {
+  /**
+   * Returns the number of durations recorded.
+   *
+   * @return The number of durations.
+   */
+  long getCount();
+
+  /**
+   * Returns the median of the recorded durations.
+   *
+   * @return The median in nanoseconds, or 0 if nothing was recorded.
+   */
+  long getP50();
+
+  /**
+   * Returns the 99th percentile of the recorded durations.
+   *
+   * @return The 99th percentile in nanoseconds, or 0 if nothing was recorded.
+   */
+  long getP99();
+
+  /**
+   * Returns the longest duration recorded.
+   *
+   * @return The longest duration in nanoseconds, or 0 if nothing was recorded.
+   */
+  long getMax();
+
+  /**
+   * Returns a percentile of the recorded durations.
+   *
+   * @param percentile The percentile, from 0 to 100.
+   * @return The duration in nanoseconds, or 0 if nothing was recorded.
+   */
+  long getPercentile(double percentile);
+
+  /**
+   * Forgets every recorded duration.
+   */
+  void reset();
+}
\ No newline at end of file
@@ -25,11 +25,11 @@ public class Launcher extends JFrame implements ActionListener {
 
     JButton leaderboardButton = new JButton("Leaderboard");
     leaderboardButton.setActionCommand("leaderboard");
-    leaderboardButton.addActionListener(this);
+    leaderboardButton.addActionListener(EdtStallEvent.watch("Launcher.leaderboard", this));
 
     JButton playButton = new JButton("Play Game!");
     playButton.setActionCommand("play");
-    playButton.addActionListener(this);
+    playButton.addActionListener(EdtStallEvent.watch("Launcher.play", this));
 
     add(pageLabel);
     add(leaderboardButton);
@@ -44,7 +44,7 @@ public class Launcher extends JFrame implements ActionListener {
   public void actionPerformed(ActionEvent e) {
     String command = e.getActionCommand();
     if (command.equals("leaderboard")) {
-      Main.leaderboard.display();
+      new LeaderboardWindow(Main.leaderboard).setVisible(true);
     } else if (command.equals("play")) {
       Game g = new Game();
       g.setVisible(true);
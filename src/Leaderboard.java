@@ -1,62 +1,295 @@
-import javax.swing.*;
-import java.awt.*;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
- * Holds GameResults and provides a method to display a leaderboard, sorted from highest to lowest GameResult scores.
+ * Holds GameResults and provides a leaderboard, sorted from highest to lowest GameResult scores, which a
+ * LeaderboardWindow displays. It uses no GUI classes, so terminal and server front ends don't load AWT.
+ * <p>
+ * Results are kept in one bucket per score, in the order they were added, and a Fenwick tree counts the results
+ * of each score. Adding a result and finding the result at a rank take O(log s) time, where s is the highest
+ * score, and reading a page of k results takes O(log s + k). Results with equal scores keep their insertion order.
+ * <p>
+ * A Leaderboard opened from a directory saves every new result through a LeaderboardStore. The results saved
+ * before are not loaded into memory: the rows of its snapshot are read from the mapped file when they are needed.
+ * <p>
+ * A Leaderboard can be shared by any number of threads. addResult() never blocks: it puts the result on a lock-free
+ * queue and, if the lock is free, applies one batch of at most MAX_APPLY queued results. What a thread leaves on the
+ * queue because the lock was taken is applied by a background thread, so no call does more than a batch of work
+ * however fast results keep coming.
+ * <p>
+ * Reads of results traverse a View, which holds the leaderboard as of one version and never changes. The bucket
+ * arrays are only ever appended to, so a View shares them and only copies the Fenwick tree and the bucket sizes,
+ * O(s). A read takes the lock only when results were queued since the last View was made: it applies the results
+ * queued before it started, no more, and makes a new View. A long read such as getLeaderboard() then runs without
+ * the lock, so it never holds up ingestion and always sees one consistent version.
+ * <p>
+ * A PlayerIndex keeps a PlayerProfile per player, updated as results are applied, so a player's games, best and
+ * average score and streak are read in O(1) time, and getPlayers() ranks the players by their best score without
+ * sorting their results. The results of the snapshot are only counted into the profiles by the first call that reads
+ * them, which scans the snapshot once. Copying the index for every batch would cost O(players), so player reads
+ * take the lock instead; they only hold it for a lookup or a page, never for a whole traversal.
+ * <p>
+ * Saving results and telling listeners about them happen after the lock is released, in the order the results were
+ * applied, so neither holds up readers or the next batch: applied batches are queued, and the thread that applied
+ * them saves and announces up to MAX_PUBLISH of them unless another thread is doing so. Listeners are told about every
+ * result added, with its position, so views such as an open leaderboard window can update without reading the whole
+ * leaderboard again.
  *
  * @author Alex, Armeet, David
  */
 public class Leaderboard {
-  private final ArrayList<GameResult> gameResults;
+  private static final int MAX_APPLY = 1024; // results applied in one go before the lock is released
+  private static final int MAX_PUBLISH = 4; // applied batches saved and announced in one go
+  // Applies, saves and announces what the threads using a Leaderboard left queued, one batch at a time.
+  private static final ExecutorService INGESTION = Executors.newSingleThreadExecutor(task -> {
+    Thread thread = new Thread(task, "Leaderboard ingestion");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  private final LeaderboardSnapshot base; // results saved before this Leaderboard was opened, ahead of their bucket
+
+  // The results applied so far, guarded by lock. buckets[s] holds the results with score s in its first sizes[s]
+  // elements; the elements of a bucket are never changed once written, and a full bucket is copied into a larger
+  // array, so Views can share the arrays.
+  private GameResult[][] buckets = new GameResult[0][];
+  private int[] sizes = new int[0];
+  private int[] counts; // Fenwick tree over the number of results of each score, snapshot included
+  private int size;
+  private long version; // number of results applied since this Leaderboard was created
+  private final PlayerIndex players = new PlayerIndex();
+  private boolean baseIndexed; // whether the results of base are counted into players
+  private volatile View view; // the last View made, which may be behind
+
+  private volatile LeaderboardStore store;
+  private final ConcurrentLinkedQueue<GameResult> incoming = new ConcurrentLinkedQueue<GameResult>();
+  private final AtomicLong queued = new AtomicLong(); // number of results ever put on incoming
+  private final ReentrantLock lock = new ReentrantLock(); // guards the results applied so far and players
+  private final ConcurrentLinkedQueue<Batch> applied = new ConcurrentLinkedQueue<Batch>(); // not saved yet
+  private final ReentrantLock publishLock = new ReentrantLock(); // taken to save and announce applied batches
+  private final AtomicBoolean drainQueued = new AtomicBoolean(); // whether INGESTION has a drain() of this queued
+  private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<Listener>();
+
+  /**
+   * Is told about the results added to a Leaderboard.
+   */
+  public interface Listener {
+    /**
+     * Called after a result was added, without the leaderboard's lock held. Results are told in the order they were
+     * added, on a thread that used the leaderboard or on its background thread, which every Leaderboard shares; it
+     * must return quickly, so hand slow work to another thread.
+     *
+     * @param result The result.
+     * @param index  The position of the result, where 0 is the highest score.
+     * @param size   The number of results on the leaderboard, including this one.
+     */
+    void resultAdded(GameResult result, int index, int size);
+  }
 
   /**
-   * Creates a Leaderboard with a blank ArrayList of GameResults.
+   * Creates a blank Leaderboard.
    */
   public Leaderboard() {
-    gameResults = new ArrayList<GameResult>();
+    this(null);
   }
 
   /**
-   * Recursive mergesort that sorts a GameResult array in ascending order.
+   * Creates a Leaderboard holding the results of a snapshot.
    *
-   * @param a     reference to an array of GameResult to be sorted
-   * @param first starting index of range of values to be sorted
-   * @param last  ending index of range of values to be sorted
+   * @param base The snapshot, or null for a blank Leaderboard.
    */
-  public static void mergeSort(ArrayList<GameResult> a, int first, int last) {
-    if (first < last) {
-      int mid = (first + last) / 2;
-      mergeSort(a, first, mid);
-      mergeSort(a, mid + 1, last);
-      merge(a, first, mid, last);
+  Leaderboard(LeaderboardSnapshot base) {
+    this.base = base;
+    counts = new int[17];
+    if (base != null) {
+      growBuckets(base.scoreCount());
+      size = base.size();
+      growCounts(base.scoreCount());
     }
+    view = new View(this);
   }
 
   /**
-   * Merges the sublist from a[first] to a[mid] and sublist from a[mid+1] to a[last]
-   * such that the sublist from a[first] to a[last] is sorted in ascending order.
+   * Opens the Leaderboard saved in a directory. New results are saved there as they are added.
    *
-   * @param a     Reference to an array of GameResult to be sorted
-   * @param first Starting index of range of values to be sorted
-   * @param mid   Midpoint index of range of values to be sorted
-   * @param last  Last index of range of values to be sorted
+   * @param directory The directory holding the saved leaderboard.
+   * @return The Leaderboard.
+   * @throws IOException If the saved leaderboard cannot be opened.
    */
-  private static void merge(ArrayList<GameResult> a, int first, int mid, int last) {
-    int firstIndex = first;
-    int secondIndex = mid + 1;
-    GameResult firstResult = a.get(firstIndex);
-    GameResult secondResult = a.get(secondIndex);
-    while (firstIndex < secondIndex && secondIndex <= last) {
-      if (firstResult.getScore() > secondResult.getScore()) {
-        a.add(firstIndex++, a.remove(secondIndex++));
-        if (secondIndex <= last) {
-          secondResult = a.get(secondIndex);
-        }
-      } else {
-        firstIndex++;
-        if (firstIndex < secondIndex) {
-          firstResult = a.get(firstIndex);
+  public static Leaderboard open(Path directory) throws IOException {
+    return open(directory, LeaderboardStore.DEFAULT_COMPACT_THRESHOLD);
+  }
+
+  /**
+   * Opens the Leaderboard saved in a directory. New results are saved there as they are added.
+   *
+   * @param directory        The directory holding the saved leaderboard.
+   * @param compactThreshold Number of logged results after which they are compacted into a new snapshot.
+   * @return The Leaderboard.
+   * @throws IOException If the saved leaderboard cannot be opened.
+   */
+  static Leaderboard open(Path directory, int compactThreshold) throws IOException {
+    LeaderboardStore store = new LeaderboardStore(directory, compactThreshold);
+    Leaderboard leaderboard = new Leaderboard(store.getSnapshot());
+    leaderboard.addResults(store.getReplayed());
+    leaderboard.flush(); // the replayed results are saved already
+    leaderboard.store = store;
+    return leaderboard;
+  }
+
+  /**
+   * Saves all pending results and closes the directory the Leaderboard was opened from, if any.
+   */
+  public void close() {
+    flush();
+    if (store != null) store.close();
+  }
+
+  /**
+   * Applies, saves and announces every queued result on the calling thread.
+   */
+  private void flush() {
+    lock.lock();
+    try {
+      while (!incoming.isEmpty()) {
+        applyIncoming();
+      }
+    } finally {
+      lock.unlock();
+    }
+    publishLock.lock();
+    try {
+      publish(Integer.MAX_VALUE);
+    } finally {
+      publishLock.unlock();
+    }
+  }
+
+  /**
+   * Applies the results queued before the call, unless another thread already did. Must be called with the lock
+   * held. The work is bounded by the results queued at the time of the call, whatever is queued meanwhile.
+   */
+  private void catchUp() {
+    long target = queued.get();
+    while (version < target) {
+      applyIncoming();
+    }
+  }
+
+  /**
+   * Returns the View a read works on, after applying the results queued before the read. It is made anew only when
+   * results were applied since the last one.
+   *
+   * @return The View.
+   */
+  private View current() {
+    View current = view;
+    if (current.version < queued.get()) {
+      lock.lock();
+      try {
+        catchUp();
+        if (view.version != version) view = new View(this);
+        current = view;
+      } finally {
+        unlock();
+      }
+    }
+    return current;
+  }
+
+  /**
+   * Takes the lock for a read of the players, after applying the results queued before the read.
+   */
+  private void lockForRead() {
+    lock.lock();
+    catchUp();
+  }
+
+  /**
+   * Releases the lock, then saves and announces what was applied unless another thread is doing so. Whatever is
+   * left, applied or queued, is handed to the background thread, so that it doesn't wait for the next call.
+   */
+  private void unlock() {
+    lock.unlock();
+    // a listener that reads the leaderboard must not announce the next batch before the rest of its own
+    if (!applied.isEmpty() && !publishLock.isHeldByCurrentThread() && publishLock.tryLock()) {
+      try {
+        publish(MAX_PUBLISH);
+      } finally {
+        publishLock.unlock();
+      }
+    }
+    if (!(incoming.isEmpty() && applied.isEmpty())) scheduleDrain();
+  }
+
+  /**
+   * Runs on the background thread: applies one batch of queued results, then saves and announces up to MAX_PUBLISH
+   * applied batches, and queues itself again if anything is left, so that no Leaderboard keeps the thread for long.
+   */
+  private void drain() {
+    drainQueued.set(false);
+    lock.lock();
+    try {
+      applyIncoming();
+    } finally {
+      lock.unlock();
+    }
+    publishLock.lock();
+    try {
+      publish(MAX_PUBLISH);
+    } finally {
+      publishLock.unlock();
+    }
+    if (!(incoming.isEmpty() && applied.isEmpty())) scheduleDrain();
+  }
+
+  /**
+   * Makes sure the background thread will drain this Leaderboard, unless it is about to already.
+   */
+  private void scheduleDrain() {
+    if (drainQueued.compareAndSet(false, true)) INGESTION.execute(this::drain);
+  }
+
+  /**
+   * Applies up to MAX_APPLY queued results and queues them as a batch to be saved and announced, if there is a store
+   * or a listener to publish them to. Must be called with the lock held.
+   */
+  private void applyIncoming() {
+    // listeners are only told about results added after they were added, and a store is only set by open()
+    boolean publishing = store != null || !listeners.isEmpty();
+    Batch batch = null;
+    GameResult result;
+    for (int count = 0; count < MAX_APPLY && (result = incoming.poll()) != null; count++) {
+      int index = insert(result);
+      if (!publishing) continue;
+      if (batch == null) batch = new Batch(size - 1);
+      batch.add(result, index);
+    }
+    if (batch != null) applied.add(batch);
+  }
+
+  /**
+   * Saves applied batches and tells the listeners about their results, in the order they were applied. Must be called
+   * with publishLock held.
+   *
+   * @param maxBatches The number of batches to publish at most.
+   */
+  private void publish(int maxBatches) {
+    Batch batch;
+    for (int published = 0; published < maxBatches && (batch = applied.poll()) != null; published++) {
+      LeaderboardStore store = this.store;
+      for (int i = 0; i < batch.count; i++) {
+        if (store != null) store.append(batch.results[i]);
+        for (Listener listener : listeners) {
+          listener.resultAdded(batch.results[i], batch.indexes[i], batch.firstSize + i + 1);
         }
       }
     }
@@ -75,59 +308,436 @@ public class Leaderboard {
   }
 
   /**
-   * Creates a new window displaying the game's leaderboard.
+   * Starts telling a listener about the results added from now on.
+   *
+   * @param listener The listener.
    */
-  public void display() {
-    // Set up the window layout
-    JFrame frame = new JFrame();
-    frame.setSize(400, 400);
-    frame.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
-    frame.setLayout(new GridLayout(0, 1, 0, 10));
-
-    // Set up the JPanel for the leaderboard
-    JLabel pageLabel = new JLabel("Leaderboard");
-    pageLabel.setVerticalAlignment(JLabel.TOP);
-    pageLabel.setHorizontalAlignment(JLabel.CENTER);
-    pageLabel.setFont(new Font("Sans Serif", Font.BOLD, 30));
-
-    String[] columnNames = {"Player Name", "High Score"};
-
-    mergeSort(gameResults, 0, gameResults.size() - 1);
-    JTable pageTable = new JTable(getLeaderboard(), columnNames);
-    pageTable.setPreferredScrollableViewportSize(new Dimension(500, 100));
-    pageTable.setFillsViewportHeight(true);
-
-    JScrollPane scroll = new JScrollPane(pageTable);
+  public void addListener(Listener listener) {
+    listeners.add(listener);
+  }
 
-    // Display the final leaderboard window
-    frame.add(pageLabel);
-    frame.add(scroll);
-    frame.setVisible(true);
+  /**
+   * Stops telling a listener about added results.
+   *
+   * @param listener The listener.
+   */
+  public void removeListener(Listener listener) {
+    listeners.remove(listener);
   }
 
   /**
-   * Sorts the GameResults in descending order and returns a String[][] with each row representing a GameResult and each column in a row holding a value of the GameResult.
+   * Returns a String[][] with each row representing a GameResult, from the highest to the lowest score, and each
+   * column in a row holding a value of the GameResult. It is read from one View without holding any lock.
    *
-   * @return A String[][] with each row representing a GameResult and each column in a row holding a value of the GameResult.
+   * @return A String[][] with each row representing a GameResult and each column in a row holding a value of the
+   *   GameResult.
    */
   public String[][] getLeaderboard() {
-    mergeSort(gameResults, 0, gameResults.size() - 1);
-    String[][] leaderboard = new String[gameResults.size()][2];
-    for (int r = 0; r < gameResults.size(); r++) {
-      leaderboard[leaderboard.length - r - 1][0] = Leaderboard.concatenatedName(gameResults.get(r).getPlayer());
-      leaderboard[leaderboard.length - r - 1][1] = String.valueOf(gameResults.get(r).getScore());
+    View current = current();
+    LeaderboardEvent event = Metrics.recording() ? new LeaderboardEvent() : null;
+    if (event != null) event.begin();
+    String[][] leaderboard = new String[current.size][2];
+    int r = 0;
+    for (int score = current.sizes.length - 1; score >= 0; score--) {
+      for (int i = 0; i < current.countOf(score); i++) {
+        GameResult result = current.resultOf(score, i);
+        leaderboard[r][0] = Leaderboard.concatenatedName(result.getPlayer());
+        leaderboard[r][1] = String.valueOf(result.getScore());
+        r++;
+      }
     }
 
+    commit(event, LeaderboardEvent.SORT, current.size);
     return leaderboard;
   }
 
   /**
-   * Adds a GameResult to the leaderboard.
+   * Adds a GameResult to the leaderboard. Names longer than a LeaderboardSnapshot row holds are cut to fit first, so
+   * a player's results are filed under the same name before and after they are compacted. Every read that starts
+   * after this call returns sees the result.
    *
    * @param result GameResult to be added.
+   * @throws IllegalArgumentException If the score of the result is negative.
    */
   public void addResult(GameResult result) {
-    gameResults.add(result);
-    mergeSort(gameResults, 0, gameResults.size() - 1);
+    if (result.getScore() < 0) throw new IllegalArgumentException("Negative score: " + result.getScore());
+    long start = Metrics.ENABLED ? System.nanoTime() : 0;
+    String name = LeaderboardSnapshot.fitName(result.getPlayer().getName());
+    if (name != result.getPlayer().getName()) result = new GameResult(new Player(name), result.getScore());
+    incoming.add(result);
+    queued.incrementAndGet(); // after the result is queued, so that catchUp() always finds it
+    if (lock.tryLock()) {
+      try {
+        applyIncoming();
+      } finally {
+        unlock();
+      }
+    }
+    // otherwise the thread holding the lock finds the result when it unlocks
+    if (Metrics.ENABLED) Metrics.ADD_RESULT.record(System.nanoTime() - start);
+  }
+
+  /**
+   * Inserts a GameResult into the buckets, the tree and the players. Must be called with the lock held.
+   *
+   * @param result GameResult to be inserted.
+   * @return The position the result went to, where 0 is the highest score.
+   */
+  private int insert(GameResult result) {
+    LeaderboardEvent event = Metrics.recording() ? new LeaderboardEvent() : null;
+    if (event != null) event.begin();
+    int score = result.getScore();
+    if (score >= buckets.length) growBuckets(score + 1);
+    if (score + 1 >= counts.length) growCounts(score + 1);
+
+    GameResult[] bucket = buckets[score];
+    if (sizes[score] == bucket.length) {
+      // views keep reading the old array, which is not changed any more
+      bucket = Arrays.copyOf(bucket, Math.max(4, bucket.length * 2));
+      buckets[score] = bucket;
+    }
+    bucket[sizes[score]++] = result;
+    for (int i = score + 1; i < counts.length; i += i & -i) {
+      counts[i]++;
+    }
+    players.add(result);
+    size++;
+    version++;
+    commit(event, LeaderboardEvent.INSERT, size);
+    // the result went after the results with the same score
+    return size - countAtMost(counts, score) + countOf(score) - 1;
+  }
+
+  /**
+   * Ends an event for an operation on the leaderboard, and commits it if it is recorded.
+   *
+   * @param event     The event, which began with the operation, or null if Flight Recorder doesn't run.
+   * @param operation The operation, LeaderboardEvent.INSERT or SORT.
+   * @param size      The size of the leaderboard the operation worked on.
+   */
+  private static void commit(LeaderboardEvent event, String operation, int size) {
+    if (event == null) return;
+    event.end();
+    if (event.shouldCommit()) {
+      event.operation = operation;
+      event.size = size;
+      event.commit();
+    }
+  }
+
+  /**
+   * Adds several GameResults to the leaderboard.
+   *
+   * @param results GameResults to be added.
+   */
+  public void addResults(Collection<GameResult> results) {
+    for (GameResult result : results) {
+      addResult(result);
+    }
+  }
+
+  /**
+   * Adds empty buckets up to the given number of scores. Must be called with the lock held.
+   *
+   * @param scores The number of scores that need a bucket.
+   */
+  private void growBuckets(int scores) {
+    int old = buckets.length;
+    buckets = Arrays.copyOf(buckets, scores);
+    sizes = Arrays.copyOf(sizes, scores);
+    Arrays.fill(buckets, old, scores, new GameResult[0]);
+  }
+
+  /**
+   * Rebuilds the Fenwick tree so that it can count scores up to at least the given score.
+   *
+   * @param score The highest score that has to fit.
+   */
+  private void growCounts(int score) {
+    int length = counts.length;
+    while (length <= score + 1) {
+      length = length * 2 - 1;
+    }
+    counts = new int[length];
+    for (int i = 1; i < length; i++) {
+      // build the tree in O(s) by pushing each node's total up to its parent
+      if (i <= buckets.length) counts[i] += countOf(i - 1);
+      int parent = i + (i & -i);
+      if (parent < length) counts[parent] += counts[i];
+    }
+  }
+
+  /**
+   * Returns the number of results applied with the given score. Must be called with the lock held.
+   *
+   * @param score The score, which must have a bucket.
+   * @return The number of results.
+   */
+  private int countOf(int score) {
+    return (base == null ? 0 : base.count(score)) + sizes[score];
+  }
+
+  /**
+   * Returns the number of results with a score of at most the given score.
+   *
+   * @param counts The Fenwick tree over the number of results of each score.
+   * @param score  The score.
+   * @return The number of results scoring score or lower.
+   */
+  private static int countAtMost(int[] counts, int score) {
+    int count = 0;
+    for (int i = Math.min(score + 1, counts.length - 1); i > 0; i -= i & -i) {
+      count += counts[i];
+    }
+    return count;
+  }
+
+  /**
+   * Returns the index of the players, after counting the results of the snapshot into it if that wasn't done yet.
+   * Must be called with the lock held.
+   *
+   * @return The index of the players.
+   */
+  private PlayerIndex players() {
+    if (!baseIndexed) {
+      baseIndexed = true;
+      if (base != null) players.addOlder(base);
+    }
+    return players;
+  }
+
+  /**
+   * Returns the aggregated results of a player.
+   *
+   * @param name The name of the player.
+   * @return A copy of the player's PlayerProfile, or null if the player has no results.
+   */
+  public PlayerProfile getProfile(String name) {
+    lockForRead();
+    try {
+      PlayerProfile profile = players().get(LeaderboardSnapshot.fitName(name));
+      return profile == null ? null : new PlayerProfile(profile);
+    } finally {
+      unlock();
+    }
+  }
+
+  /**
+   * Returns the number of players on the leaderboard.
+   *
+   * @return The number of players with at least one GameResult.
+   */
+  public int getPlayerCount() {
+    lockForRead();
+    try {
+      return players().size();
+    } finally {
+      unlock();
+    }
+  }
+
+  /**
+   * Returns the rank of a player on the leaderboard of best scores per player.
+   *
+   * @param name The name of the player.
+   * @return The rank, where 1 is the top, or -1 if the player has no results.
+   */
+  public int getPlayerRank(String name) {
+    lockForRead();
+    try {
+      return players().rankOf(LeaderboardSnapshot.fitName(name));
+    } finally {
+      unlock();
+    }
+  }
+
+  /**
+   * Returns a page of the leaderboard of best scores per player, with one entry per player. Players with equal best
+   * scores are in the order they reached them.
+   *
+   * @param from  The position of the first player, where 0 is the highest best score.
+   * @param count The maximum number of players to return.
+   * @return Copies of the PlayerProfiles from position from (inclusive) to from + count (exclusive), or fewer at the
+   *   end.
+   */
+  public ArrayList<PlayerProfile> getPlayers(int from, int count) {
+    lockForRead();
+    try {
+      return players().getPage(from, count);
+    } finally {
+      unlock();
+    }
+  }
+
+  /**
+   * Returns the number of GameResults on the leaderboard.
+   *
+   * @return The number of GameResults.
+   */
+  public int size() {
+    return current().size;
+  }
+
+  /**
+   * Returns the version of the leaderboard, which grows by one with every GameResult added.
+   *
+   * @return The number of GameResults added since the Leaderboard was created or opened.
+   */
+  public long getVersion() {
+    return current().version;
+  }
+
+  /**
+   * Returns the rank a GameResult with the given score gets when it is added now.
+   *
+   * @param score The score.
+   * @return The rank, where 1 is the top of the leaderboard.
+   */
+  public int getRank(int score) {
+    View current = current();
+    if (score < 0) return current.size + 1;
+    // results with an equal score were added earlier, so they stay ahead
+    return current.size - countAtMost(current.counts, score - 1) + 1;
+  }
+
+  /**
+   * Returns the GameResult at the given position of the leaderboard.
+   *
+   * @param index The position, where 0 is the highest score.
+   * @return The GameResult at that position.
+   * @throws IndexOutOfBoundsException If there is no GameResult at that position.
+   */
+  public GameResult getResult(int index) {
+    return current().resultAt(index);
+  }
+
+  /**
+   * Returns a page of the leaderboard, from the highest to the lowest score.
+   *
+   * @param from  The position of the first GameResult, where 0 is the highest score.
+   * @param count The maximum number of GameResults to return.
+   * @return The GameResults from position from (inclusive) to from + count (exclusive), or fewer at the end.
+   */
+  public ArrayList<GameResult> getResults(int from, int count) {
+    View current = current();
+    int size = current.size;
+    if (from < 0 || from >= size || count <= 0) return new ArrayList<GameResult>();
+    ArrayList<GameResult> page = new ArrayList<GameResult>(Math.min(count, size - from));
+    int score = current.resultAt(from).getScore();
+    int offset = size - countAtMost(current.counts, score);
+    int i = from - offset;
+    while (page.size() < count && score >= 0) {
+      for (; i < current.countOf(score) && page.size() < count; i++) {
+        page.add(current.resultOf(score, i));
+      }
+      score--;
+      i = 0;
+    }
+    return page;
+  }
+
+  /**
+   * The results of a Leaderboard as of one version, which never changes. It shares the bucket arrays of the
+   * Leaderboard, of which it only reads the elements that were written when it was made.
+   */
+  private static final class View {
+    private final LeaderboardSnapshot base;
+    private final GameResult[][] buckets;
+    private final int[] sizes;
+    private final int[] counts;
+    private final int size;
+    private final long version;
+
+    /**
+     * Captures the results applied to a Leaderboard so far. Must be called with its lock held.
+     *
+     * @param leaderboard The Leaderboard.
+     */
+    View(Leaderboard leaderboard) {
+      base = leaderboard.base;
+      buckets = leaderboard.buckets.clone();
+      sizes = leaderboard.sizes.clone();
+      counts = leaderboard.counts.clone();
+      size = leaderboard.size;
+      version = leaderboard.version;
+    }
+
+    /**
+     * Returns the number of results with the given score.
+     *
+     * @param score The score, which must have a bucket.
+     * @return The number of results.
+     */
+    int countOf(int score) {
+      return (base == null ? 0 : base.count(score)) + sizes[score];
+    }
+
+    /**
+     * Returns a result of the given score. The snapshot's results come before the ones added since.
+     *
+     * @param score The score, which must have a bucket.
+     * @param i     The position of the result among the results with that score.
+     * @return The result.
+     */
+    GameResult resultOf(int score, int i) {
+      int saved = base == null ? 0 : base.count(score);
+      return i < saved ? base.read(base.start(score) + i) : buckets[score][i - saved];
+    }
+
+    /**
+     * Returns the GameResult at the given position.
+     *
+     * @param index The position, where 0 is the highest score.
+     * @return The GameResult at that position.
+     * @throws IndexOutOfBoundsException If there is no GameResult at that position.
+     */
+    GameResult resultAt(int index) {
+      Objects.checkIndex(index, size);
+      // index counts down from the top, the tree counts up from score 0
+      int below = size - 1 - index;
+      int node = 0;
+      for (int step = Integer.highestOneBit(counts.length - 1); step > 0; step >>= 1) {
+        if (node + step < counts.length && counts[node + step] <= below) {
+          node += step;
+          below -= counts[node];
+        }
+      }
+      // node is now the score of the result; below counts from the last result of the bucket
+      return resultOf(node, countOf(node) - 1 - below);
+    }
+  }
+
+  /**
+   * Results applied together, waiting to be saved and announced.
+   */
+  private static final class Batch {
+    private final int firstSize; // the size of the leaderboard before the first result
+    private GameResult[] results = new GameResult[4];
+    private int[] indexes = new int[4]; // the position each result went to
+    private int count;
+
+    /**
+     * Creates an empty batch.
+     *
+     * @param firstSize The size of the leaderboard before the first result of the batch.
+     */
+    Batch(int firstSize) {
+      this.firstSize = firstSize;
+    }
+
+    /**
+     * Adds a result that was applied after the others.
+     *
+     * @param result The result.
+     * @param index  The position it went to.
+     */
+    void add(GameResult result, int index) {
+      if (count == results.length) {
+        results = Arrays.copyOf(results, count * 2);
+        indexes = Arrays.copyOf(indexes, count * 2);
+      }
+      results[count] = result;
+      indexes[count++] = index;
+    }
   }
 }
\ No newline at end of file
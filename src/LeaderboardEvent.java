@@ -0,0 +1,30 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * A Flight Recorder event for an insert into a Leaderboard or a sorted copy of the whole of it.
+ *
+ * @author Dougy
+ */
+@Name("fireball.Leaderboard")
+@Label("Leaderboard Update")
+@Category("Fireball")
+@Description("A result inserted into the leaderboard, or the leaderboard sorted for display")
+@StackTrace(false)
+@Threshold("1 ms")
+class LeaderboardEvent extends jdk.jfr.Event {
+  static final String INSERT = "insert";
+  static final String SORT = "sort";
+
+  @Label("Operation")
+  @Description("insert or sort")
+  String operation;
+
+  @Label("Size")
+  @Description("Results on the leaderboard")
+  int size;
+}
\ No newline at end of file
@@ -0,0 +1,275 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * A read-only, memory-mapped file holding every GameResult of a Leaderboard up to some point.
+ * <p>
+ * The file starts with a header holding the number of results of each score, followed by fixed-width rows sorted
+ * like the leaderboard (highest score first, ties in insertion order). Since the header tells where the rows of each
+ * score start, a row is found by its position alone and nothing has to be parsed when the file is opened.
+ * <p>
+ * Header: magic, version, first log generation not included, row count, score count, one count per score, CRC32 of
+ * the preceding header bytes. Row: score (int), name length (byte), name (UTF-8, at most 59 bytes).
+ *
+ * @author Alex
+ */
+public class LeaderboardSnapshot {
+  static final int MAGIC = 0x46424c53; // "FBLS"
+  static final int VERSION = 1;
+  static final int ROW_BYTES = 64;
+  static final int MAX_NAME_BYTES = ROW_BYTES - 5;
+
+  private final MappedByteBuffer buffer;
+  private final long nextLog;
+  private final int[] counts; // counts[s] is the number of rows with score s
+  private final int[] starts; // starts[s] is the first row with score s
+  private final int size;
+  private final int dataOffset;
+
+  /**
+   * Maps and validates a snapshot file.
+   *
+   * @param file The snapshot file.
+   * @throws IOException If the file cannot be read or is not a complete, valid snapshot.
+   */
+  public LeaderboardSnapshot(Path file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      long length = channel.size();
+      if (length < 24 || length > Integer.MAX_VALUE) throw new IOException("Bad snapshot length: " + file);
+      buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+    }
+    buffer.order(ByteOrder.LITTLE_ENDIAN);
+    if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) throw new IOException("Not a snapshot: " + file);
+    nextLog = buffer.getLong(8);
+    size = buffer.getInt(16);
+    int scores = buffer.getInt(20);
+    int headerLength = 24 + scores * 4;
+    if (scores < 0 || headerLength + 4 > buffer.capacity()) throw new IOException("Bad snapshot header: " + file);
+
+    CRC32 crc = new CRC32();
+    ByteBuffer header = buffer.duplicate();
+    header.position(0).limit(headerLength);
+    crc.update(header);
+    if ((int) crc.getValue() != buffer.getInt(headerLength)) throw new IOException("Bad snapshot checksum: " + file);
+
+    dataOffset = align(headerLength + 4);
+    if (buffer.capacity() != dataOffset + (long) size * ROW_BYTES) throw new IOException("Incomplete snapshot: " + file);
+
+    counts = new int[scores];
+    starts = new int[scores];
+    int row = 0;
+    for (int s = scores - 1; s >= 0; s--) {
+      counts[s] = buffer.getInt(24 + s * 4);
+      starts[s] = row;
+      row += counts[s];
+    }
+    if (row != size) throw new IOException("Bad snapshot counts: " + file);
+  }
+
+  /**
+   * Rounds a header length up to a whole number of rows, so that rows never straddle a page.
+   *
+   * @param length The header length in bytes.
+   * @return The offset of the first row.
+   */
+  private static int align(int length) {
+    return (length + ROW_BYTES - 1) / ROW_BYTES * ROW_BYTES;
+  }
+
+  /**
+   * Returns the generation of the first log whose results are not part of this snapshot.
+   *
+   * @return The first log generation to replay on top of this snapshot.
+   */
+  public long getNextLog() {
+    return nextLog;
+  }
+
+  /**
+   * Returns the number of GameResults in the snapshot.
+   *
+   * @return The number of rows.
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Returns the number of distinct scores the snapshot has room for, i.e. one more than its highest score.
+   *
+   * @return The number of scores.
+   */
+  public int scoreCount() {
+    return counts.length;
+  }
+
+  /**
+   * Returns the number of GameResults with the given score.
+   *
+   * @param score The score.
+   * @return The number of rows with that score.
+   */
+  public int count(int score) {
+    return score < counts.length ? counts[score] : 0;
+  }
+
+  /**
+   * Returns the row of the first GameResult with the given score.
+   *
+   * @param score The score, which must be below scoreCount().
+   * @return The row number.
+   */
+  public int start(int score) {
+    return starts[score];
+  }
+
+  /**
+   * Reads a GameResult from its row.
+   *
+   * @param row The row number, where 0 is the top of the leaderboard.
+   * @return The GameResult stored in the row.
+   */
+  public GameResult read(int row) {
+    return new GameResult(new Player(readName(row)), readScore(row));
+  }
+
+  /**
+   * Reads the score of a GameResult from its row.
+   *
+   * @param row The row number, where 0 is the top of the leaderboard.
+   * @return The score stored in the row.
+   */
+  public int readScore(int row) {
+    return buffer.getInt(dataOffset + row * ROW_BYTES);
+  }
+
+  /**
+   * Reads the player name of a GameResult from its row.
+   *
+   * @param row The row number, where 0 is the top of the leaderboard.
+   * @return The name stored in the row.
+   */
+  public String readName(int row) {
+    int offset = dataOffset + row * ROW_BYTES;
+    byte[] name = new byte[buffer.get(offset + 4)];
+    buffer.get(offset + 5, name);
+    return new String(name, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Writes a new snapshot made of the rows of an existing snapshot followed by newer GameResults.
+   *
+   * @param file    The file to write, which must not exist yet.
+   * @param nextLog The generation of the first log not included in the new snapshot.
+   * @param base    The snapshot to start from, or null.
+   * @param results Newer GameResults in the order they were added.
+   * @throws IOException If the file cannot be written.
+   */
+  public static void write(Path file, long nextLog, LeaderboardSnapshot base, List<GameResult> results)
+    throws IOException {
+    // group the new results by score, keeping their order
+    int scores = base == null ? 0 : base.scoreCount();
+    for (GameResult result : results) {
+      scores = Math.max(scores, result.getScore() + 1);
+    }
+    ArrayList<ArrayList<GameResult>> byScore = new ArrayList<ArrayList<GameResult>>(scores);
+    for (int s = 0; s < scores; s++) {
+      byScore.add(new ArrayList<GameResult>());
+    }
+    for (GameResult result : results) {
+      byScore.get(result.getScore()).add(result);
+    }
+
+    int headerLength = 24 + scores * 4;
+    ByteBuffer header = ByteBuffer.allocate(align(headerLength + 4)).order(ByteOrder.LITTLE_ENDIAN);
+    int size = 0;
+    header.putInt(MAGIC).putInt(VERSION).putLong(nextLog).putInt(0).putInt(scores);
+    for (int s = 0; s < scores; s++) {
+      int count = (base == null ? 0 : base.count(s)) + byScore.get(s).size();
+      header.putInt(count);
+      size += count;
+    }
+    header.putInt(16, size);
+    CRC32 crc = new CRC32();
+    crc.update(header.array(), 0, headerLength);
+    header.putInt(headerLength, (int) crc.getValue());
+    header.clear();
+
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+      while (header.hasRemaining()) channel.write(header);
+      ByteBuffer out = ByteBuffer.allocate(ROW_BYTES * 4096).order(ByteOrder.LITTLE_ENDIAN);
+      for (int s = scores - 1; s >= 0; s--) {
+        // the older rows of a score come first
+        if (base != null && base.count(s) > 0) {
+          ByteBuffer rows = base.buffer.duplicate();
+          int from = base.dataOffset + base.start(s) * ROW_BYTES;
+          rows.position(from).limit(from + base.count(s) * ROW_BYTES);
+          flush(channel, out);
+          while (rows.hasRemaining()) channel.write(rows);
+        }
+        for (GameResult result : byScore.get(s)) {
+          if (!out.hasRemaining()) flush(channel, out);
+          putRow(out, result);
+        }
+      }
+      flush(channel, out);
+      channel.force(true);
+    }
+  }
+
+  /**
+   * Writes out and clears a buffer.
+   *
+   * @param channel The channel to write to.
+   * @param out     The buffer to write.
+   * @throws IOException If writing fails.
+   */
+  private static void flush(FileChannel channel, ByteBuffer out) throws IOException {
+    out.flip();
+    while (out.hasRemaining()) channel.write(out);
+    out.clear();
+  }
+
+  /**
+   * Cuts a name to the longest prefix that fits in a row, without splitting a character. The Leaderboard cuts names
+   * before it indexes or saves them, so a player keeps the same name after their results are compacted.
+   *
+   * @param name The name.
+   * @return The name itself if it fits, or its longest prefix of whole characters that does.
+   */
+  static String fitName(String name) {
+    if (name.length() * 3 <= MAX_NAME_BYTES) return name; // fits even if every char takes 3 bytes
+    int bytes = 0;
+    for (int i = 0; i < name.length(); ) {
+      int c = name.codePointAt(i);
+      bytes += c < 0x80 ? 1 : c < 0x800 ? 2 : c < 0x10000 ? 3 : 4;
+      if (bytes > MAX_NAME_BYTES) return name.substring(0, i);
+      i += Character.charCount(c);
+    }
+    return name;
+  }
+
+  /**
+   * Encodes a GameResult as a fixed-width row. Names longer than the row allows are cut by fitName().
+   *
+   * @param out    The buffer to write the row to.
+   * @param result The GameResult to encode.
+   */
+  private static void putRow(ByteBuffer out, GameResult result) {
+    byte[] name = fitName(result.getPlayer().getName()).getBytes(StandardCharsets.UTF_8);
+    int start = out.position();
+    out.putInt(result.getScore());
+    out.put((byte) name.length);
+    out.put(name);
+    while (out.position() < start + ROW_BYTES) out.put((byte) 0);
+  }
+}
\ No newline at end of file
@@ -0,0 +1,365 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.zip.CRC32;
+
+/**
+ * Saves the GameResults of a Leaderboard to a directory, so that they survive a restart.
+ * <p>
+ * New results are appended to a checksummed log by a background writer thread. The writer takes every result that
+ * is waiting at once and writes and syncs them together (group commit), so a burst of finished games costs a single
+ * disk sync. Once the log holds enough results, they are compacted into a new LeaderboardSnapshot and a new log is
+ * started. Logs and snapshots are numbered by generation and a snapshot records the first log it does not include,
+ * so a crash at any point leaves either the old or the new snapshot with its logs intact.
+ * <p>
+ * On startup the newest valid snapshot is mapped and only the logs written after it are replayed. A log record that
+ * is torn or fails its checksum ends the replay of that log.
+ * <p>
+ * Log record: payload length (int), CRC32 of the payload (int), payload: score (int), name (UTF-8).
+ *
+ * @author Alex
+ */
+public class LeaderboardStore {
+  /**
+   * Number of logged results after which they are compacted into a new snapshot.
+   */
+  public static final int DEFAULT_COMPACT_THRESHOLD = 100_000;
+
+  private static final int LOG_MAGIC = 0x46424c4c; // "FBLL"
+  private static final int LOG_VERSION = 1;
+  private static final int MAX_BATCH = 4096;
+  private static final GameResult CLOSE = new GameResult(null, -1); // tells the writer to stop
+
+  private final Path directory;
+  private final int compactThreshold;
+  private final LinkedBlockingQueue<GameResult> pending = new LinkedBlockingQueue<GameResult>();
+  private final ArrayList<GameResult> tail = new ArrayList<GameResult>(); // results logged since the snapshot
+  private final Thread writer;
+  private LeaderboardSnapshot snapshot;
+  private long snapshotGeneration;
+  private long logGeneration;
+  private FileChannel log;
+  private long appended;
+  private long written;
+  private volatile boolean failed;
+
+  /**
+   * Opens the store in a directory, creating the directory if needed, and reads back what was saved before.
+   *
+   * @param directory        The directory holding the snapshot and log files.
+   * @param compactThreshold Number of logged results after which they are compacted into a new snapshot.
+   * @throws IOException If the directory or the current log cannot be opened.
+   */
+  public LeaderboardStore(Path directory, int compactThreshold) throws IOException {
+    this.directory = directory;
+    this.compactThreshold = compactThreshold;
+    Files.createDirectories(directory);
+
+    TreeMap<Long, Path> snapshots = new TreeMap<Long, Path>();
+    TreeMap<Long, Path> logs = new TreeMap<Long, Path>();
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "leaderboard-*")) {
+      for (Path file : files) {
+        String name = file.getFileName().toString();
+        if (name.endsWith(".snap")) snapshots.put(generation(name), file);
+        else if (name.endsWith(".log")) logs.put(generation(name), file);
+      }
+    }
+
+    // use the newest snapshot that was completely written
+    for (Long generation : snapshots.descendingKeySet()) {
+      try {
+        snapshot = new LeaderboardSnapshot(snapshots.get(generation));
+        snapshotGeneration = generation;
+        break;
+      } catch (IOException e) {
+        System.err.println("Skipping leaderboard snapshot: " + e.getMessage());
+      }
+    }
+    long firstLog = snapshot == null ? 0 : snapshot.getNextLog();
+    logGeneration = firstLog;
+    long intact = 0;
+    for (Long generation : logs.keySet()) {
+      if (generation >= firstLog) {
+        intact = replay(logs.get(generation));
+        logGeneration = generation;
+      }
+    }
+    deleteOlderThan(snapshotGeneration, firstLog);
+
+    log = openLog(logGeneration, intact);
+    writer = new Thread(this::writeLoop, "Leaderboard writer");
+    writer.setDaemon(true);
+    writer.start();
+  }
+
+  /**
+   * Returns the generation number of a snapshot or log file.
+   *
+   * @param name The file name, such as leaderboard-12.log.
+   * @return The generation, or -1 if the name has none.
+   */
+  private static long generation(String name) {
+    try {
+      return Long.parseLong(name.substring("leaderboard-".length(), name.lastIndexOf('.')));
+    } catch (NumberFormatException | StringIndexOutOfBoundsException e) {
+      return -1;
+    }
+  }
+
+  /**
+   * Returns the snapshot the store was opened with.
+   *
+   * @return The snapshot, or null if nothing was compacted yet.
+   */
+  public LeaderboardSnapshot getSnapshot() {
+    return snapshot;
+  }
+
+  /**
+   * Returns the results that were logged after the snapshot, in the order they were added.
+   *
+   * @return The logged results replayed at startup.
+   */
+  public List<GameResult> getReplayed() {
+    return new ArrayList<GameResult>(tail);
+  }
+
+  /**
+   * Reads every intact record of a log into the tail.
+   *
+   * @param file The log file.
+   * @return The length of the intact part of the log: its header and every complete, correctly checksummed record,
+   * or 0 if not even the header is valid.
+   * @throws IOException If the file cannot be read.
+   */
+  private long replay(Path file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      ByteBuffer in = ByteBuffer.allocate((int) Math.min(channel.size(), Integer.MAX_VALUE))
+        .order(ByteOrder.LITTLE_ENDIAN);
+      while (in.hasRemaining()) {
+        if (channel.read(in) < 0) break;
+      }
+      in.flip();
+      if (in.remaining() < 8 || in.getInt() != LOG_MAGIC || in.getInt() != LOG_VERSION) return 0;
+      CRC32 crc = new CRC32();
+      int intact = in.position();
+      while (in.remaining() >= 8) {
+        int length = in.getInt();
+        int checksum = in.getInt();
+        if (length < 4 || length > in.remaining()) break;
+        crc.reset();
+        crc.update(in.array(), in.position(), length);
+        if ((int) crc.getValue() != checksum) break;
+        int score = in.getInt();
+        String name = new String(in.array(), in.position(), length - 4, StandardCharsets.UTF_8);
+        in.position(in.position() + length - 4);
+        tail.add(new GameResult(new Player(name), score));
+        intact = in.position();
+      }
+      return intact;
+    }
+  }
+
+  /**
+   * Opens a log for appending, writing its header if it is new. Anything after the intact part of an existing log,
+   * such as a record torn by a crash, is cut off so that new records follow the last intact one.
+   *
+   * @param generation The generation of the log.
+   * @param intact     The length of the intact part of the log, 0 to start it over.
+   * @return The open log.
+   * @throws IOException If the log cannot be opened.
+   */
+  private FileChannel openLog(long generation, long intact) throws IOException {
+    FileChannel channel = FileChannel.open(logPath(generation),
+      StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+    if (intact == 0) {
+      ByteBuffer header = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN).putInt(LOG_MAGIC).putInt(LOG_VERSION);
+      header.flip();
+      channel.truncate(0);
+      while (header.hasRemaining()) channel.write(header, 8 - header.remaining());
+      intact = 8;
+    }
+    channel.truncate(intact);
+    channel.position(intact);
+    return channel;
+  }
+
+  /**
+   * Returns the path of a log.
+   *
+   * @param generation The generation of the log.
+   * @return The path of the log file.
+   */
+  private Path logPath(long generation) {
+    return directory.resolve("leaderboard-" + generation + ".log");
+  }
+
+  /**
+   * Returns the path of a snapshot.
+   *
+   * @param generation The generation of the snapshot.
+   * @return The path of the snapshot file.
+   */
+  private Path snapshotPath(long generation) {
+    return directory.resolve("leaderboard-" + generation + ".snap");
+  }
+
+  /**
+   * Deletes the snapshots and logs that a newer snapshot has replaced. Files that are still mapped may not be
+   * deletable on some systems; they are left for the next startup.
+   *
+   * @param snapshotGeneration The generation of the snapshot in use.
+   * @param firstLog           The first log generation still needed.
+   */
+  private void deleteOlderThan(long snapshotGeneration, long firstLog) {
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "leaderboard-*")) {
+      for (Path file : files) {
+        String name = file.getFileName().toString();
+        long generation = generation(name);
+        if ((name.endsWith(".snap") && generation < snapshotGeneration) || (name.endsWith(".log") && generation < firstLog)) {
+          try {
+            Files.deleteIfExists(file);
+          } catch (IOException e) {
+            // still in use, try again next time
+          }
+        }
+      }
+    } catch (IOException e) {
+      // nothing to clean up
+    }
+  }
+
+  /**
+   * Queues a GameResult to be saved. Returns immediately; the result is written by the background writer.
+   *
+   * @param result The GameResult to save.
+   */
+  public void append(GameResult result) {
+    synchronized (this) {
+      appended++;
+    }
+    pending.add(result);
+  }
+
+  /**
+   * Waits until every GameResult queued so far has been written and synced to disk.
+   *
+   * @throws InterruptedException If the thread is interrupted while waiting.
+   */
+  public synchronized void flush() throws InterruptedException {
+    long target = appended;
+    while (written < target && !failed && writer.isAlive()) {
+      wait(100);
+    }
+  }
+
+  /**
+   * Writes all queued GameResults and stops the background writer.
+   */
+  public void close() {
+    pending.add(CLOSE);
+    try {
+      writer.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    try {
+      log.close();
+    } catch (IOException e) {
+      System.err.println("Could not close the leaderboard log: " + e.getMessage());
+    }
+  }
+
+  /**
+   * Writes queued GameResults in batches until the store is closed.
+   */
+  private void writeLoop() {
+    ArrayList<GameResult> batch = new ArrayList<GameResult>();
+    ByteBuffer out = ByteBuffer.allocate(64 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+    CRC32 crc = new CRC32();
+    boolean closing = false;
+    while (!closing) {
+      try {
+        batch.add(pending.take());
+      } catch (InterruptedException e) {
+        return;
+      }
+      pending.drainTo(batch, MAX_BATCH - 1);
+      closing = batch.remove(CLOSE);
+
+      try {
+        if (!failed) {
+          for (GameResult result : batch) {
+            byte[] name = result.getPlayer().getName().getBytes(StandardCharsets.UTF_8);
+            if (out.remaining() < 12 + name.length) {
+              writeFully(out);
+              if (out.capacity() < 12 + name.length) out = ByteBuffer.allocate(12 + name.length).order(ByteOrder.LITTLE_ENDIAN);
+            }
+            int start = out.position();
+            out.putInt(4 + name.length).putInt(0).putInt(result.getScore()).put(name);
+            crc.reset();
+            crc.update(out.array(), start + 8, 4 + name.length);
+            out.putInt(start + 4, (int) crc.getValue());
+          }
+          writeFully(out);
+          log.force(false);
+          tail.addAll(batch);
+          if (tail.size() >= compactThreshold) compact();
+        }
+      } catch (IOException e) {
+        System.err.println("Could not save the leaderboard, new results will be lost: " + e.getMessage());
+        failed = true;
+      }
+
+      synchronized (this) {
+        written += batch.size();
+        notifyAll();
+      }
+      batch.clear();
+    }
+  }
+
+  /**
+   * Writes out and clears a buffer at the end of the log.
+   *
+   * @param out The buffer to write.
+   * @throws IOException If writing fails.
+   */
+  private void writeFully(ByteBuffer out) throws IOException {
+    out.flip();
+    while (out.hasRemaining()) log.write(out);
+    out.clear();
+  }
+
+  /**
+   * Folds the logged results into a new snapshot and starts a new log.
+   *
+   * @throws IOException If the snapshot or the new log cannot be written.
+   */
+  private void compact() throws IOException {
+    long nextLog = logGeneration + 1;
+    long generation = snapshotGeneration + 1;
+    Path file = snapshotPath(generation);
+    Files.deleteIfExists(file); // left over from a compaction that crashed
+    LeaderboardSnapshot.write(file, nextLog, snapshot, tail);
+
+    FileChannel newLog = openLog(nextLog, 0);
+    log.close();
+    log = newLog;
+    logGeneration = nextLog;
+    snapshot = new LeaderboardSnapshot(file);
+    snapshotGeneration = generation;
+    tail.clear();
+    deleteOlderThan(snapshotGeneration, logGeneration);
+  }
+}
\ No newline at end of file
@@ -0,0 +1,105 @@
+import javax.swing.*;
+import javax.swing.table.AbstractTableModel;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A table of the results of a Leaderboard, from the highest to the lowest score, that reads rows as the table
+ * shows them.
+ * <p>
+ * Nothing is copied up front: a JTable only asks for the cells it paints, and those are read from the Leaderboard a
+ * page at a time and formatted on request, so showing a leaderboard of a million results costs about the same as
+ * showing a few dozen. The model listens to the Leaderboard and tells the table about each result added, on the event
+ * dispatch thread, so an open window stays current without reloading. Call close() once the table is no longer shown.
+ *
+ * @author Dougy
+ */
+class LeaderboardTableModel extends AbstractTableModel implements Leaderboard.Listener {
+  /**
+   * Number of rows read from the Leaderboard at once.
+   */
+  static final int PAGE_SIZE = 128;
+  /**
+   * Number of results added between two updates of the table above which the table is reloaded instead.
+   */
+  private static final int MAX_INSERT_EVENTS = 64;
+  private static final String[] COLUMN_NAMES = {"Player Name", "High Score"};
+
+  private final Leaderboard leaderboard;
+  private final ConcurrentLinkedQueue<int[]> added = new ConcurrentLinkedQueue<int[]>(); // {index, size} per result
+  private final AtomicBoolean updateQueued = new AtomicBoolean();
+  private int rowCount; // the rows the table knows about
+  private int pageStart;
+  private ArrayList<GameResult> page = new ArrayList<GameResult>(); // the rows from pageStart on
+
+  /**
+   * Creates a table of a Leaderboard and starts listening to it. Must be called on the event dispatch thread.
+   *
+   * @param leaderboard The Leaderboard.
+   */
+  LeaderboardTableModel(Leaderboard leaderboard) {
+    this.leaderboard = leaderboard;
+    leaderboard.addListener(this);
+    // the results added from now on are told to this model, those counted here are skipped
+    rowCount = leaderboard.size();
+  }
+
+  /**
+   * Stops listening to the Leaderboard.
+   */
+  void close() {
+    leaderboard.removeListener(this);
+  }
+
+  @Override
+  public int getRowCount() {
+    return rowCount;
+  }
+
+  @Override
+  public int getColumnCount() {
+    return COLUMN_NAMES.length;
+  }
+
+  @Override
+  public String getColumnName(int column) {
+    return COLUMN_NAMES[column];
+  }
+
+  @Override
+  public Object getValueAt(int row, int column) {
+    if (row < pageStart || row >= pageStart + page.size()) {
+      pageStart = row - row % PAGE_SIZE;
+      page = leaderboard.getResults(pageStart, PAGE_SIZE);
+    }
+    GameResult result = page.get(row - pageStart);
+    return column == 0 ? Leaderboard.concatenatedName(result.getPlayer()) : String.valueOf(result.getScore());
+  }
+
+  @Override
+  public void resultAdded(GameResult result, int index, int size) {
+    added.add(new int[]{index, size});
+    if (updateQueued.compareAndSet(false, true)) SwingUtilities.invokeLater(this::update);
+  }
+
+  /**
+   * Tells the table about the results added since the last update, on the event dispatch thread.
+   */
+  private void update() {
+    updateQueued.set(false);
+    page = new ArrayList<GameResult>(); // every row after an insert moved down
+    if (added.size() > MAX_INSERT_EVENTS) {
+      added.clear();
+      rowCount = leaderboard.size();
+      fireTableDataChanged();
+      return;
+    }
+    int[] insert;
+    while ((insert = added.poll()) != null) {
+      if (insert[1] <= rowCount) continue; // counted when the model was created
+      rowCount = insert[1];
+      fireTableRowsInserted(insert[0], insert[0]);
+    }
+  }
+}
\ No newline at end of file
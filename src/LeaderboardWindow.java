@@ -0,0 +1,48 @@
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+
+/**
+ * A window displaying a Leaderboard. It reads only the rows it shows, and shows results as they are added.
+ *
+ * @author Alex, Armeet, David
+ */
+public class LeaderboardWindow extends JFrame {
+  /**
+   * Creates a window displaying a Leaderboard.
+   *
+   * @param leaderboard The Leaderboard to display.
+   */
+  public LeaderboardWindow(Leaderboard leaderboard) {
+    // Set up the window layout
+    setSize(400, 400);
+    setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+    setLayout(new GridLayout(0, 1, 0, 10));
+
+    // Set up the JPanel for the leaderboard
+    JLabel pageLabel = new JLabel("Leaderboard");
+    pageLabel.setVerticalAlignment(JLabel.TOP);
+    pageLabel.setHorizontalAlignment(JLabel.CENTER);
+    pageLabel.setFont(new Font("Sans Serif", Font.BOLD, 30));
+
+    LeaderboardTableModel model = new LeaderboardTableModel(leaderboard);
+    JTable pageTable = new JTable(model);
+    pageTable.setPreferredScrollableViewportSize(new Dimension(500, 100));
+    pageTable.setFillsViewportHeight(true);
+
+    JScrollPane scroll = new JScrollPane(pageTable);
+
+    // Stop updating the table once the window is closed
+    addWindowListener(new WindowAdapter() {
+      @Override
+      public void windowClosed(WindowEvent e) {
+        model.close();
+      }
+    });
+
+    // Display the final leaderboard window
+    add(pageLabel);
+    add(scroll);
+  }
+}
\ No newline at end of file
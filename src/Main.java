@@ -1,18 +1,218 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
 /**
  * The driver class.
  *
  * @author David
  */
 class Main {
-  // The leaderboard for the game.
-  public static Leaderboard leaderboard = new Leaderboard();
+  // The leaderboard for the game, saved in the directory given by the fireball.data property.
+  public static Leaderboard leaderboard;
+  // What the AI learned about each player, saved in the models directory inside it.
+  public static AIModelStore models;
+  // How much the AI plays the precomputed equilibrium instead of adapting, from the fireball.ai property.
+  public static double equilibriumWeight;
+  // How many of the player's last moves the AI learns habits from, from the fireball.ai.habits property; 0 for none.
+  public static int habitOrder;
+  // Where every turn played is recorded, in the replays directory inside it, or null if replays are turned off.
+  public static ReplayWriter replays;
+
+  /**
+   * Opens the saved data of the game and reads its settings, then publishes the Metrics.
+   */
+  private static void open() {
+    leaderboard = openLeaderboard();
+    models = openModels();
+    equilibriumWeight = readEquilibriumWeight();
+    habitOrder = readHabitOrder();
+    replays = openReplays();
+    startMetrics();
+  }
+
+  /**
+   * Opens the saved leaderboard, or a blank one that isn't saved if it cannot be opened.
+   *
+   * @return The leaderboard for the game.
+   */
+  private static Leaderboard openLeaderboard() {
+    try {
+      Leaderboard saved = Leaderboard.open(Paths.get(System.getProperty("fireball.data", "data")));
+      Runtime.getRuntime().addShutdownHook(new Thread(saved::close));
+      return saved;
+    } catch (IOException e) {
+      System.err.println("Could not open the saved leaderboard, results won't be saved: " + e.getMessage());
+      return new Leaderboard();
+    }
+  }
+
+  /**
+   * Opens the saved AI models, or a store that doesn't save them if their directory cannot be opened.
+   *
+   * @return The AI models of the players.
+   */
+  private static AIModelStore openModels() {
+    Path directory = Paths.get(System.getProperty("fireball.data", "data"), "models");
+    try {
+      AIModelStore saved = new AIModelStore(directory, AIModelStore.DEFAULT_MAX_RESIDENT_BYTES);
+      Runtime.getRuntime().addShutdownHook(new Thread(saved::close));
+      return saved;
+    } catch (IOException e) {
+      System.err.println("Could not open the saved AI models, they won't be saved: " + e.getMessage());
+      return new AIModelStore();
+    }
+  }
+
+  /**
+   * Opens a new replay file for this run, unless the fireball.replays property is "false".
+   *
+   * @return The replay, or null if replays are turned off or the file cannot be created.
+   */
+  private static ReplayWriter openReplays() {
+    if (System.getProperty("fireball.replays", "true").equals("false")) return null;
+    Path directory = Paths.get(System.getProperty("fireball.data", "data"), "replays");
+    String name = "replay-" + System.currentTimeMillis() + "-" + ProcessHandle.current().pid() + ".fbr";
+    try {
+      Files.createDirectories(directory);
+      ReplayWriter saved = new ReplayWriter(directory.resolve(name));
+      Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+        try {
+          saved.close();
+        } catch (IOException e) {
+          System.err.println("Could not finish the replay: " + e.getMessage());
+        }
+      }));
+      return saved;
+    } catch (IOException e) {
+      System.err.println("Could not create the replay, matches won't be recorded: " + e.getMessage());
+      return null;
+    }
+  }
+
+  /**
+   * Reads the AI mode: "adaptive" (the default) learns the player's habits, "equilibrium" plays the precomputed
+   * equilibrium strategy, and a number between 0 and 1 blends the two. The equilibrium table is loaded right away when
+   * it will be used.
+   *
+   * @return The share of the AI's moves picked from the equilibrium.
+   */
+  private static double readEquilibriumWeight() {
+    String mode = System.getProperty("fireball.ai", "adaptive");
+    double weight;
+    if (mode.equals("adaptive")) {
+      weight = 0;
+    } else if (mode.equals("equilibrium")) {
+      weight = 1;
+    } else {
+      try {
+        weight = Double.parseDouble(mode);
+      } catch (NumberFormatException e) {
+        weight = -1;
+      }
+      if (!(weight >= 0 && weight <= 1)) {
+        System.err.println("Unknown AI mode " + mode + ", using the adaptive AI");
+        weight = 0;
+      }
+    }
+    if (weight > 0) EquilibriumTable.standard();
+    return weight;
+  }
+
+  /**
+   * Reads how many of the player's last moves the AI learns habits from, see AI.setHabitOrder().
+   *
+   * @return The order, or 0 if the fireball.ai.habits property is not set or not a valid order.
+   */
+  private static int readHabitOrder() {
+    String property = System.getProperty("fireball.ai.habits", "0");
+    int order;
+    try {
+      order = Integer.parseInt(property);
+    } catch (NumberFormatException e) {
+      order = -1;
+    }
+    if (order < 0 || order > HabitModel.MAX_ORDER) {
+      System.err.println("Unknown habit order " + property + ", the AI won't learn habits");
+      order = 0;
+    }
+    return order;
+  }
+
+  /**
+   * Publishes the Metrics, including the size of the leaderboard, over JMX, and prints them every few seconds if the
+   * fireball.metrics.dump property gives the number of seconds.
+   */
+  private static void startMetrics() {
+    Metrics.watch(leaderboard);
+    Metrics.register();
+    long seconds = readDumpSeconds();
+    if (seconds > 0) Metrics.startDump(seconds);
+  }
+
+  /**
+   * Reads how often the Metrics are printed.
+   *
+   * @return The number of seconds between dumps, or 0 if the fireball.metrics.dump property is not set or not a
+   *   positive number.
+   */
+  private static long readDumpSeconds() {
+    String property = System.getProperty("fireball.metrics.dump");
+    if (property == null) return 0;
+    long seconds;
+    try {
+      seconds = Long.parseLong(property);
+    } catch (NumberFormatException e) {
+      seconds = -1;
+    }
+    if (seconds <= 0) {
+      System.err.println("Unknown metrics dump interval " + property + ", the metrics won't be printed");
+      seconds = 0;
+    }
+    return seconds;
+  }
 
   /**
-   * Main method that creates the launcher for the game.
+   * Main method that creates the launcher for the game, plays in the terminal when the first argument is "cli", plays
+   * a free-for-all against AIs in the terminal when it is "ffa", or starts a GameServer when it is "server".
    *
-   * @param args Arguments given when this program is run.
+   * @param args Arguments given when this program is run: nothing, {@code cli}, {@code ffa [participants]} or
+   *             {@code server [port] [maxSessions]}.
+   * @throws IOException If the server cannot be started or the terminal cannot be read.
    */
-  public static void main(String[] args) {
+  public static void main(String[] args) throws IOException {
+    if (args.length > 0 && args[0].equals("cli")) {
+      // ask for the name first and open the saved data while the user types it
+      TerminalGame game = new TerminalGame(new BufferedReader(new InputStreamReader(System.in)), System.out);
+      game.start();
+      open();
+      game.run();
+      return;
+    }
+    if (args.length > 0 && args[0].equals("ffa")) {
+      int participants = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+      if (participants < 2) throw new IllegalArgumentException("A free-for-all needs at least two participants");
+      TerminalGame game = new TerminalGame(new BufferedReader(new InputStreamReader(System.in)), System.out);
+      game.start();
+      open();
+      game.runFreeForAll(participants);
+      return;
+    }
+    open();
+    if (args.length > 0 && args[0].equals("server")) {
+      int port = args.length > 1 ? Integer.parseInt(args[1]) : GameServer.DEFAULT_PORT;
+      int maxSessions = args.length > 2 ? Integer.parseInt(args[2]) : GameServer.DEFAULT_MAX_SESSIONS;
+      GameServer server = new GameServer(port, leaderboard, models, maxSessions, GameServer.DEFAULT_IDLE_TIMEOUT);
+      server.setEquilibriumWeight(equilibriumWeight);
+      server.setHabitOrder(habitOrder);
+      server.setReplayWriter(replays);
+      System.out.println("Fireball server listening on port " + server.getPort());
+      server.run();
+      return;
+    }
     Launcher launcher = new Launcher();
     launcher.setVisible(true);
   }
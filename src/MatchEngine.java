@@ -0,0 +1,191 @@
+/**
+ * Runs a single Fireball match between a Player and an AI without any GUI.
+ * <p>
+ * The engine owns both Players, the AI model and the round/turn counters, and resolves one turn per call to
+ * {@link #step(Move)}. Views such as Game only need to forward the user's chosen Move and display the result.
+ *
+ * @author David, Dougy
+ */
+public class MatchEngine {
+  /**
+   * The result of a single turn.
+   */
+  public enum Outcome {
+    /**
+     * Neither Player won, the round continues.
+     */
+    CONTINUE,
+    /**
+     * The Player won the round, a new round starts.
+     */
+    ROUND_WON,
+    /**
+     * The Player lost the round, which ends the match.
+     */
+    MATCH_LOST
+  }
+
+  private final Player player;
+  private final AI ai;
+  private int round;
+  private int turn;
+  private Move lastAiMove;
+  private boolean over;
+  private ReplayWriter replay; // records every turn, or null
+  private long session;
+
+  /**
+   * Creates a new match for a Player with the given name against a fresh AI.
+   *
+   * @param playerName The name of the Player.
+   */
+  public MatchEngine(String playerName) {
+    this(new Player(playerName), new AI());
+  }
+
+  /**
+   * Creates a new match between the given Player and AI.
+   *
+   * @param player The Player that the user plays as.
+   * @param ai     The AI that the user plays against.
+   */
+  public MatchEngine(Player player, AI ai) {
+    this.player = player;
+    this.ai = ai;
+    round = 1;
+    turn = 1;
+  }
+
+  /**
+   * Records the match and every turn played from now on.
+   *
+   * @param replay  The replay to record into.
+   * @param session The session the match is played in, e.g. from replay.newSession().
+   */
+  public void record(ReplayWriter replay, long session) {
+    this.replay = replay;
+    this.session = session;
+    replay.matchStart(session, player.getName(), player.getRules().getChargeCap());
+  }
+
+  /**
+   * Plays one turn: the AI picks its move, both moves are applied and the turn is resolved.
+   *
+   * @param playerMove The Move the Player chose for this turn.
+   * @return The Outcome of the turn.
+   * @throws IllegalStateException If the match is already over.
+   */
+  public Outcome step(Move playerMove) {
+    if (over) throw new IllegalStateException("The match is already over");
+    int pCharge = player.getCharge();
+    int aiCharge = ai.getCharge();
+
+    // The AI is not cheating >_<
+    Move aiMove = ai.makeMove(pCharge, aiCharge);
+    int actionIndex = actionIndex(playerMove);
+    if (actionIndex >= 0) ai.updateUsersMove(pCharge, aiCharge, actionIndex);
+
+    // Apply move cost and add Move to both player's move histories
+    player.useMove(playerMove);
+    ai.useMove(aiMove);
+    lastAiMove = aiMove;
+
+    byte result = player.getRules().resolve(playerMove, aiMove);
+    Outcome outcome = result == Rules.WIN ? Outcome.ROUND_WON : result == Rules.LOSE ? Outcome.MATCH_LOST
+      : Outcome.CONTINUE;
+    if (replay != null) replay.turn(session, round, turn, playerMove, aiMove, pCharge, aiCharge, outcome);
+    if (Metrics.ENABLED) Metrics.turnPlayed(outcome);
+    if (outcome == Outcome.ROUND_WON) {
+      round++;
+      turn = 1;
+      player.setCharge(0);
+      ai.setCharge(0);
+      return outcome;
+    }
+    turn++;
+    if (outcome == Outcome.MATCH_LOST) over = true;
+    return outcome;
+  }
+
+  /**
+   * Returns the AI model's index for a Move (0 for fireball, 1 for shield, 2 for charge).
+   *
+   * @param move The Move to look up.
+   * @return The index of the Move, or -1 if the AI does not model it.
+   */
+  static int actionIndex(Move move) {
+    switch (move.getId()) {
+      case Move.FIREBALL_ID:
+        return 0;
+      case Move.SHIELD_ID:
+        return 1;
+      case Move.CHARGE_ID:
+        return 2;
+      default:
+        return -1;
+    }
+  }
+
+  /**
+   * Returns the Player that the user plays as.
+   *
+   * @return The Player.
+   */
+  public Player getPlayer() {
+    return player;
+  }
+
+  /**
+   * Returns the AI that the user plays against.
+   *
+   * @return The AI.
+   */
+  public AI getAI() {
+    return ai;
+  }
+
+  /**
+   * Returns the current round, starting from 1.
+   *
+   * @return The current round.
+   */
+  public int getRound() {
+    return round;
+  }
+
+  /**
+   * Returns the turn about to be played in the current round, starting from 1.
+   *
+   * @return The upcoming turn.
+   */
+  public int getTurn() {
+    return turn;
+  }
+
+  /**
+   * Returns the Move the AI used in the last turn.
+   *
+   * @return The AI's last Move, or null if no turn has been played.
+   */
+  public Move getLastAiMove() {
+    return lastAiMove;
+  }
+
+  /**
+   * Returns whether the match is over.
+   *
+   * @return Whether the Player has lost a round.
+   */
+  public boolean isOver() {
+    return over;
+  }
+
+  /**
+   * Returns the user's score, which is the number of rounds they won.
+   *
+   * @return The number of rounds won.
+   */
+  public int getScore() {
+    return round - 1;
+  }
+}
\ No newline at end of file
@@ -0,0 +1,194 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import jdk.jfr.FlightRecorder;
+
+/**
+ * Counts turns, rounds and games and measures where the time of a turn goes: the whole turn, AI.makeMove(),
+ * solving the AI's model and Leaderboard.addResult().
+ * <p>
+ * Recording never allocates. Turns and leaderboard updates are all timed, but the AI's calls take well under a
+ * microsecond, so reading the clock around each of them would cost as much as the call itself; every AI times one call
+ * in SAMPLE_MASK + 1 instead, which gives the same percentiles. Metrics are on unless the fireball.metrics property is
+ * "false", in which case the timing code is compiled away.
+ * <p>
+ * register() publishes the metrics as MBeans under the "fireball" domain, and startDump() prints them periodically.
+ * <p>
+ * The Flight Recorder events of the game are only created while Flight Recorder runs, see recording().
+ *
+ * @author Dougy
+ */
+public class Metrics implements MetricsMBean {
+  /**
+   * Whether metrics are recorded, from the fireball.metrics property.
+   */
+  public static final boolean ENABLED = !System.getProperty("fireball.metrics", "true").equals("false");
+  /**
+   * An AI times the calls whose count has these bits clear.
+   */
+  static final int SAMPLE_MASK = 255;
+
+  /**
+   * The time to play a turn, as seen by the Game window or the GameServer.
+   */
+  public static final LatencyHistogram TURN = new LatencyHistogram();
+  /**
+   * The time of AI.makeMove(), including solving the model.
+   */
+  public static final LatencyHistogram MAKE_MOVE = new LatencyHistogram();
+  /**
+   * The time to solve the AI's model, in AI.computeProbability() or on demand in AI.makeMove().
+   */
+  public static final LatencyHistogram COMPUTE_PROBABILITY = new LatencyHistogram();
+  /**
+   * The time of Leaderboard.addResult().
+   */
+  public static final LatencyHistogram ADD_RESULT = new LatencyHistogram();
+  /**
+   * The time from a render of the game screen until it is painted.
+   */
+  public static final LatencyHistogram FRAME = new LatencyHistogram();
+
+  private static final Metrics INSTANCE = new Metrics();
+  private static final LongAdder TURNS = new LongAdder();
+  private static final LongAdder ROUNDS_WON = new LongAdder();
+  private static final LongAdder GAMES = new LongAdder();
+  private static volatile Leaderboard leaderboard;
+  private static boolean registered;
+
+  private Metrics() {
+  }
+
+  /**
+   * Counts a turn that was played.
+   *
+   * @param outcome The outcome of the turn.
+   */
+  static void turnPlayed(MatchEngine.Outcome outcome) {
+    TURNS.increment();
+    if (outcome == MatchEngine.Outcome.ROUND_WON) {
+      ROUNDS_WON.increment();
+    } else if (outcome == MatchEngine.Outcome.MATCH_LOST) {
+      GAMES.increment();
+    }
+  }
+
+  /**
+   * Sets the Leaderboard whose size is reported.
+   *
+   * @param watched The Leaderboard.
+   */
+  public static void watch(Leaderboard watched) {
+    leaderboard = watched;
+  }
+
+  /**
+   * Publishes the metrics as MBeans: fireball:type=Metrics for the counters and fireball:type=Latency,name=... for
+   * each latency. Does nothing when metrics are off or already published.
+   */
+  public static synchronized void register() {
+    if (!ENABLED || registered) return;
+    registered = true;
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    try {
+      server.registerMBean(INSTANCE, new ObjectName("fireball:type=Metrics"));
+      server.registerMBean(TURN, new ObjectName("fireball:type=Latency,name=turn"));
+      server.registerMBean(MAKE_MOVE, new ObjectName("fireball:type=Latency,name=makeMove"));
+      server.registerMBean(COMPUTE_PROBABILITY, new ObjectName("fireball:type=Latency,name=computeProbability"));
+      server.registerMBean(ADD_RESULT, new ObjectName("fireball:type=Latency,name=addResult"));
+      server.registerMBean(FRAME, new ObjectName("fireball:type=Latency,name=frame"));
+    } catch (JMException e) {
+      System.err.println("Could not publish the metrics: " + e.getMessage());
+    }
+  }
+
+  /**
+   * Returns whether Flight Recorder runs, i.e. whether the fireball events may be recorded. Creating the first event
+   * while it doesn't run sets up its event machinery anyway, which takes hundreds of milliseconds, so events are only
+   * created when this returns true. Flight Recorder started later, e.g. with jcmd, is noticed at once.
+   *
+   * @return Whether Flight Recorder runs.
+   */
+  static boolean recording() {
+    return FlightRecorder.isInitialized();
+  }
+
+  /**
+   * Prints the metrics to standard error every so often, on a daemon thread.
+   *
+   * @param seconds The number of seconds between dumps.
+   */
+  public static void startDump(long seconds) {
+    if (!ENABLED) return;
+    ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(task -> {
+      Thread thread = new Thread(task, "Metrics dump");
+      thread.setDaemon(true);
+      return thread;
+    });
+    timer.scheduleAtFixedRate(() -> System.err.println(INSTANCE.dump()), seconds, seconds, TimeUnit.SECONDS);
+  }
+
+  @Override
+  public long getTurns() {
+    return TURNS.sum();
+  }
+
+  @Override
+  public long getRoundsWon() {
+    return ROUNDS_WON.sum();
+  }
+
+  @Override
+  public long getGames() {
+    return GAMES.sum();
+  }
+
+  @Override
+  public int getLeaderboardSize() {
+    Leaderboard watched = leaderboard;
+    return watched == null ? 0 : watched.size();
+  }
+
+  @Override
+  public String dump() {
+    StringBuilder text = new StringBuilder(256);
+    text.append("turns ").append(getTurns()).append(", rounds won ").append(getRoundsWon())
+      .append(", games ").append(getGames()).append(", leaderboard ").append(getLeaderboardSize());
+    append(text, "turn", TURN);
+    append(text, "makeMove", MAKE_MOVE);
+    append(text, "computeProbability", COMPUTE_PROBABILITY);
+    append(text, "addResult", ADD_RESULT);
+    append(text, "frame", FRAME);
+    return text.toString();
+  }
+
+  /**
+   * Appends the percentiles of a latency, in microseconds.
+   *
+   * @param text    The text to append to.
+   * @param name    The name of the latency.
+   * @param latency The latency.
+   */
+  private static void append(StringBuilder text, String name, LatencyHistogram latency) {
+    text.append(" | ").append(name).append(" p50/p99/max ")
+      .append(String.format("%.1f/%.1f/%.1f us", latency.getP50() / 1e3, latency.getP99() / 1e3,
+        latency.getMax() / 1e3));
+  }
+
+  @Override
+  public void reset() {
+    TURNS.reset();
+    ROUNDS_WON.reset();
+    GAMES.reset();
+    TURN.reset();
+    MAKE_MOVE.reset();
+    COMPUTE_PROBABILITY.reset();
+    ADD_RESULT.reset();
+    FRAME.reset();
+  }
+}
\ No newline at end of file
@@ -0,0 +1,47 @@
+/**
+ * The view of the game's Metrics that JMX clients such as JConsole see. The latencies are separate
+ * LatencyHistogramMBeans.
+ *
+ * @author Dougy
+ */
+public interface MetricsMBean {
+  /**
+   * Returns the number of turns played.
+   *
+   * @return The number of turns.
+   */
+  long getTurns();
+
+  /**
+   * Returns the number of rounds the Players won.
+   *
+   * @return The number of rounds.
+   */
+  long getRoundsWon();
+
+  /**
+   * Returns the number of matches that ended.
+   *
+   * @return The number of matches.
+   */
+  long getGames();
+
+  /**
+   * Returns the number of results on the watched Leaderboard.
+   *
+   * @return The leaderboard size, or 0 if no Leaderboard is watched.
+   */
+  int getLeaderboardSize();
+
+  /**
+   * Returns every metric as one line of text.
+   *
+   * @return The metrics.
+   */
+  String dump();
+
+  /**
+   * Sets every counter and latency back to 0.
+   */
+  void reset();
+}
\ No newline at end of file
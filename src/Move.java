@@ -1,5 +1,3 @@
-import java.util.Objects;
-
 /**
  * The base class to store the details of any move that a Player may want to use,
  * as well as provide helper methods to determine the effects of moves being used against each other.
@@ -8,7 +6,28 @@ import java.util.Objects;
  */
 
 public class Move {
+  /**
+   * Id of the placeholder Move of a Player that has not moved yet.
+   */
+  public static final int NONE_ID = 0;
+  /**
+   * Id of Fireball.
+   */
+  public static final int FIREBALL_ID = 1;
+  /**
+   * Id of Shield.
+   */
+  public static final int SHIELD_ID = 2;
+  /**
+   * Id of Charge.
+   */
+  public static final int CHARGE_ID = 3;
+  /**
+   * Id of Super Fireball.
+   */
+  public static final int SUPER_FIREBALL_ID = 4;
 
+  private final int id;
   private final String name;
   private final String icon;
   private int cost;
@@ -17,37 +36,51 @@ public class Move {
    * Constructor with default values for the moves.
    */
   public Move() {
+    id = NONE_ID;
     name = "N/A";
     icon = "";
     cost = 0;
   }
 
   /**
-   * Constructor with given name, icon, and default (0) cost.
+   * Constructor with given id, name, icon, and default (0) cost.
    *
+   * @param id   Id of move, unique within its Rules.
    * @param name Name of move.
    * @param icon Icon of move.
    */
-  public Move(String name, String icon) {
+  public Move(int id, String name, String icon) {
     super();
+    this.id = id;
     this.name = name;
     this.icon = icon;
   }
 
   /**
-   * Constructor with given name, icon, and cost.
+   * Constructor with given id, name, icon, and cost.
    *
+   * @param id   Id of move, unique within its Rules.
    * @param name Name of move.
    * @param icon Icon of move.
    * @param cost Cost of move.
    */
-  public Move(String name, String icon, int cost) {
+  public Move(int id, String name, String icon, int cost) {
     super();
+    this.id = id;
     this.name = name;
     this.icon = icon;
     this.cost = cost;
   }
 
+  /**
+   * Returns the id of the move, which indexes it in its Rules.
+   *
+   * @return Id of the move.
+   */
+  public int getId() {
+    return id;
+  }
+
   /**
    * Returns the name of the move.
    *
@@ -77,22 +110,22 @@ public class Move {
   }
 
   /**
-   * Determines whether this move beats opponentMove.
+   * Determines whether this move beats opponentMove under the standard Rules.
    *
    * @param opponentMove The move to compare against.
    * @return Whether this move beats opponentMove.
    */
   public boolean win(Move opponentMove) {
-    return false;
+    return Rules.STANDARD.resolve(this, opponentMove) == Rules.WIN;
   }
 
   /**
-   * Determines whether this move loses to the opponentMove.
+   * Determines whether this move loses to the opponentMove under the standard Rules.
    *
    * @param opponentMove The move to compare against.
    * @return Whether this move loses to the opponentMove.
    */
   public boolean lose(Move opponentMove) {
-    return opponentMove.getName().equals(new SuperFireball().getName());
+    return Rules.STANDARD.resolve(this, opponentMove) == Rules.LOSE;
   }
 }
\ No newline at end of file
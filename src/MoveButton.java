@@ -0,0 +1,23 @@
+import javax.swing.*;
+
+/**
+ * A JButton with a simple setup to be linked to a specified Move.
+ */
+class MoveButton extends JButton {
+  private final Move MOVE;
+
+  public MoveButton(Move move) {
+    super(move.getName() + ' ' + move.getIcon() + " (" + move.getCost() * -1 + ")");
+    MOVE = move;
+    setActionCommand(MOVE.getName());
+  }
+
+  /**
+   * Returns the move that this MoveButton is representing.
+   *
+   * @return The move that this MoveButton is representing.
+   */
+  public Move getMove() {
+    return MOVE;
+  }
+}
\ No newline at end of file
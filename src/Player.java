@@ -2,12 +2,22 @@ import java.util.ArrayList;
 
 /**
  * Holds player information and move history. Also provides methods to facilitate easy gameplay implementation.
+ * <p>
+ * The move history is stored as one byte per Move (its id) and can be limited to a window of the latest Moves, in
+ * which case it is kept in a ring buffer and a Player takes constant memory however long it plays. The charge spent
+ * and the number of times each Move was used are kept as running totals, so they cover every Move ever used even when
+ * the history is limited, and reading them takes O(1) time.
  *
  * @author Armeet, David, Dougy
  */
 public class Player {
-  private final ArrayList<Move> moveHistory = new ArrayList<Move>();
   private final String name;
+  private final Rules rules; // decodes the Move ids in the history
+  private final int window; // number of Moves the history keeps, or 0 to keep every Move
+  private byte[] history; // Move ids; the Move used n-th is at n % history.length
+  private long moves; // number of Moves used, counting the Rules.NONE every history starts with
+  private final long[] useCounts; // useCounts[id] is the number of times the Move with that id was used
+  private int chargeSpent;
   private int charge;
 
   /**
@@ -16,9 +26,26 @@ public class Player {
    * @param name The name that the Player should have.
    */
   public Player(String name) {
+    this(name, Rules.STANDARD, 0);
+  }
+
+  /**
+   * Constructor that creates a Player with given name which only remembers its latest Moves.
+   *
+   * @param name   The name that the Player should have.
+   * @param rules  The Rules whose Moves the Player uses.
+   * @param window The number of latest Moves to keep in the move history, or 0 to keep every Move.
+   * @throws IllegalArgumentException If the window is negative.
+   */
+  public Player(String name, Rules rules, int window) {
+    if (window < 0) throw new IllegalArgumentException("Negative window: " + window);
     this.name = name;
+    this.rules = rules;
+    this.window = window;
+    history = new byte[window > 0 ? window : 8];
+    useCounts = new long[rules.size()];
     charge = 0;
-    moveHistory.add(new Move());
+    record(Rules.NONE);
   }
 
   /**
@@ -30,6 +57,24 @@ public class Player {
     return name;
   }
 
+  /**
+   * Returns the Rules whose Moves the player uses.
+   *
+   * @return The Rules.
+   */
+  public Rules getRules() {
+    return rules;
+  }
+
+  /**
+   * Returns the memory taken by the move history and the use counts.
+   *
+   * @return The number of bytes of their elements.
+   */
+  long getHistoryBytes() {
+    return history.length + useCounts.length * 8L;
+  }
+
   /**
    * Returns the charge of the player.
    *
@@ -52,19 +97,99 @@ public class Player {
    * Uses the given move - the Move is added to the player's move history, and player charge amount is changed appropriately.
    *
    * @param move - the Move the user chooses to perform.
+   * @throws IllegalArgumentException If the Move is not part of the Player's Rules.
    */
   public void useMove(Move move) {
+    record(move);
     charge -= move.getCost();
-    moveHistory.add(move);
+    chargeSpent += move.getCost();
+  }
+
+  /**
+   * Appends a Move to the move history and counts it.
+   *
+   * @param move The Move to record.
+   * @throws IllegalArgumentException If the Move is not part of the Player's Rules.
+   */
+  private void record(Move move) {
+    int id = move.getId();
+    if (id < 0 || id >= useCounts.length || rules.getMove(id) == null) {
+      throw new IllegalArgumentException("Move is not part of the rules: " + move.getName());
+    }
+    if (window == 0 && moves == history.length) {
+      byte[] grown = new byte[history.length * 2];
+      System.arraycopy(history, 0, grown, 0, history.length);
+      history = grown;
+    }
+    history[(int) (moves % history.length)] = (byte) id;
+    moves++;
+    useCounts[id]++;
   }
 
   /**
-   * Returns the move history of the player.
+   * Returns the move history of the player, oldest first. If the history is limited to a window, only the Moves in
+   * the window are returned. The list is a copy, built in time proportional to its length.
    *
    * @return ArrayList of past Moves made by the player
    */
   public ArrayList<Move> getMoveHistory() {
-    return moveHistory;
+    int length = getHistoryLength();
+    ArrayList<Move> list = new ArrayList<Move>(length);
+    for (int i = 0; i < length; i++) {
+      list.add(getMove(i));
+    }
+    return list;
+  }
+
+  /**
+   * Returns the number of Moves in the move history.
+   *
+   * @return The number of Moves kept, at most the window.
+   */
+  public int getHistoryLength() {
+    return (int) Math.min(moves, history.length);
+  }
+
+  /**
+   * Returns a Move of the move history.
+   *
+   * @param index The position of the Move in the history, where 0 is the oldest Move kept.
+   * @return The Move.
+   * @throws IndexOutOfBoundsException If the history has no Move at that position.
+   */
+  public Move getMove(int index) {
+    int length = getHistoryLength();
+    if (index < 0 || index >= length) throw new IndexOutOfBoundsException("Index " + index + " out of " + length);
+    return rules.getMove(history[(int) ((moves - length + index) % history.length)]);
+  }
+
+  /**
+   * Returns the Move the player used last.
+   *
+   * @return The last Move, or Rules.NONE if the player has not moved yet.
+   */
+  public Move getLastMove() {
+    return rules.getMove(history[(int) ((moves - 1) % history.length)]);
+  }
+
+  /**
+   * Returns the number of Moves the player ever used, including the Rules.NONE the history starts with.
+   *
+   * @return The number of Moves.
+   */
+  public long getMoveCount() {
+    return moves;
+  }
+
+  /**
+   * Returns the number of times the player used a Move.
+   *
+   * @param move The Move.
+   * @return The number of times it was used.
+   */
+  public long getUseCount(Move move) {
+    int id = move.getId();
+    return id >= 0 && id < useCounts.length ? useCounts[id] : 0;
   }
 
   /**
@@ -74,10 +199,6 @@ public class Player {
    * @return Amount of remaining charge
    */
   public int getRemainingCharge() {
-    int sum = 0;
-    for (Move cur : moveHistory) {
-      sum += cur.getCost();
-    }
-    return sum;
+    return chargeSpent;
   }
 }
\ No newline at end of file
@@ -0,0 +1,264 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Indexes the results of a Leaderboard by player: a PlayerProfile per player name, and the players ranked by their
+ * best score.
+ * <p>
+ * Profiles are kept in a hash map, so finding one and counting a result into it take O(1) time. The ranking keeps one
+ * bucket per best score, holding its players in the order they reached that score. When a player beats their best,
+ * they move from one bucket to the end of another: their old slot is emptied and buckets are compacted once half
+ * their slots are empty. A Fenwick tree over the slots of each bucket finds the player at a position in
+ * O(log n) time, so a page of k players takes O(s + log n + k), where s is the highest score.
+ * <p>
+ * PlayerIndex is not thread-safe; the Leaderboard only uses it with its lock held.
+ *
+ * @author Dougy
+ */
+class PlayerIndex {
+  private final HashMap<String, PlayerProfile> profiles = new HashMap<String, PlayerProfile>();
+  private final ArrayList<Bucket> buckets = new ArrayList<Bucket>(); // buckets.get(s) ranks the players whose best is s
+
+  /**
+   * Counts a result into the profile of its player, which is created if needed. The result was added after every
+   * result counted so far.
+   *
+   * @param result The result.
+   */
+  void add(GameResult result) {
+    String name = result.getPlayer().getName();
+    PlayerProfile profile = profiles.get(name);
+    if (profile == null) {
+      profile = new PlayerProfile(name);
+      profiles.put(name, profile);
+    }
+    int best = profile.getBestScore();
+    profile.add(result.getScore());
+    if (profile.getBestScore() != best) {
+      if (best >= 0) buckets.get(best).remove(profile);
+      bucket(profile.getBestScore()).add(profile);
+    }
+  }
+
+  /**
+   * Counts the results of a snapshot, which were added before every result counted so far. They count towards the
+   * players' totals but not their streaks. Takes O(n) time in the size of the snapshot.
+   *
+   * @param older The snapshot.
+   */
+  void addOlder(LeaderboardSnapshot older) {
+    // The rows go from the highest to the lowest score with ties in the order they were added, so the first row of a
+    // player is their best and players come in the order they reached it, which was before any player of the newer
+    // results did. So they go ahead of the players already in their bucket.
+    ArrayList<ArrayList<PlayerProfile>> reached = new ArrayList<ArrayList<PlayerProfile>>();
+    Set<PlayerProfile> seen = Collections.newSetFromMap(new IdentityHashMap<PlayerProfile, Boolean>());
+    for (int row = 0; row < older.size(); row++) {
+      String name = older.readName(row);
+      int score = older.readScore(row);
+      PlayerProfile profile = profiles.get(name);
+      if (profile == null) {
+        profile = new PlayerProfile(name);
+        profiles.put(name, profile);
+      }
+      if (seen.add(profile) && score >= profile.getBestScore()) {
+        while (reached.size() <= score) reached.add(new ArrayList<PlayerProfile>());
+        reached.get(score).add(profile);
+      }
+      profile.addOlder(score);
+    }
+
+    // rebuild the buckets: players who reached their best in the older results first, then the others
+    for (int score = 0; score < Math.max(reached.size(), buckets.size()); score++) {
+      Bucket bucket = new Bucket();
+      Set<PlayerProfile> placed = Collections.newSetFromMap(new IdentityHashMap<PlayerProfile, Boolean>());
+      if (score < reached.size()) {
+        for (PlayerProfile profile : reached.get(score)) {
+          if (placed.add(profile)) bucket.add(profile);
+        }
+      }
+      if (score < buckets.size()) {
+        Bucket newer = buckets.get(score);
+        for (int i = 0; i < newer.used; i++) {
+          PlayerProfile profile = newer.slots[i];
+          if (profile != null && profile.getBestScore() == score && placed.add(profile)) bucket.add(profile);
+        }
+        buckets.set(score, bucket);
+      } else {
+        buckets.add(bucket);
+      }
+    }
+  }
+
+  /**
+   * Returns the bucket of a best score, adding buckets up to it if needed.
+   *
+   * @param score The best score.
+   * @return The bucket.
+   */
+  private Bucket bucket(int score) {
+    while (buckets.size() <= score) buckets.add(new Bucket());
+    return buckets.get(score);
+  }
+
+  /**
+   * Returns the profile of a player.
+   *
+   * @param name The name of the player.
+   * @return The profile, or null if the player has no results.
+   */
+  PlayerProfile get(String name) {
+    return profiles.get(name);
+  }
+
+  /**
+   * Returns the number of players.
+   *
+   * @return The number of players with at least one result.
+   */
+  int size() {
+    return profiles.size();
+  }
+
+  /**
+   * Returns the rank of a player by their best score.
+   *
+   * @param name The name of the player.
+   * @return The rank, where 1 is the best player, or -1 if the player has no results.
+   */
+  int rankOf(String name) {
+    PlayerProfile profile = profiles.get(name);
+    if (profile == null) return -1;
+    int rank = 1;
+    for (int score = buckets.size() - 1; score > profile.getBestScore(); score--) {
+      rank += buckets.get(score).size;
+    }
+    return rank + buckets.get(profile.getBestScore()).countBefore(profile.slot);
+  }
+
+  /**
+   * Returns a page of the players ranked by their best score. Players with equal best scores are in the order they
+   * reached them.
+   *
+   * @param from  The position of the first player, where 0 is the best player.
+   * @param count The maximum number of players to return.
+   * @return The profiles of the players from position from (inclusive) to from + count (exclusive), or fewer at the
+   *   end. They are copies.
+   */
+  ArrayList<PlayerProfile> getPage(int from, int count) {
+    ArrayList<PlayerProfile> page = new ArrayList<PlayerProfile>();
+    if (from < 0 || from >= profiles.size() || count <= 0) return page;
+    int score = buckets.size() - 1;
+    while (from >= buckets.get(score).size) {
+      from -= buckets.get(score).size;
+      score--;
+    }
+    for (; score >= 0 && page.size() < count; score--) {
+      Bucket bucket = buckets.get(score);
+      if (bucket.size == 0) continue;
+      for (int slot = bucket.slotOf(from); slot < bucket.used && page.size() < count; slot++) {
+        if (bucket.slots[slot] != null) page.add(new PlayerProfile(bucket.slots[slot]));
+      }
+      from = 0;
+    }
+    return page;
+  }
+
+  /**
+   * The players whose best is one score, in the order they reached it. A player leaving the bucket leaves an empty
+   * slot behind, and a Fenwick tree counts the occupied slots.
+   */
+  private static final class Bucket {
+    private PlayerProfile[] slots = new PlayerProfile[4];
+    private int[] occupied = new int[5]; // Fenwick tree over the occupied slots
+    private int used; // number of slots used, including emptied ones
+    private int size; // number of players
+
+    /**
+     * Adds a player at the end of the bucket.
+     *
+     * @param profile The player.
+     */
+    void add(PlayerProfile profile) {
+      if (used == slots.length) rebuild(size * 2 > used ? used * 2 : used);
+      profile.slot = used;
+      slots[used++] = profile;
+      size++;
+      for (int i = used; i < occupied.length; i += i & -i) {
+        occupied[i]++;
+      }
+    }
+
+    /**
+     * Removes a player from the bucket.
+     *
+     * @param profile The player, which must be in the bucket.
+     */
+    void remove(PlayerProfile profile) {
+      slots[profile.slot] = null;
+      size--;
+      for (int i = profile.slot + 1; i < occupied.length; i += i & -i) {
+        occupied[i]--;
+      }
+    }
+
+    /**
+     * Moves the players to the first slots of an array of the given length and recounts the slots in O(length).
+     *
+     * @param length The number of slots.
+     */
+    private void rebuild(int length) {
+      PlayerProfile[] moved = new PlayerProfile[length];
+      int next = 0;
+      for (int i = 0; i < used; i++) {
+        if (slots[i] != null) {
+          slots[i].slot = next;
+          moved[next++] = slots[i];
+        }
+      }
+      slots = moved;
+      used = next;
+      occupied = new int[length + 1];
+      for (int i = 1; i <= length; i++) {
+        if (i <= used) occupied[i]++;
+        int parent = i + (i & -i);
+        if (parent <= length) occupied[parent] += occupied[i];
+      }
+    }
+
+    /**
+     * Returns the number of players in the slots before a slot.
+     *
+     * @param slot The slot.
+     * @return The number of players ahead of the slot.
+     */
+    int countBefore(int slot) {
+      int count = 0;
+      for (int i = slot; i > 0; i -= i & -i) {
+        count += occupied[i];
+      }
+      return count;
+    }
+
+    /**
+     * Returns the slot of the player at a position of the bucket.
+     *
+     * @param index The position, where 0 is the first player.
+     * @return The slot of the player.
+     */
+    int slotOf(int index) {
+      Objects.checkIndex(index, size);
+      int node = 0;
+      for (int step = Integer.highestOneBit(occupied.length - 1); step > 0; step >>= 1) {
+        if (node + step < occupied.length && occupied[node + step] <= index) {
+          node += step;
+          index -= occupied[node];
+        }
+      }
+      return node;
+    }
+  }
+}
\ No newline at end of file
@@ -0,0 +1,47 @@
+import javax.swing.*;
+import java.awt.*;
+
+/**
+ * A JPanel with a simple setup to hold Player information.
+ */
+class PlayerPanel extends JPanel {
+  private final Player PLAYER;
+  private final JLabel P_CHARGES = new JLabel();
+  private final JLabel P_LAST_MOVE = new JLabel();
+
+  /**
+   * Sets up the player panel.
+   *
+   * @param player The Player whose information will be displayed.
+   */
+  public PlayerPanel(Player player) {
+    setLayout(new GridLayout(5, 1, 0, 5));
+    this.PLAYER = player;
+
+    JLabel namePanel = new JLabel();
+    namePanel.setText(PLAYER.getName());
+    refresh();
+    for (JLabel panel : new JLabel[]{namePanel, P_CHARGES, P_LAST_MOVE}) {
+      panel.setHorizontalAlignment(SwingConstants.CENTER);
+      add(panel);
+    }
+  }
+
+  /**
+   * Updates the PlayerPanel with the latest player information.
+   */
+  public void refresh() {
+    show(PLAYER.getCharge(), PLAYER.getLastMove());
+  }
+
+  /**
+   * Shows the given player information.
+   *
+   * @param charge   The Player's charge.
+   * @param lastMove The Player's last Move.
+   */
+  public void show(int charge, Move lastMove) {
+    P_CHARGES.setText("⚡ Charges: " + charge);
+    P_LAST_MOVE.setText("Last Move: " + lastMove.getIcon());
+  }
+}
\ No newline at end of file
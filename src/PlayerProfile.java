@@ -0,0 +1,128 @@
+/**
+ * The aggregated results of one player on a Leaderboard: games played, best and total score, and current streak.
+ * <p>
+ * A Leaderboard keeps one PlayerProfile per player name and updates it as results are added, so reading a profile
+ * takes O(1) time however many results are stored. The PlayerProfiles a Leaderboard returns are copies, and do not
+ * change after they were read.
+ *
+ * @author Dougy
+ */
+public class PlayerProfile {
+  private final String name;
+  private int games;
+  private long totalScore;
+  private int bestScore = -1;
+  private int lastScore = -1;
+  private int streak;
+  int slot; // position in the PlayerIndex bucket of the best score
+
+  /**
+   * Creates a profile of a player without any games.
+   *
+   * @param name The name of the player.
+   */
+  PlayerProfile(String name) {
+    this.name = name;
+  }
+
+  /**
+   * Creates a copy of a profile.
+   *
+   * @param source The profile to copy.
+   */
+  PlayerProfile(PlayerProfile source) {
+    name = source.name;
+    games = source.games;
+    totalScore = source.totalScore;
+    bestScore = source.bestScore;
+    lastScore = source.lastScore;
+    streak = source.streak;
+  }
+
+  /**
+   * Counts a game of the player, which was played after every game counted so far.
+   *
+   * @param score The score of the game.
+   */
+  void add(int score) {
+    addOlder(score);
+    lastScore = score;
+    streak = score > 0 ? streak + 1 : 0;
+  }
+
+  /**
+   * Counts a game of the player whose order among the other games is not known. It counts towards the totals but
+   * not the streak.
+   *
+   * @param score The score of the game.
+   */
+  void addOlder(int score) {
+    games++;
+    totalScore += score;
+    bestScore = Math.max(bestScore, score);
+  }
+
+  /**
+   * Returns the name of the player.
+   *
+   * @return The name of the player.
+   */
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Returns the number of games the player played.
+   *
+   * @return The number of games.
+   */
+  public int getGames() {
+    return games;
+  }
+
+  /**
+   * Returns the highest score of the player.
+   *
+   * @return The best score, or -1 if the player has no games.
+   */
+  public int getBestScore() {
+    return bestScore;
+  }
+
+  /**
+   * Returns the sum of the scores of all games of the player.
+   *
+   * @return The total score.
+   */
+  public long getTotalScore() {
+    return totalScore;
+  }
+
+  /**
+   * Returns the average score of the player.
+   *
+   * @return The average score, or 0 if the player has no games.
+   */
+  public double getAverageScore() {
+    return games == 0 ? 0 : (double) totalScore / games;
+  }
+
+  /**
+   * Returns the score of the latest game of the player.
+   *
+   * @return The latest score, or -1 if it is not known.
+   */
+  public int getLastScore() {
+    return lastScore;
+  }
+
+  /**
+   * Returns the number of games in a row, up to the latest one, in which the player won at least one round. Only
+   * games added in order are counted: games loaded from a snapshot, which doesn't keep the order of games, are not.
+   *
+   * @return The current streak.
+   */
+  public int getStreak() {
+    return streak;
+  }
+}
\ No newline at end of file
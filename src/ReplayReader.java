@@ -0,0 +1,156 @@
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads replay files written by ReplayWriter, one record at a time.
+ * <p>
+ * The file is read through a fixed direct buffer and every record is handed to a Visitor as it is decoded, so a
+ * replay of any size is scanned in constant memory, and turns are decoded without allocating anything.
+ *
+ * @author Dougy
+ */
+public class ReplayReader {
+  private static final int BUFFER_SIZE = 1024 * 1024;
+  private static final MatchEngine.Outcome[] OUTCOMES = MatchEngine.Outcome.values();
+
+  /**
+   * Receives the records of a replay.
+   */
+  public interface Visitor {
+    /**
+     * Receives the start of a match.
+     *
+     * @param session   The session the match is played in.
+     * @param name      The Player's name.
+     * @param chargeCap The charge cap of the match's Rules.
+     */
+    void matchStart(long session, String name, int chargeCap);
+
+    /**
+     * Receives a turn.
+     *
+     * @param session      The session the match is played in.
+     * @param round        The round, starting from 1.
+     * @param turn         The turn of the round, starting from 1.
+     * @param playerMoveId The id of the Player's Move.
+     * @param aiMoveId     The id of the AI's Move.
+     * @param playerCharge The Player's charge before the turn.
+     * @param aiCharge     The AI's charge before the turn.
+     * @param outcome      The outcome of the turn.
+     */
+    void turn(long session, int round, int turn, int playerMoveId, int aiMoveId, int playerCharge, int aiCharge,
+              MatchEngine.Outcome outcome);
+  }
+
+  private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+  private long bytesRead;
+
+  /**
+   * Returns the number of bytes read by all calls to read().
+   *
+   * @return The number of bytes.
+   */
+  public long getBytesRead() {
+    return bytesRead;
+  }
+
+  /**
+   * Reads a replay file. A record cut off at the end of the file, as left by a crash, is skipped.
+   *
+   * @param file    The file.
+   * @param visitor The visitor receiving every record in order.
+   * @return The number of records read.
+   * @throws IOException If the file cannot be read or is not a valid replay.
+   */
+  public long read(Path file, Visitor visitor) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      buffer.clear().flip();
+      boolean end = fill(channel, 5);
+      if (buffer.remaining() < 5 || buffer.getInt() != ReplayWriter.MAGIC || buffer.get() != ReplayWriter.VERSION) {
+        throw new IOException("Not a replay file: " + file);
+      }
+      long records = 0;
+      while (true) {
+        if (!end && buffer.remaining() < ReplayWriter.MAX_RECORD) end = fill(channel, ReplayWriter.MAX_RECORD);
+        if (!buffer.hasRemaining()) return records;
+        int start = buffer.position();
+        try {
+          readRecord(visitor);
+        } catch (BufferUnderflowException e) {
+          if (end) return records; // the last record was cut off
+          throw new IOException("Bad replay record at " + (bytesRead - buffer.limit() + start), e);
+        }
+        records++;
+      }
+    }
+  }
+
+  /**
+   * Reads more of the file into the buffer, keeping the bytes not read yet.
+   *
+   * @param channel The file.
+   * @param needed  The number of bytes wanted in the buffer.
+   * @return Whether the end of the file was reached.
+   * @throws IOException If reading fails.
+   */
+  private boolean fill(FileChannel channel, int needed) throws IOException {
+    buffer.compact();
+    try {
+      while (buffer.position() < needed) {
+        int read = channel.read(buffer);
+        if (read < 0) return true;
+        bytesRead += read;
+      }
+      return false;
+    } finally {
+      buffer.flip();
+    }
+  }
+
+  /**
+   * Decodes one record from the buffer and hands it to the visitor.
+   *
+   * @param visitor The visitor.
+   * @throws IOException If the record is malformed.
+   */
+  private void readRecord(Visitor visitor) throws IOException {
+    int first = buffer.get() & 0xFF;
+    int kind = first >>> 6;
+    long session = getVarint();
+    if (kind == ReplayWriter.MATCH_START) {
+      int chargeCap = (int) getVarint();
+      int length = (int) getVarint();
+      if (length > ReplayWriter.MAX_NAME_CHARS * 3) throw new IOException("Bad name length in replay: " + length);
+      byte[] name = new byte[length];
+      buffer.get(name);
+      visitor.matchStart(session, new String(name, StandardCharsets.UTF_8), chargeCap);
+    } else {
+      int round = (int) getVarint();
+      int turn = (int) getVarint();
+      int playerCharge = (int) getVarint();
+      int aiCharge = (int) getVarint();
+      visitor.turn(session, round, turn, first >>> 3 & 7, first & 7, playerCharge, aiCharge, OUTCOMES[kind]);
+    }
+  }
+
+  /**
+   * Reads a number written by ReplayWriter.putVarint.
+   *
+   * @return The number.
+   * @throws IOException If the number is longer than a long.
+   */
+  private long getVarint() throws IOException {
+    long value = 0;
+    for (int shift = 0; shift < 64; shift += 7) {
+      byte b = buffer.get();
+      value |= (long) (b & 0x7F) << shift;
+      if (b >= 0) return value;
+    }
+    throw new IOException("Varint too long in replay");
+  }
+}
\ No newline at end of file
@@ -0,0 +1,118 @@
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Sums up replay files: how many matches and turns they hold, how long rounds and matches last, and which Moves
+ * players and the AI pick at each charge.
+ * <p>
+ * Only counters are kept, so any number of replays is scanned in constant memory.
+ * <p>
+ * Run with {@code java ReplayStats <file or directory>...}; a directory stands for the .fbr files in it.
+ *
+ * @author Dougy
+ */
+public class ReplayStats implements ReplayReader.Visitor {
+  // Charges at and above this one are counted together.
+  private static final int CHARGE_BUCKETS = 6;
+  private static final int MOVES = Move.SUPER_FIREBALL_ID + 1;
+  private static final String[] MOVE_NAMES = {"none", "fireball", "shield", "charge", "super"};
+
+  private long matches;
+  private long turns;
+  private long roundsWon;
+  private long matchesLost;
+  private long scoreSum; // rounds won before each lost match
+  private final long[][] playerMoves = new long[CHARGE_BUCKETS][MOVES]; // [player charge][move id]
+  private final long[][] aiMoves = new long[CHARGE_BUCKETS][MOVES]; // [AI charge][move id]
+
+  @Override
+  public void matchStart(long session, String name, int chargeCap) {
+    matches++;
+  }
+
+  @Override
+  public void turn(long session, int round, int turn, int playerMoveId, int aiMoveId, int playerCharge, int aiCharge,
+                   MatchEngine.Outcome outcome) {
+    turns++;
+    playerMoves[Math.min(playerCharge, CHARGE_BUCKETS - 1)][Math.min(playerMoveId, MOVES - 1)]++;
+    aiMoves[Math.min(aiCharge, CHARGE_BUCKETS - 1)][Math.min(aiMoveId, MOVES - 1)]++;
+    if (outcome == MatchEngine.Outcome.ROUND_WON) {
+      roundsWon++;
+    } else if (outcome == MatchEngine.Outcome.MATCH_LOST) {
+      matchesLost++;
+      scoreSum += round - 1;
+    }
+  }
+
+  /**
+   * Prints the statistics gathered so far.
+   */
+  public void print() {
+    System.out.println("matches " + matches + ", turns " + turns + ", rounds won " + roundsWon
+      + ", matches lost " + matchesLost);
+    long rounds = roundsWon + matchesLost;
+    System.out.printf("turns per round %.2f, average score %.2f%n", rounds == 0 ? 0.0 : (double) turns / rounds,
+      matchesLost == 0 ? 0.0 : (double) scoreSum / matchesLost);
+    printMoves("player", playerMoves);
+    printMoves("AI", aiMoves);
+  }
+
+  /**
+   * Prints how often each Move was picked at each charge.
+   *
+   * @param who   Whose Moves they are.
+   * @param moves The counts, indexed by charge and Move id.
+   */
+  private static void printMoves(String who, long[][] moves) {
+    System.out.printf("%-14s", who + " charge");
+    for (int id = Move.FIREBALL_ID; id < MOVES; id++) {
+      System.out.printf("%10s", MOVE_NAMES[id]);
+    }
+    System.out.println();
+    for (int charge = 0; charge < CHARGE_BUCKETS; charge++) {
+      long total = 0;
+      for (long count : moves[charge]) total += count;
+      if (total == 0) continue;
+      System.out.printf("%-14s", charge == CHARGE_BUCKETS - 1 ? charge + "+" : Integer.toString(charge));
+      for (int id = Move.FIREBALL_ID; id < MOVES; id++) {
+        System.out.printf("%9.1f%%", 100.0 * moves[charge][id] / total);
+      }
+      System.out.println();
+    }
+  }
+
+  /**
+   * Scans the given replay files and directories and prints their statistics.
+   *
+   * @param args The replay files, or directories holding them.
+   * @throws IOException If a replay cannot be read.
+   */
+  public static void main(String[] args) throws IOException {
+    if (args.length == 0) {
+      System.err.println("Usage: java ReplayStats <file or directory>...");
+      return;
+    }
+    ReplayStats stats = new ReplayStats();
+    ReplayReader reader = new ReplayReader();
+    long start = System.nanoTime();
+    for (String arg : args) {
+      Path path = Paths.get(arg);
+      if (Files.isDirectory(path)) {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(path, "*.fbr")) {
+          for (Path file : files) {
+            reader.read(file, stats);
+          }
+        }
+      } else {
+        reader.read(path, stats);
+      }
+    }
+    double seconds = (System.nanoTime() - start) / 1e9;
+    stats.print();
+    System.out.printf("scanned %.1f MB in %.2f s, %.0f MB/s%n", reader.getBytesRead() / 1e6, seconds,
+      reader.getBytesRead() / 1e6 / seconds);
+  }
+}
\ No newline at end of file
@@ -0,0 +1,189 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records every turn of every match into a compact replay file, as the turns are played.
+ * <p>
+ * Records are encoded into a direct buffer and written to a FileChannel whenever the buffer fills up, so a turn costs
+ * a few bytes of copying and writes are large. One writer may be shared by every match of a process; its methods are
+ * thread-safe. A crash loses at most the turns still in the buffer, and ReplayReader skips a record cut off at the end
+ * of a file.
+ * <p>
+ * File: magic (int), version (byte), then records. Every record starts with a byte whose top two bits give its kind:
+ * a turn that continued the round, a turn the Player won the round with, a turn that lost the match, or the start of a
+ * match. The rest of a turn's first byte holds the Player's Move id (3 bits) and the AI's Move id (3 bits), and the
+ * byte is followed by the session, round, turn, Player charge and AI charge before the turn, as varints: a turn takes
+ * 6 to 8 bytes. A match start is followed by the session and charge cap as varints and the Player's name as a varint
+ * length and UTF-8 bytes.
+ *
+ * @author Dougy
+ */
+public class ReplayWriter implements AutoCloseable {
+  static final int MAGIC = 0x46425250; // "FBRP"
+  static final byte VERSION = 1;
+
+  static final int CONTINUE = 0;
+  static final int ROUND_WON = 1;
+  static final int MATCH_LOST = 2;
+  static final int MATCH_START = 3;
+
+  /**
+   * The number of characters of a Player's name that are recorded.
+   */
+  static final int MAX_NAME_CHARS = 256;
+  /**
+   * The most bytes a record may take: a match start with the longest name, whose characters take up to 3 bytes each.
+   */
+  static final int MAX_RECORD = 1 + 10 + 5 + 5 + MAX_NAME_CHARS * 3;
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private final FileChannel channel;
+  private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+  private final AtomicLong sessions = new AtomicLong();
+  private long turns;
+  private boolean closed;
+
+  /**
+   * Creates a replay file. Every writer gets a file of its own, so that a record cut off by a crash can only be at the
+   * end of a file.
+   *
+   * @param file The file, which must not exist yet.
+   * @throws IOException If the file cannot be created.
+   */
+  public ReplayWriter(Path file) throws IOException {
+    channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+    buffer.putInt(MAGIC).put(VERSION);
+  }
+
+  /**
+   * Returns a new session id, unique within this writer.
+   *
+   * @return The session id.
+   */
+  public long newSession() {
+    return sessions.getAndIncrement();
+  }
+
+  /**
+   * Records the start of a match.
+   *
+   * @param session   The session the match is played in.
+   * @param name      The Player's name; only the first 256 characters are kept, or 255 if the 256th is the first half
+   *                  of a surrogate pair.
+   * @param chargeCap The charge cap of the match's Rules.
+   */
+  public synchronized void matchStart(long session, String name, int chargeCap) {
+    if (name.length() > MAX_NAME_CHARS) {
+      int length = Character.isHighSurrogate(name.charAt(MAX_NAME_CHARS - 1)) ? MAX_NAME_CHARS - 1 : MAX_NAME_CHARS;
+      name = name.substring(0, length);
+    }
+    byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+    reserve(MAX_RECORD);
+    buffer.put((byte) (MATCH_START << 6));
+    putVarint(session);
+    putVarint(chargeCap);
+    putVarint(bytes.length);
+    buffer.put(bytes);
+  }
+
+  /**
+   * Records a turn.
+   *
+   * @param session      The session the match is played in.
+   * @param round        The round, starting from 1.
+   * @param turn         The turn of the round, starting from 1.
+   * @param playerMove   The Player's Move.
+   * @param aiMove       The AI's Move.
+   * @param playerCharge The Player's charge before the turn.
+   * @param aiCharge     The AI's charge before the turn.
+   * @param outcome      The outcome of the turn.
+   */
+  public synchronized void turn(long session, int round, int turn, Move playerMove, Move aiMove, int playerCharge,
+                                int aiCharge, MatchEngine.Outcome outcome) {
+    reserve(MAX_RECORD);
+    buffer.put((byte) (outcome.ordinal() << 6 | (playerMove.getId() & 7) << 3 | (aiMove.getId() & 7)));
+    putVarint(session);
+    putVarint(round);
+    putVarint(turn);
+    putVarint(playerCharge);
+    putVarint(aiCharge);
+    turns++;
+  }
+
+  /**
+   * Returns the number of turns recorded.
+   *
+   * @return The number of turns.
+   */
+  public synchronized long getTurns() {
+    return turns;
+  }
+
+  /**
+   * Writes the buffered records to the file.
+   *
+   * @throws IOException If writing fails.
+   */
+  public synchronized void flush() throws IOException {
+    buffer.flip();
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+    buffer.clear();
+  }
+
+  /**
+   * Writes the buffered records and closes the file. Records made afterwards are dropped.
+   *
+   * @throws IOException If writing fails.
+   */
+  @Override
+  public synchronized void close() throws IOException {
+    if (closed) return;
+    closed = true;
+    try {
+      flush();
+    } finally {
+      channel.close();
+    }
+  }
+
+  /**
+   * Makes room for a record, writing the buffer out if it is too full. After close() the buffer is only cleared.
+   *
+   * @param bytes The most bytes the record takes.
+   */
+  private void reserve(int bytes) {
+    if (buffer.remaining() >= bytes) return;
+    if (closed) {
+      buffer.clear();
+      return;
+    }
+    try {
+      flush();
+    } catch (IOException e) {
+      // the game goes on without its replay rather than failing the turn
+      System.err.println("Could not write the replay, dropping the buffered turns: " + e.getMessage());
+      buffer.clear();
+    }
+  }
+
+  /**
+   * Writes a non-negative number in 7-bit groups, lowest first, with the high bit set on all but the last group.
+   *
+   * @param value The value, at least 0.
+   */
+  private void putVarint(long value) {
+    while ((value & ~0x7FL) != 0) {
+      buffer.put((byte) ((value & 0x7F) | 0x80));
+      value >>>= 7;
+    }
+    buffer.put((byte) value);
+  }
+}
\ No newline at end of file
@@ -0,0 +1,209 @@
+import java.lang.ref.SoftReference;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Decides the outcome when two Moves are used against each other.
+ * <p>
+ * Every Move has a small integer id. The Moves of a rule set are registered with it, and each "winner beats loser"
+ * rule is compiled into an id x id outcome matrix, so resolving a turn is a single array load with no allocation.
+ * Moves are flyweights: the canonical instance of each standard Move is kept here and shared by every game.
+ * <p>
+ * New moves are added by giving them an unused id and declaring what they beat, e.g.
+ * {@code new Rules(Rules.NONE, Rules.FIREBALL, reflect).beats(reflect, Rules.FIREBALL)}.
+ *
+ * @author Armeet
+ */
+public class Rules {
+  /**
+   * Neither move wins.
+   */
+  public static final byte DRAW = 0;
+  /**
+   * The move wins against the opponent's move.
+   */
+  public static final byte WIN = 1;
+  /**
+   * The move loses to the opponent's move.
+   */
+  public static final byte LOSE = 2;
+
+  /**
+   * The placeholder Move of a Player that has not moved yet.
+   */
+  public static final Move NONE = new Move();
+  /**
+   * The canonical Fireball.
+   */
+  public static final Move FIREBALL = new Fireball();
+  /**
+   * The canonical Shield.
+   */
+  public static final Move SHIELD = new Shield();
+  /**
+   * The canonical Charge.
+   */
+  public static final Move CHARGE = new Charge();
+  /**
+   * The canonical Super Fireball.
+   */
+  public static final Move SUPER_FIREBALL = new SuperFireball();
+
+  /**
+   * The rules of the standard game.
+   */
+  public static final Rules STANDARD = new Rules(NONE, FIREBALL, SHIELD, CHARGE, SUPER_FIREBALL)
+    .beats(FIREBALL, CHARGE)
+    .beats(SUPER_FIREBALL, NONE, FIREBALL, SHIELD, CHARGE);
+
+  // The rule sets made by withChargeCap(), by cap. They are only softly reachable from here, so the rules of a cap
+  // that nothing uses any more, with the AI priors solved for them, are dropped when memory runs low.
+  private static final HashMap<Integer, SoftReference<Rules>> BY_CAP = new HashMap<Integer, SoftReference<Rules>>();
+
+  private final Move[] moves; // moves[id] is the Move with that id
+  private final int size;
+  private final byte[] outcomes; // outcomes[a * size + b] is the outcome of move a against move b
+  private final int chargeCap; // the highest cost of any Move
+  final ConcurrentHashMap<Double, AI> priors = new ConcurrentHashMap<Double, AI>(); // see AI.priorOf(), by exponent
+
+  /**
+   * Creates a rule set with the given Moves, where every pair of Moves draws until declared otherwise.
+   *
+   * @param moves The Moves of the rule set. Their ids must be unique.
+   * @throws IllegalArgumentException If two Moves share an id.
+   */
+  public Rules(Move... moves) {
+    int maxId = 0;
+    for (Move move : moves) {
+      maxId = Math.max(maxId, move.getId());
+    }
+    size = maxId + 1;
+    this.moves = new Move[size];
+    for (Move move : moves) {
+      if (this.moves[move.getId()] != null)
+        throw new IllegalArgumentException("Moves " + this.moves[move.getId()].getName() + " and " + move.getName()
+          + " share id " + move.getId());
+      this.moves[move.getId()] = move;
+    }
+    outcomes = new byte[size * size];
+    int cap = 0;
+    for (Move move : moves) {
+      cap = Math.max(cap, move.getCost());
+    }
+    chargeCap = cap;
+  }
+
+  /**
+   * Creates the standard rules with a super fireball of another cost, so that matches build up more (or less) charge
+   * before someone can finish them.
+   *
+   * @param chargeCap The cost of the super fireball, at least 1.
+   * @return The rules; the standard Rules if the cap is the standard one. Calls with the same cap return the same
+   *   Rules while they are in use, so their AIs share one solved prior.
+   * @throws IllegalArgumentException If the cap is less than 1.
+   */
+  public static synchronized Rules withChargeCap(int chargeCap) {
+    if (chargeCap == SuperFireball.DEFAULT_COST) return STANDARD;
+    SoftReference<Rules> cached = BY_CAP.get(chargeCap);
+    Rules rules = cached == null ? null : cached.get();
+    if (rules == null) {
+      Move superFireball = new SuperFireball(chargeCap);
+      rules = new Rules(NONE, FIREBALL, SHIELD, CHARGE, superFireball)
+        .beats(FIREBALL, CHARGE)
+        .beats(superFireball, NONE, FIREBALL, SHIELD, CHARGE);
+      BY_CAP.put(chargeCap, new SoftReference<Rules>(rules));
+    }
+    return rules;
+  }
+
+  /**
+   * Returns the highest cost of any Move of this rule set, the most charge that is worth saving up.
+   *
+   * @return The charge cap.
+   */
+  public int getChargeCap() {
+    return chargeCap;
+  }
+
+  /**
+   * Declares that a Move beats each of the given Moves.
+   *
+   * @param winner The winning Move.
+   * @param losers The Moves it beats.
+   * @return This rule set, so that declarations can be chained.
+   * @throws IllegalArgumentException If a Move is not part of this rule set or a rule contradicts an earlier one.
+   */
+  public Rules beats(Move winner, Move... losers) {
+    checkRegistered(winner);
+    for (Move loser : losers) {
+      checkRegistered(loser);
+      if (resolve(loser, winner) == WIN)
+        throw new IllegalArgumentException(loser.getName() + " already beats " + winner.getName());
+      outcomes[winner.getId() * size + loser.getId()] = WIN;
+      outcomes[loser.getId() * size + winner.getId()] = LOSE;
+    }
+    return this;
+  }
+
+  /**
+   * Checks that a Move is the one registered under its id.
+   *
+   * @param move The Move to check.
+   * @throws IllegalArgumentException If the Move is not part of this rule set.
+   */
+  private void checkRegistered(Move move) {
+    if (move.getId() >= size || moves[move.getId()] != move)
+      throw new IllegalArgumentException(move.getName() + " is not part of these rules");
+  }
+
+  /**
+   * Returns the outcome of a Move used against an opponent's Move.
+   *
+   * @param move         The Move to resolve.
+   * @param opponentMove The opponent's Move.
+   * @return WIN, LOSE or DRAW, from the point of view of move.
+   */
+  public byte resolve(Move move, Move opponentMove) {
+    return outcomes[move.getId() * size + opponentMove.getId()];
+  }
+
+  /**
+   * Returns the outcome of a Move used against an opponent's Move, both given by id.
+   *
+   * @param id         The id of the Move to resolve.
+   * @param opponentId The id of the opponent's Move.
+   * @return WIN, LOSE or DRAW, from the point of view of the first Move.
+   */
+  public byte resolve(int id, int opponentId) {
+    return outcomes[id * size + opponentId];
+  }
+
+  /**
+   * Returns the outcome matrix of the rule set, for code that resolves many Moves at once: the outcome of the Move with
+   * id a against the Move with id b is at [a * size() + b]. The array is shared and must not be changed.
+   *
+   * @return The outcomes, WIN, LOSE or DRAW from the point of view of the first Move.
+   */
+  byte[] getOutcomeMatrix() {
+    return outcomes;
+  }
+
+  /**
+   * Returns the canonical Move with the given id.
+   *
+   * @param id The id of the Move.
+   * @return The Move, or null if no Move is registered under the id.
+   */
+  public Move getMove(int id) {
+    return moves[id];
+  }
+
+  /**
+   * Returns the number of Move ids of this rule set, i.e. one more than the largest id.
+   *
+   * @return The number of Move ids.
+   */
+  public int size() {
+    return size;
+  }
+}
\ No newline at end of file
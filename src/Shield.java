@@ -10,6 +10,6 @@ public class Shield extends Move {
    * Creates a Shield with the corresponding name and icon.
    */
   public Shield() {
-    super("Shield", "🛡️");
+    super(SHIELD_ID, "Shield", "🛡️");
   }
 }
\ No newline at end of file
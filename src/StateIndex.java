@@ -0,0 +1,148 @@
+import java.util.Arrays;
+
+/**
+ * Numbers the states a sparse model holds. Each state is identified by a non-negative key, and the states added are
+ * given the slots 0, 1, 2, ... in the order they were added, so the model can keep its values in plain arrays indexed
+ * by slot.
+ * <p>
+ * When there are few possible keys, the slot of every key is kept in a table indexed by key, so a lookup is one array
+ * load. Otherwise the keys are kept in an open-addressing hash table with linear probing that is never more than half
+ * full, so a lookup usually touches a single int.
+ *
+ * @author Dougy
+ */
+class StateIndex {
+  // The largest number of possible keys for which the slots are kept in a table indexed by key, 16 KB.
+  private static final int DIRECT_LIMIT = 4096;
+
+  private final int[] direct; // direct[key] is 1 + the slot of the key, or 0 if absent; null if hashing
+  private int[] table; // table[i] is 1 + the slot of the key hashed near i, or 0 if free; null if direct
+  private int[] keys; // keys[slot] is the key of the state in the slot
+  private int size;
+  private int mask;
+
+  /**
+   * Creates an empty index.
+   *
+   * @param expected The number of states expected, to size the table.
+   * @param universe The number of possible keys; every key is less than it.
+   */
+  StateIndex(int expected, int universe) {
+    direct = universe <= DIRECT_LIMIT ? new int[universe] : null;
+    int capacity = Integer.highestOneBit(Math.max(4, expected) * 2 - 1) * 2;
+    table = direct == null ? new int[capacity] : null;
+    keys = new int[capacity / 2];
+    mask = capacity - 1;
+  }
+
+  /**
+   * Creates a copy of an index.
+   *
+   * @param source The index to copy.
+   */
+  StateIndex(StateIndex source) {
+    direct = source.direct == null ? null : source.direct.clone();
+    table = source.table == null ? null : source.table.clone();
+    keys = source.keys.clone();
+    size = source.size;
+    mask = source.mask;
+  }
+
+  /**
+   * Returns the memory taken by the index's arrays.
+   *
+   * @return The number of bytes of the arrays' elements.
+   */
+  long getBytes() {
+    return ((direct == null ? 0L : direct.length) + (table == null ? 0 : table.length) + keys.length) * 4;
+  }
+
+  /**
+   * Returns the number of states in the index.
+   *
+   * @return The number of slots in use.
+   */
+  int size() {
+    return size;
+  }
+
+  /**
+   * Returns the slot of a state.
+   *
+   * @param key The state's key.
+   * @return The slot, or -1 if the state was never added.
+   */
+  int find(int key) {
+    if (direct != null) return direct[key] - 1;
+    for (int i = hash(key); ; i = (i + 1) & mask) {
+      int entry = table[i];
+      if (entry == 0) return -1;
+      if (keys[entry - 1] == key) return entry - 1;
+    }
+  }
+
+  /**
+   * Adds a state that is not in the index yet.
+   *
+   * @param key The state's key, at least 0.
+   * @return The state's slot, which is the number of states added before it.
+   */
+  int add(int key) {
+    if (size == keys.length) grow();
+    int slot = size++;
+    keys[slot] = key;
+    insert(slot);
+    return slot;
+  }
+
+  /**
+   * Returns the key of the state in a slot.
+   *
+   * @param slot The slot.
+   * @return The state's key.
+   */
+  int keyOf(int slot) {
+    return keys[slot];
+  }
+
+  /**
+   * Places a slot in the hash table.
+   *
+   * @param slot The slot, whose key is already set.
+   */
+  private void insert(int slot) {
+    if (direct != null) {
+      direct[keys[slot]] = slot + 1;
+      return;
+    }
+    int i = hash(keys[slot]);
+    while (table[i] != 0) {
+      i = (i + 1) & mask;
+    }
+    table[i] = slot + 1;
+  }
+
+  /**
+   * Doubles the capacity of the index.
+   */
+  private void grow() {
+    keys = Arrays.copyOf(keys, keys.length * 2);
+    if (direct != null) return;
+    table = new int[table.length * 2];
+    mask = table.length - 1;
+    for (int slot = 0; slot < size; slot++) {
+      insert(slot);
+    }
+  }
+
+  /**
+   * Returns the position in the table where the search for a key starts.
+   *
+   * @param key The key.
+   * @return The position.
+   */
+  private int hash(int key) {
+    int h = key * 0x9E3779B9;
+    return (h ^ (h >>> 16)) & mask;
+  }
+}
\ No newline at end of file
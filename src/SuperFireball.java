@@ -1,35 +1,31 @@
 /**
- * A 5-cost Move that charges and beats any other move. Neutralizes itself.
+ * A 5-cost Move that charges and beats any other move. Neutralizes itself. Rule variants may give it another cost,
+ * which is then the charge cap of the game.
  *
  * @author Dougy
  */
 
 public class SuperFireball extends Move {
-
   /**
-   * Creates a SuperFireball with the corresponding name and icon.
+   * The cost of the standard Super Fireball.
    */
-  public SuperFireball() {
-    super("Super Fireball", "⭐", 5);
-  }
+  public static final int DEFAULT_COST = 5;
 
   /**
-   * Determines whether this move beats opponentMove.
-   *
-   * @param opponentMove The move to compare against.
-   * @return Whether this move beats opponentMove.
+   * Creates a SuperFireball with the corresponding name and icon.
    */
-  public boolean win(Move opponentMove) {
-    return !opponentMove.getName().equals(new SuperFireball().getName());
+  public SuperFireball() {
+    this(DEFAULT_COST);
   }
 
   /**
-   * Determines whether this move loses to the opponentMove.
+   * Creates a SuperFireball with the corresponding name and icon and the given cost.
    *
-   * @param opponentMove The move to compare against.
-   * @return Whether this move loses to the opponentMove.
+   * @param cost The charge it costs, at least 1.
+   * @throws IllegalArgumentException If the cost is less than 1.
    */
-  public boolean lose(Move opponentMove) {
-    return false;
+  public SuperFireball(int cost) {
+    super(SUPER_FIREBALL_ID, "Super Fireball", "⭐", cost);
+    if (cost < 1) throw new IllegalArgumentException("A super fireball must cost charge: " + cost);
   }
 }
\ No newline at end of file
@@ -0,0 +1,243 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.SplittableRandom;
+
+/**
+ * Plays Fireball in a terminal: the same matches as the Game window, with text input and output.
+ * <p>
+ * It uses no AWT or Swing classes, so it works over SSH or without a display and starts without loading the GUI
+ * toolkit and its fonts. Results go to the same leaderboard and the AI keeps learning the same way as in the window.
+ * <p>
+ * It also plays free-for-all matches against several AIs, see FreeForAll. Those don't go to the leaderboard, whose
+ * scores are rounds won against a single AI.
+ *
+ * @author Dougy
+ */
+class TerminalGame {
+  private final BufferedReader in;
+  private final PrintStream out;
+
+  /**
+   * Creates a terminal game.
+   *
+   * @param in  Where the user's input is read from.
+   * @param out Where the game is printed to.
+   */
+  TerminalGame(BufferedReader in, PrintStream out) {
+    this.in = in;
+    this.out = out;
+  }
+
+  /**
+   * Asks for the user's name. It only prints, so it can be called before the game's saved data is opened.
+   */
+  void start() {
+    out.print("Fireball! Set name: ");
+    out.flush();
+  }
+
+  /**
+   * Reads the user's name, asked for by start(), and plays matches until the user quits or the input ends.
+   *
+   * @throws IOException If the input cannot be read.
+   */
+  void run() throws IOException {
+    String name = in.readLine();
+    if (name == null) return;
+    name = name.trim();
+    while (play(name)) {
+      PlayerProfile profile = Main.leaderboard.getProfile(name);
+      out.println("Best " + profile.getBestScore() + ", average " + String.format("%.1f", profile.getAverageScore())
+        + " over " + profile.getGames() + " game(s), streak " + profile.getStreak() + ", rank "
+        + Main.leaderboard.getPlayerRank(name) + " of " + Main.leaderboard.getPlayerCount());
+      out.print("Play again? [y/N] ");
+      out.flush();
+      String again = in.readLine();
+      if (again == null || !again.trim().toLowerCase().startsWith("y")) return;
+    }
+  }
+
+  /**
+   * Reads the user's name, asked for by start(), and plays free-for-all matches against AIs until the user quits or
+   * the input ends.
+   *
+   * @param participants The number of participants, the user and participants - 1 AIs, at least 2.
+   * @throws IOException If the input cannot be read.
+   */
+  void runFreeForAll(int participants) throws IOException {
+    String name = in.readLine();
+    if (name == null) return;
+    name = name.trim();
+    while (playFreeForAll(participants)) {
+      out.print("Play again? [y/N] ");
+      out.flush();
+      String again = in.readLine();
+      if (again == null || !again.trim().toLowerCase().startsWith("y")) return;
+    }
+  }
+
+  /**
+   * Plays a free-for-all match as participant 0 against AIs, until the user is out of a round.
+   *
+   * @param participants The number of participants.
+   * @return Whether the match was played to the end, or false if the user quit.
+   * @throws IOException If the input cannot be read.
+   */
+  private boolean playFreeForAll(int participants) throws IOException {
+    AI[] ais = new AI[participants];
+    for (int i = 1; i < participants; i++) {
+      ais[i] = new AI();
+      ais[i].setEquilibriumWeight(Main.equilibriumWeight);
+      ais[i].setHabitOrder(Main.habitOrder);
+    }
+    FreeForAll match = new FreeForAll(Rules.STANDARD, ais, new SplittableRandom());
+    while (true) {
+      StringBuilder status = new StringBuilder("Round " + match.getRound() + ", turn " + match.getTurn() + " | You: "
+        + match.getCharge(0));
+      for (int i = 1; i < participants; i++) {
+        status.append(" | AI ").append(i).append(": ").append(match.isIn(i) ? match.getCharge(i) + "" : "out");
+      }
+      out.println(status);
+      Move move = readMove(match.getCharge(0));
+      if (move == null) return false;
+      int target = -1;
+      if (match.isAimed(move)) {
+        target = readTarget(match);
+        if (target < 0) return false;
+      }
+      match.choose(0, move, target);
+      int round = match.getRound();
+      match.step();
+
+      StringBuilder turn = new StringBuilder();
+      for (int i = 0; i < participants; i++) {
+        if (match.getLastMove(i) == Rules.NONE) continue;
+        turn.append(i == 0 ? "You" : "AI " + i).append(": ").append(match.getLastMove(i).getName());
+        int aimedAt = match.getLastTarget(i);
+        if (aimedAt >= 0) turn.append(" at ").append(aimedAt == 0 ? "you" : "AI " + aimedAt);
+        if (match.wasHit(i)) turn.append(" (out)");
+        turn.append(". ");
+      }
+      out.println(turn);
+      if (match.getRound() != round) {
+        int winner = match.getLastWinner();
+        out.println(winner == 0 ? "Nice! You won round " + round + "."
+          : winner > 0 ? "AI " + winner + " won round " + round + "." : "Nobody won round " + round + ".");
+      }
+      if (match.wasHit(0)) {
+        out.println("You're out after winning " + match.getWins(0) + " round(s).");
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Asks the user which participant to aim at until they pick one in the round, unless there is only one.
+   *
+   * @param match The match.
+   * @return The participant, or -1 if the user quit or the input ended.
+   * @throws IOException If the input cannot be read.
+   */
+  private int readTarget(FreeForAll match) throws IOException {
+    if (match.getRemaining() == 2) {
+      for (int i = 1; i < match.getParticipants(); i++) {
+        if (match.isIn(i)) return i;
+      }
+    }
+    while (true) {
+      out.print("Target? AI [1-" + (match.getParticipants() - 1) + "] [q]uit: ");
+      out.flush();
+      String line = in.readLine();
+      if (line == null) return -1;
+      line = line.trim().toLowerCase();
+      if (line.equals("q") || line.equals("quit")) return -1;
+      int target;
+      try {
+        target = Integer.parseInt(line);
+      } catch (NumberFormatException e) {
+        target = -1;
+      }
+      if (target >= 1 && target < match.getParticipants() && match.isIn(target)) return target;
+      out.println("No such AI in the round.");
+    }
+  }
+
+  /**
+   * Plays a match, then adds its GameResult to the Leaderboard.
+   *
+   * @param name The name of the user.
+   * @return Whether the match was played to the end, or false if the user quit.
+   * @throws IOException If the input cannot be read.
+   */
+  private boolean play(String name) throws IOException {
+    AI ai = Main.models.checkOut(name);
+    ai.setEquilibriumWeight(Main.equilibriumWeight);
+    ai.setHabitOrder(Main.habitOrder);
+    MatchEngine engine = new MatchEngine(new Player(name), ai);
+    if (Main.replays != null) engine.record(Main.replays, Main.replays.newSession());
+    Player player = engine.getPlayer();
+    try {
+      while (!engine.isOver()) {
+        out.println("Round " + engine.getRound() + ", turn " + engine.getTurn() + " | You: " + player.getCharge()
+          + " charge(s) | AI: " + ai.getCharge() + " charge(s)");
+        Move move = readMove(player.getCharge());
+        if (move == null) return false;
+        long start = Metrics.ENABLED ? System.nanoTime() : 0;
+        MatchEngine.Outcome outcome = engine.step(move);
+        if (Metrics.ENABLED) Metrics.TURN.record(System.nanoTime() - start);
+
+        out.print("You: " + move.getName() + ", AI: " + engine.getLastAiMove().getName() + ". ");
+        if (outcome == MatchEngine.Outcome.ROUND_WON) {
+          out.println("Nice! You won round " + (engine.getRound() - 1) + ".");
+        } else if (outcome == MatchEngine.Outcome.MATCH_LOST) {
+          int score = engine.getScore();
+          out.println(score > 0 ? "Good game! You lost after " + score + " round(s)."
+            : "Darn, you didn't win a round this time.");
+        } else {
+          out.println();
+        }
+      }
+      Main.leaderboard.addResult(new GameResult(player, engine.getScore()));
+      return true;
+    } finally {
+      // keep what the AI learned for the player's next game
+      Main.models.checkIn(name, ai);
+    }
+  }
+
+  /**
+   * Asks the user for a Move until they pick one they have enough charge for.
+   *
+   * @param charge The user's charge.
+   * @return The Move, or null if the user quit or the input ended.
+   * @throws IOException If the input cannot be read.
+   */
+  private Move readMove(int charge) throws IOException {
+    Move[] moves = {Rules.FIREBALL, Rules.SHIELD, Rules.CHARGE, Rules.SUPER_FIREBALL};
+    StringBuilder prompt = new StringBuilder("Move?");
+    for (int i = 0; i < moves.length; i++) {
+      if (moves[i].getCost() <= charge) prompt.append(" [").append(i + 1).append("] ").append(moves[i].getName());
+    }
+    prompt.append(" [q]uit: ");
+    while (true) {
+      out.print(prompt);
+      out.flush();
+      String line = in.readLine();
+      if (line == null) return null;
+      line = line.trim().toLowerCase();
+      if (line.equals("q") || line.equals("quit")) return null;
+      Move chosen = null;
+      for (int i = 0; i < moves.length; i++) {
+        if (line.equals(String.valueOf(i + 1)) || line.equals(moves[i].getName().toLowerCase())) chosen = moves[i];
+      }
+      if (chosen == null) {
+        out.println("Unknown move.");
+      } else if (chosen.getCost() > charge) {
+        out.println("Not enough charge for " + chosen.getName() + ".");
+      } else {
+        return chosen;
+      }
+    }
+  }
+}
\ No newline at end of file